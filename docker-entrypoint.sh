@@ -10,7 +10,7 @@ fi
 
 if [ -f /run/configs/mysql_database ]; then
   DB_NAME=$(cat /run/configs/mysql_database)
-  export DB_URL="jdbc:mysql://mysql:3306/${DB_NAME}?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC"
+  export DB_URL="jdbc:mysql://mysql:3306/${DB_NAME}?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC&useCursorFetch=true&rewriteBatchedStatements=true"
   export SPRING_DATASOURCE_URL=$DB_URL
 fi
 
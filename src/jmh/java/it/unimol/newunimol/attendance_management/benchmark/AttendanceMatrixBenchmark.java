@@ -0,0 +1,68 @@
+package it.unimol.newunimol.attendance_management.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.unimol.newunimol.attendance_management.service.AttendanceService;
+
+/**
+ * Risposta per un corso di 500 studenti × 60 lezioni: lista delle presenze (getCourseAttendances)
+ * contro matrice compressa (getCourseAttendanceMatrix), entrambe lette da H2 e serializzate in JSON
+ * con l'ObjectMapper dell'applicazione. La dimensione delle due risposte viene stampata nel setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class AttendanceMatrixBenchmark {
+
+    private static final String COURSE_ID = "matrix";
+    private static final int STUDENTS = 500;
+    private static final int LESSONS = 60;
+
+    private ConfigurableApplicationContext context;
+    private AttendanceService attendanceService;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        context = BenchmarkContext.start();
+        BenchmarkContext.loadCourse(context, COURSE_ID, STUDENTS, LESSONS);
+        attendanceService = context.getBean(AttendanceService.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        System.out.printf("[matrix] %d×%d: lista=%d byte, matrice=%d byte%n", STUDENTS, LESSONS,
+            courseAttendanceList().length, courseAttendanceMatrix().length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] courseAttendanceList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(attendanceService.getCourseAttendances(COURSE_ID));
+    }
+
+    @Benchmark
+    public byte[] courseAttendanceMatrix() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(attendanceService.getCourseAttendanceMatrix(COURSE_ID));
+    }
+}
@@ -0,0 +1,80 @@
+package it.unimol.newunimol.attendance_management.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import it.unimol.newunimol.attendance_management.service.AttendanceService;
+import it.unimol.newunimol.attendance_management.service.AttendanceStatsCache;
+
+/**
+ * Statistiche di corso e di studente su dataset di 1k, 100k e 1M presenze, con la cache delle
+ * statistiche calda ({@code cached=true}) o svuotata prima di ogni chiamata ({@code cached=false}).
+ * I tempi non devono crescere con il numero di righe: le statistiche sono lette dai contatori.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class AttendanceStatisticsBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"true", "false"})
+    private boolean cached;
+
+    private ConfigurableApplicationContext context;
+    private AttendanceService attendanceService;
+    private AttendanceStatsCache statsCache;
+    private final String[] studentIds = new String[BenchmarkContext.STUDENTS_PER_COURSE];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.loadAttendances(context, rows);
+        attendanceService = context.getBean(AttendanceService.class);
+        statsCache = context.getBean(AttendanceStatsCache.class);
+        for (int i = 0; i < studentIds.length; i++) {
+            studentIds[i] = BenchmarkContext.studentId(i);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void evictIfCold() {
+        if (!cached) {
+            statsCache.evictAllLocally();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Map<String, Double> getCourseStatistics() {
+        return attendanceService.getCourseStatistics(BenchmarkContext.courseId(0));
+    }
+
+    @Benchmark
+    public Map<String, Double> getStudentCourseStatistics() {
+        next = (next + 1) % studentIds.length;
+        return attendanceService.getStudentCourseStatistics(studentIds[next], BenchmarkContext.courseId(0));
+    }
+}
@@ -0,0 +1,93 @@
+package it.unimol.newunimol.attendance_management.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import it.unimol.newunimol.attendance_management.NewunimolApplication;
+import it.unimol.newunimol.attendance_management.model.Presenza;
+import it.unimol.newunimol.attendance_management.repository.PresenzaRepository;
+import it.unimol.newunimol.attendance_management.service.AttendanceCounterService;
+
+/**
+ * Avvia l'applicazione sul database H2 in memoria del profilo di test (senza web e senza consumer
+ * RabbitMQ) e la popola con un dataset sintetico di presenze.
+ */
+final class BenchmarkContext {
+
+    static final int STUDENTS_PER_COURSE = 100;
+    static final int LESSONS_PER_COURSE = 30;
+    static final int ROWS_PER_COURSE = STUDENTS_PER_COURSE * LESSONS_PER_COURSE;
+
+    private static final int INSERT_CHUNK = 5000;
+    private static final LocalDate FIRST_LESSON = LocalDate.of(2024, 1, 8);
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(NewunimolApplication.class)
+            .web(WebApplicationType.NONE)
+            .run("--spring.rabbitmq.listener.simple.auto-startup=false",
+                 "--spring.jpa.show-sql=false",
+                 "--logging.level.root=WARN");
+    }
+
+    /**
+     * Inserisce {@code rows} presenze: corsi c0, c1, ... con 100 studenti (s0..s99) e 30 lezioni ciascuno,
+     * riempiti in ordine (il corso c0 è sempre presente), l'80% con stato present.
+     * Ricostruisce poi i contatori da cui sono lette le statistiche.
+     * @return il numero di corsi generati
+     */
+    static int loadAttendances(ConfigurableApplicationContext context, int rows) {
+        PresenzaRepository presenzaRepository = context.getBean(PresenzaRepository.class);
+        TransactionTemplate transactionTemplate = context.getBean(TransactionTemplate.class);
+        for (int from = 0; from < rows; from += INSERT_CHUNK) {
+            int to = Math.min(rows, from + INSERT_CHUNK);
+            List<Presenza> chunk = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                int withinCourse = i % ROWS_PER_COURSE;
+                chunk.add(new Presenza("a" + i, studentId(withinCourse % STUDENTS_PER_COURSE),
+                    courseId(i / ROWS_PER_COURSE), FIRST_LESSON.plusDays(withinCourse / STUDENTS_PER_COURSE),
+                    i % 5 == 0 ? "absent" : "present", null, null));
+            }
+            transactionTemplate.executeWithoutResult(status -> presenzaRepository.saveAll(chunk));
+        }
+        context.getBean(AttendanceCounterService.class).rebuild();
+        return (rows + ROWS_PER_COURSE - 1) / ROWS_PER_COURSE;
+    }
+
+    /**
+     * Inserisce le presenze di un solo corso con {@code students} studenti e {@code lessons} lezioni
+     * (una presenza per studente e lezione, l'80% con stato present).
+     */
+    static void loadCourse(ConfigurableApplicationContext context, String courseId, int students, int lessons) {
+        PresenzaRepository presenzaRepository = context.getBean(PresenzaRepository.class);
+        TransactionTemplate transactionTemplate = context.getBean(TransactionTemplate.class);
+        List<Presenza> rows = new ArrayList<>(students * lessons);
+        for (int lesson = 0; lesson < lessons; lesson++) {
+            for (int student = 0; student < students; student++) {
+                int i = lesson * students + student;
+                rows.add(new Presenza(courseId + "-a" + i, studentId(student), courseId, FIRST_LESSON.plusDays(lesson),
+                    i % 5 == 0 ? "absent" : "present", null, null));
+            }
+        }
+        for (int from = 0; from < rows.size(); from += INSERT_CHUNK) {
+            List<Presenza> chunk = rows.subList(from, Math.min(rows.size(), from + INSERT_CHUNK));
+            transactionTemplate.executeWithoutResult(status -> presenzaRepository.saveAll(chunk));
+        }
+    }
+
+    static String courseId(int index) {
+        return "c" + index;
+    }
+
+    static String studentId(int index) {
+        return "s" + index;
+    }
+}
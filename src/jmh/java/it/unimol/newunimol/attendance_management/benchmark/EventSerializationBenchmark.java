@@ -0,0 +1,110 @@
+package it.unimol.newunimol.attendance_management.benchmark;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.unimol.newunimol.attendance_management.event.AttendanceBulkUpdatedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceCreatedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceStatsGeneratedEvent;
+import it.unimol.newunimol.attendance_management.model.Presenza;
+
+/**
+ * Serializzazione JSON: liste di {@link Presenza} con l'ObjectMapper usato da Spring MVC per le risposte REST
+ * e payload degli eventi con il converter del RabbitTemplate (lo stesso usato per scrivere l'outbox e leggere i messaggi).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class EventSerializationBenchmark {
+
+    private final ObjectMapper httpMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter();
+
+    private AttendanceCreatedEvent createdEvent;
+    private AttendanceStatsGeneratedEvent statsEvent;
+    private Message createdMessage;
+
+    /** Dati la cui dimensione dipende dal parametro size (numero di presenze). */
+    @State(Scope.Benchmark)
+    public static class Attendances {
+
+        @Param({"100", "10000"})
+        private int size;
+
+        private List<Presenza> presenze;
+        private AttendanceBulkUpdatedEvent bulkEvent;
+
+        @Setup
+        public void setUp() {
+            presenze = new ArrayList<>(size);
+            List<String> ids = new ArrayList<>(size);
+            Map<String, String> studentIds = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                String id = "a" + i;
+                presenze.add(new Presenza(id, "s" + i, "c0", LocalDate.of(2024, 3, 20), "present", LocalTime.of(9, 0), null));
+                ids.add(id);
+                studentIds.put(id, "s" + i);
+            }
+            bulkEvent = new AttendanceBulkUpdatedEvent("c0", LocalDate.of(2024, 3, 20), "present", LocalTime.of(9, 0), null,
+                Map.of("absent", ids), studentIds);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        createdEvent = new AttendanceCreatedEvent("a1", "s1", "c0", LocalDate.of(2024, 3, 20), "present", LocalTime.of(9, 0), null);
+        statsEvent = new AttendanceStatsGeneratedEvent("r1", "s1", "c0", 30.0, 24.0, 80.0, null, LocalDateTime.of(2024, 3, 20, 10, 0));
+        createdMessage = converter.toMessage(createdEvent, new MessageProperties());
+    }
+
+    @Benchmark
+    public byte[] writePresenzaList(Attendances attendances) throws JsonProcessingException {
+        return httpMapper.writeValueAsBytes(attendances.presenze);
+    }
+
+    @Benchmark
+    public Message writeAttendanceCreatedEvent() {
+        return converter.toMessage(createdEvent, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object readAttendanceCreatedEvent() {
+        return converter.fromMessage(createdMessage);
+    }
+
+    @Benchmark
+    public Message writeAttendanceStatsGeneratedEvent() {
+        return converter.toMessage(statsEvent, new MessageProperties());
+    }
+
+    @Benchmark
+    public Message writeAttendanceBulkUpdatedEvent(Attendances attendances) {
+        return converter.toMessage(attendances.bulkEvent, new MessageProperties());
+    }
+}
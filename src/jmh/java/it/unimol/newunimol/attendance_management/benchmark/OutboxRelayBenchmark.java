@@ -0,0 +1,121 @@
+package it.unimol.newunimol.attendance_management.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.unimol.newunimol.attendance_management.model.Presenza;
+import it.unimol.newunimol.attendance_management.repository.OutboxEventRepository;
+import it.unimol.newunimol.attendance_management.service.EventPublisherService;
+import it.unimol.newunimol.attendance_management.service.OutboxRelayService;
+
+/**
+ * Svuotamento dell'outbox verso un broker simulato in-process che conferma ogni messaggio in modo asincrono.
+ * Con {@code batchSize=1} il relay attende la conferma di ogni evento prima di inviare il successivo,
+ * come il vecchio invio sincrono; con {@code batchSize=200} invia il lotto e attende le conferme insieme.
+ * Il risultato è il tempo per evento (eventi/s = 10^6 / us/op).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(OutboxRelayBenchmark.EVENTS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class OutboxRelayBenchmark {
+
+    static final int EVENTS = 10_000;
+
+    @Param({"1", "200"})
+    private int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private ConfirmingRabbitTemplate broker;
+    private OutboxRelayService relayService;
+    private EventPublisherService eventPublisherService;
+    private OutboxEventRepository outboxEventRepository;
+    private TransactionTemplate transactionTemplate;
+    private List<Presenza> created;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        eventPublisherService = context.getBean(EventPublisherService.class);
+        outboxEventRepository = context.getBean(OutboxEventRepository.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        broker = new ConfirmingRabbitTemplate();
+        relayService = new OutboxRelayService(broker, outboxEventRepository, transactionTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(relayService, "batchSize", batchSize);
+        created = new ArrayList<>(EVENTS);
+        for (int i = 0; i < EVENTS; i++) {
+            created.add(new Presenza("a" + i, "s" + (i % 100), "c0", LocalDate.of(2024, 3, 20), "present", null, null));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fillOutbox() {
+        transactionTemplate.executeWithoutResult(status -> eventPublisherService.publishAttendancesCreated(created));
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkDrained() {
+        if (outboxEventRepository.count() != 0) {
+            throw new IllegalStateException("Outbox non svuotato");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broker.shutdown();
+        context.close();
+    }
+
+    @Benchmark
+    public void relay() {
+        relayService.relay();
+    }
+
+    /** Broker simulato: accetta ogni messaggio e invia l'ack da un altro thread, come le conferme del broker. */
+    static class ConfirmingRabbitTemplate extends RabbitTemplate {
+
+        private final ExecutorService confirms = Executors.newSingleThreadExecutor();
+
+        ConfirmingRabbitTemplate() {
+            super(new CachingConnectionFactory());
+        }
+
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+            confirms.execute(() -> correlationData.getFuture().complete(new CorrelationData.Confirm(true, null)));
+        }
+
+        void shutdown() {
+            confirms.shutdown();
+            destroy();
+        }
+    }
+}
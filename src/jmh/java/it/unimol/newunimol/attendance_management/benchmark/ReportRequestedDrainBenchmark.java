@@ -0,0 +1,89 @@
+package it.unimol.newunimol.attendance_management.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import it.unimol.newunimol.attendance_management.event.ReportRequestedEvent;
+import it.unimol.newunimol.attendance_management.repository.OutboxEventRepository;
+import it.unimol.newunimol.attendance_management.service.AttendanceStatsCache;
+import it.unimol.newunimol.attendance_management.service.EventListenerService;
+
+/**
+ * Smaltimento di un arretrato di 50k richieste report.requested (90% percentuali studente, 10% medie di corso)
+ * su 100k presenze, consegnate al listener a lotti di {@code batchSize} come farebbe il container:
+ * {@code batchSize=1} corrisponde al consumo messaggio per messaggio. La cache delle statistiche
+ * è svuotata prima di ogni iterazione.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@State(Scope.Benchmark)
+public class ReportRequestedDrainBenchmark {
+
+    private static final int REQUESTS = 50_000;
+    private static final int ROWS = 100_000;
+
+    @Param({"1", "250"})
+    private int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private EventListenerService eventListenerService;
+    private AttendanceStatsCache statsCache;
+    private OutboxEventRepository outboxEventRepository;
+    private List<ReportRequestedEvent> requests;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        int courses = BenchmarkContext.loadAttendances(context, ROWS);
+        eventListenerService = context.getBean(EventListenerService.class);
+        statsCache = context.getBean(AttendanceStatsCache.class);
+        outboxEventRepository = context.getBean(OutboxEventRepository.class);
+        requests = new ArrayList<>(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            String courseId = BenchmarkContext.courseId(i % courses);
+            requests.add(i % 10 == 0
+                ? new ReportRequestedEvent("r" + i, null, courseId, "average")
+                : new ReportRequestedEvent("r" + i, BenchmarkContext.studentId(i % BenchmarkContext.STUDENTS_PER_COURSE),
+                    courseId, "percentage"));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void coldCache() {
+        statsCache.evictAllLocally();
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearOutbox() {
+        outboxEventRepository.deleteAllInBatch();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void drain() {
+        for (int from = 0; from < REQUESTS; from += batchSize) {
+            eventListenerService.handleReportRequested(requests.subList(from, Math.min(REQUESTS, from + batchSize)));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package it.unimol.newunimol.attendance_management.benchmark;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import it.unimol.newunimol.attendance_management.DTO.TokenJWTDto;
+import it.unimol.newunimol.attendance_management.service.TokenJWTService;
+
+/**
+ * Percorso di autenticazione: lettura del ruolo da un token già verificato (claims in cache),
+ * lettura con la cache svuotata prima di ogni chiamata (una verifica RSA per chiamata) e firma di un nuovo token.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class TokenJWTServiceBenchmark {
+
+    private TokenJWTService tokenJWTService;
+    private String token;
+
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(2048);
+        KeyPair pair = keyGen.generateKeyPair();
+
+        tokenJWTService = new TokenJWTService();
+        ReflectionTestUtils.setField(tokenJWTService, "privateKeyString",
+            Base64.getEncoder().encodeToString(pair.getPrivate().getEncoded()));
+        ReflectionTestUtils.setField(tokenJWTService, "publicKeyString",
+            Base64.getEncoder().encodeToString(pair.getPublic().getEncoded()));
+        ReflectionTestUtils.setField(tokenJWTService, "jwtExpiration", 3600L);
+        token = tokenJWTService.generateToken("user-1", "docente", "docente").getToken();
+    }
+
+    @Benchmark
+    public String extractRole() {
+        return tokenJWTService.extractRole(token);
+    }
+
+    @Benchmark
+    public String extractRoleWithoutClaimsCache(ColdClaims coldClaims) {
+        return tokenJWTService.extractRole(token);
+    }
+
+    @Benchmark
+    public TokenJWTDto generateToken() {
+        return tokenJWTService.generateToken("user-1", "docente", "docente");
+    }
+
+    /** Svuota la cache dei claims prima di ogni chiamata, così il token viene verificato ogni volta. */
+    @State(Scope.Benchmark)
+    public static class ColdClaims {
+
+        @Setup(Level.Invocation)
+        public void evictClaims(TokenJWTServiceBenchmark benchmark) {
+            Cache<?, ?> claimsCache = (Cache<?, ?>) ReflectionTestUtils.getField(benchmark.tokenJWTService, "claimsCache");
+            if (claimsCache != null) {
+                claimsCache.invalidateAll();
+            }
+        }
+    }
+}
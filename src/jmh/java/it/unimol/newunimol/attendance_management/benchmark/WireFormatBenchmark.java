@@ -0,0 +1,82 @@
+package it.unimol.newunimol.attendance_management.benchmark;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import it.unimol.newunimol.attendance_management.config.RabbitMQConfig;
+import it.unimol.newunimol.attendance_management.event.AttendanceCreatedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceStatsGeneratedEvent;
+
+/**
+ * Confronto tra i formati dei messaggi RabbitMQ (JSON e CBOR) con il converter dell'applicazione:
+ * tempo di scrittura e lettura degli eventi più frequenti; la dimensione dei messaggi viene stampata nel setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class WireFormatBenchmark {
+
+    @Param({"application/json", "application/cbor"})
+    private String contentType;
+
+    private final MessageConverter converter = new RabbitMQConfig().messageConverter();
+
+    private AttendanceCreatedEvent createdEvent;
+    private AttendanceStatsGeneratedEvent statsEvent;
+    private Message createdMessage;
+    private Message statsMessage;
+
+    @Setup
+    public void setUp() {
+        createdEvent = new AttendanceCreatedEvent("a1", "s1", "c0", LocalDate.of(2024, 3, 20), "present", LocalTime.of(9, 0), null);
+        statsEvent = new AttendanceStatsGeneratedEvent("r1", "s1", "c0", 30.0, 24.0, 80.0, null, LocalDateTime.of(2024, 3, 20, 10, 0));
+        createdMessage = converter.toMessage(createdEvent, properties());
+        statsMessage = converter.toMessage(statsEvent, properties());
+        System.out.printf("[wire] %s: AttendanceCreatedEvent=%d byte, AttendanceStatsGeneratedEvent=%d byte%n",
+            contentType, createdMessage.getBody().length, statsMessage.getBody().length);
+    }
+
+    private MessageProperties properties() {
+        MessageProperties props = new MessageProperties();
+        props.setContentType(contentType);
+        return props;
+    }
+
+    @Benchmark
+    public Message writeAttendanceCreatedEvent() {
+        return converter.toMessage(createdEvent, properties());
+    }
+
+    @Benchmark
+    public Object readAttendanceCreatedEvent() {
+        return converter.fromMessage(createdMessage);
+    }
+
+    @Benchmark
+    public Message writeAttendanceStatsGeneratedEvent() {
+        return converter.toMessage(statsEvent, properties());
+    }
+
+    @Benchmark
+    public Object readAttendanceStatsGeneratedEvent() {
+        return converter.fromMessage(statsMessage);
+    }
+}
@@ -0,0 +1,10 @@
+package it.unimol.newunimol.attendance_management.DTO;
+
+public record AttendanceBulkResultDTO(
+    int index,
+    String studentId,
+    String attendanceId,
+    boolean created,
+    String error
+) {
+}
@@ -0,0 +1,11 @@
+package it.unimol.newunimol.attendance_management.DTO;
+
+import java.time.LocalTime;
+
+public record AttendanceLessonUpdateDTO(
+    String currentStatus, // filtro opzionale sullo stato attuale
+    String status,
+    LocalTime orarioIngresso,
+    LocalTime orarioUscita
+) {
+}
@@ -0,0 +1,31 @@
+package it.unimol.newunimol.attendance_management.DTO;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Matrice studenti × lezioni delle presenze di un corso.
+ * La cella (studente i, lezione j) occupa i bit [k * bitsPerCell, (k + 1) * bitsPerCell) di cells
+ * (Base64), con k = i * lessonDates.size() + j e bit meno significativi per primi in ogni byte.
+ * Il codice 0 indica nessuna presenza registrata, il codice c lo stato statuses.get(c - 1).
+ */
+public record AttendanceMatrixDTO(
+    String courseId,
+    List<String> studentIds,
+    List<LocalDate> lessonDates,
+    List<String> statuses,
+    int bitsPerCell,
+    String cells,
+    List<Integer> presentByStudent,
+    List<Integer> presentByLesson,
+    List<Integer> recordedByLesson
+) {
+    public AttendanceMatrixDTO {
+        studentIds = List.copyOf(studentIds);
+        lessonDates = List.copyOf(lessonDates);
+        statuses = List.copyOf(statuses);
+        presentByStudent = List.copyOf(presentByStudent);
+        presentByLesson = List.copyOf(presentByLesson);
+        recordedByLesson = List.copyOf(recordedByLesson);
+    }
+}
@@ -0,0 +1,14 @@
+package it.unimol.newunimol.attendance_management.DTO;
+
+import it.unimol.newunimol.attendance_management.model.Presenza;
+
+import java.util.List;
+
+public record AttendancePageDTO(
+    List<Presenza> items,
+    String nextCursor
+) {
+    public AttendancePageDTO {
+        items = List.copyOf(items);
+    }
+}
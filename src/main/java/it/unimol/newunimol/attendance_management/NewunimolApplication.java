@@ -2,8 +2,10 @@ package it.unimol.newunimol.attendance_management;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class NewunimolApplication {
 
 	public static void main(String[] args) {
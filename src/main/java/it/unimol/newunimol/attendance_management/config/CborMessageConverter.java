@@ -0,0 +1,37 @@
+package it.unimol.newunimol.attendance_management.config;
+
+import java.lang.reflect.Type;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJackson2MessageConverter;
+import org.springframework.util.MimeType;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+/**
+ * Converter dei messaggi RabbitMQ in formato binario CBOR (RFC 8949, content type {@value #CONTENT_TYPE}).
+ * Usa le stesse classi evento e la stessa intestazione __TypeId__ del converter JSON, ma codifica
+ * numeri, date (come array di interi) e stringhe in binario, con messaggi più piccoli e più veloci da leggere.
+ */
+public class CborMessageConverter extends AbstractJackson2MessageConverter {
+
+    public static final String CONTENT_TYPE = "application/cbor";
+
+    public CborMessageConverter() {
+        super(CBORMapper.builder()
+                .findAndAddModules()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .build(),
+            MimeType.valueOf(CONTENT_TYPE), "*");
+    }
+
+    @Override
+    protected Message createMessage(Object objectToConvert, MessageProperties messageProperties, Type genericType) {
+        Message message = super.createMessage(objectToConvert, messageProperties, genericType);
+        // Corpo binario: senza codifica dei caratteri, altrimenti in lettura verrebbe decodificato come testo
+        message.getMessageProperties().setContentEncoding(null);
+        return message;
+    }
+}
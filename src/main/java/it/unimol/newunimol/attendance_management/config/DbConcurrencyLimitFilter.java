@@ -0,0 +1,118 @@
+package it.unimol.newunimol.attendance_management.config;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Limita il numero di richieste /api elaborate contemporaneamente quando Tomcat usa i thread virtuali.
+ * Con un thread per richiesta senza limite, migliaia di richieste resterebbero in attesa di una
+ * connessione dentro il pool HikariCP; il semaforo le fa attendere prima (in modo equo) e risponde
+ * 503 se il permesso non arriva entro il timeout.
+ * Di default i permessi sono la dimensione del pool meno le connessioni riservate ai consumer in
+ * background (listener RabbitMQ, consegna locale degli eventi, job schedulati), che non passano dal filtro.
+ * Per le risposte asincrone (export in streaming) il permesso viene rilasciato solo alla fine
+ * dell'elaborazione asincrona, perché la connessione resta in uso fino ad allora.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class DbConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final Semaphore permits;
+    private final long acquireTimeoutMs;
+
+    public DbConcurrencyLimitFilter(@Value("${attendance.db.max-concurrency:0}") int maxConcurrency,
+                                    @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                                    @Value("${attendance.db.background-connections:4}") int backgroundConnections,
+                                    @Value("${attendance.db.acquire-timeout-ms:2000}") long acquireTimeoutMs) {
+        int limit = maxConcurrency > 0 ? maxConcurrency : Math.max(1, poolSize - backgroundConnections);
+        this.permits = new Semaphore(limit, true);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(request.getContextPath() + "/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            JwtAuthenticationFilter.reject(response, HttpStatus.SERVICE_UNAVAILABLE, "Servizio sovraccarico, riprovare");
+            return;
+        }
+        Permit permit = new Permit(permits);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(permit);
+            } else {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * Permesso rilasciato una sola volta, al termine della richiesta o della sua parte asincrona
+     * (completamento, errore o timeout).
+     */
+    private static final class Permit implements AsyncListener {
+
+        private final Semaphore permits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(Semaphore permits) {
+            this.permits = permits;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Un nuovo ciclo asincrono azzera i listener: il permesso resta legato alla richiesta
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
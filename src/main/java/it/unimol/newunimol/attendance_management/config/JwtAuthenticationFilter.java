@@ -0,0 +1,101 @@
+package it.unimol.newunimol.attendance_management.config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.jsonwebtoken.JwtException;
+import it.unimol.newunimol.attendance_management.DTO.TokenJWTDto;
+import it.unimol.newunimol.attendance_management.service.TokenJWTService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Filtro che valida il token JWT una sola volta per richiesta, prima del DispatcherServlet,
+ * e popola il SecurityContext con l'utente e il suo ruolo (ROLE_DOCENTE / ROLE_STUDENTE).
+ */
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "TokenJWTService is a Spring singleton bean, safe to store")
+    private final TokenJWTService tokenJWTService;
+    private final RequestMatcher protectedRequests;
+
+    public JwtAuthenticationFilter(TokenJWTService tokenJWTService, RequestMatcher protectedRequests) {
+        this.tokenJWTService = tokenJWTService;
+        this.protectedRequests = protectedRequests;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !protectedRequests.matches(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String authHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authHeader == null) {
+            reject(response, HttpStatus.BAD_REQUEST, "Header Authorization mancante");
+            return;
+        }
+        authHeader = authHeader.trim();
+        if (!authHeader.startsWith(BEARER_PREFIX)) {
+            reject(response, HttpStatus.BAD_REQUEST, "Header Authorization non valido (manca 'Bearer ')");
+            return;
+        }
+        String token = authHeader.substring(BEARER_PREFIX.length()).trim();
+        if (token.isEmpty()) {
+            reject(response, HttpStatus.BAD_REQUEST, "Token JWT mancante nell'header Authorization");
+            return;
+        }
+
+        TokenJWTDto tokenInfo;
+        try {
+            tokenInfo = tokenJWTService.parseToken(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            tokenInfo = null;
+        }
+        if (tokenInfo == null) {
+            reject(response, HttpStatus.UNAUTHORIZED, "Token JWT non valido o scaduto");
+            return;
+        }
+
+        List<SimpleGrantedAuthority> authorities = tokenInfo.getRole() == null
+            ? List.of()
+            : List.of(new SimpleGrantedAuthority("ROLE_" + tokenInfo.getRole().toUpperCase(Locale.ROOT)));
+        UsernamePasswordAuthenticationToken authentication =
+            UsernamePasswordAuthenticationToken.authenticated(tokenInfo.getUserId(), null, authorities);
+        authentication.setDetails(tokenInfo);
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(authentication);
+        SecurityContextHolder.setContext(context);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    static void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(message);
+    }
+}
@@ -0,0 +1,103 @@
+package it.unimol.newunimol.attendance_management.config;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Migrazione del broker per attendance.events.delivery=local: le code attendance.*.queue dichiarate
+ * in modalità broker non hanno più consumer, quindi all'avvio vengono scollegate dall'exchange
+ * (non ricevono più messaggi) ed eliminate se vuote. Una coda che contiene ancora messaggi resta,
+ * scollegata, con un avviso nel log: va svuotata avviando una replica con delivery=broker oppure
+ * eliminata a mano riallineando poi i contatori con attendance.counters.rebuild=true.
+ * Durante un aggiornamento progressivo da delivery=broker va disattivata
+ * (attendance.events.local.remove-broker-queues=false) finché tutte le repliche non sono in modalità local.
+ */
+@Component
+@ConditionalOnProperty(name = "attendance.events.delivery", havingValue = "local", matchIfMissing = true)
+public class LocalDeliveryQueueCleanup implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalDeliveryQueueCleanup.class);
+
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "AmqpAdmin is a Spring singleton bean, safe to store")
+    private final AmqpAdmin amqpAdmin;
+
+    @Value("${attendance.events.local.remove-broker-queues:true}")
+    private boolean enabled = true;
+
+    @Value("${rabbitmq.exchange.attendance}")
+    private String attendanceExchange;
+
+    @Value("${rabbitmq.queue.attendance.created}")
+    private String attendanceCreatedQueue;
+
+    @Value("${rabbitmq.queue.attendance.updated}")
+    private String attendanceUpdatedQueue;
+
+    @Value("${rabbitmq.queue.attendance.bulk-updated}")
+    private String attendanceBulkUpdatedQueue;
+
+    @Value("${rabbitmq.queue.attendance.deleted}")
+    private String attendanceDeletedQueue;
+
+    @Value("${rabbitmq.routing.attendance.created:attendance.created}")
+    private String attendanceCreatedRouting;
+
+    @Value("${rabbitmq.routing.attendance.updated:attendance.updated}")
+    private String attendanceUpdatedRouting;
+
+    @Value("${rabbitmq.routing.attendance.bulk-updated:attendance.bulk.updated}")
+    private String attendanceBulkUpdatedRouting;
+
+    @Value("${rabbitmq.routing.attendance.deleted:attendance.deleted}")
+    private String attendanceDeletedRouting;
+
+    public LocalDeliveryQueueCleanup(AmqpAdmin amqpAdmin) {
+        this.amqpAdmin = amqpAdmin;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        Map<String, String> routingByQueue = Map.of(
+            attendanceCreatedQueue, attendanceCreatedRouting,
+            attendanceUpdatedQueue, attendanceUpdatedRouting,
+            attendanceBulkUpdatedQueue, attendanceBulkUpdatedRouting,
+            attendanceDeletedQueue, attendanceDeletedRouting);
+        routingByQueue.forEach(this::removeQueue);
+    }
+
+    private void removeQueue(String queue, String routingKey) {
+        try {
+            if (amqpAdmin.getQueueInfo(queue) == null) {
+                return;
+            }
+            amqpAdmin.removeBinding(new Binding(queue, Binding.DestinationType.QUEUE, attendanceExchange, routingKey, null));
+            // Letto dopo aver tolto il binding: da qui in poi la coda non riceve più messaggi
+            QueueInformation info = amqpAdmin.getQueueInfo(queue);
+            if (info != null && info.getMessageCount() == 0) {
+                amqpAdmin.deleteQueue(queue, false, true);
+                logger.info("Coda {} non più usata con delivery=local: eliminata", queue);
+            } else if (info != null) {
+                logger.warn("Coda {} scollegata da {} ma non eliminata: contiene ancora {} messaggi",
+                    queue, attendanceExchange, info.getMessageCount());
+            }
+        } catch (AmqpException e) {
+            logger.warn("Pulizia della coda {} non eseguita: {}", queue, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package it.unimol.newunimol.attendance_management.config;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Consegna in-process degli eventi sulle presenze (attendance.events.delivery=local):
+ * i listener locali girano dopo il commit su un pool dedicato, senza allungare la richiesta HTTP.
+ * A coda piena l'evento viene eseguito dal thread chiamante invece di essere scartato.
+ */
+@Configuration
+@EnableAsync
+@ConditionalOnProperty(name = "attendance.events.delivery", havingValue = "local", matchIfMissing = true)
+public class LocalEventConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor localEventExecutor(@Value("${attendance.events.local.pool-size:2}") int poolSize,
+                                       @Value("${attendance.events.local.queue-capacity:10000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("local-event-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+}
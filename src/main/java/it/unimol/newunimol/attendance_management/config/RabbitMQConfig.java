@@ -1,10 +1,15 @@
 package it.unimol.newunimol.attendance_management.config;
 
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -35,9 +40,36 @@ public class RabbitMQConfig {
     @Value("${rabbitmq.queue.attendance.updated}")
     private String attendanceUpdatedQueue;
 
+    @Value("${rabbitmq.queue.attendance.bulk-updated}")
+    private String attendanceBulkUpdatedQueue;
+
     @Value("${rabbitmq.queue.attendance.stats}")
     private String attendanceStatsQueue;
 
+    @Value("${rabbitmq.routing.attendance.cache-invalidate:attendance.cache.invalidate}")
+    private String cacheInvalidateRouting;
+
+    @Value("${attendance.stats-cache.invalidation.batch-size:100}")
+    private int cacheInvalidationBatchSize;
+
+    @Value("${attendance.stats-cache.invalidation.receive-timeout-ms:50}")
+    private long cacheInvalidationReceiveTimeoutMs;
+
+    @Value("${rabbitmq.report-requested.concurrency:2}")
+    private int reportRequestedConcurrency;
+
+    @Value("${rabbitmq.report-requested.max-concurrency:4}")
+    private int reportRequestedMaxConcurrency;
+
+    @Value("${rabbitmq.report-requested.prefetch:500}")
+    private int reportRequestedPrefetch;
+
+    @Value("${rabbitmq.report-requested.batch-size:250}")
+    private int reportRequestedBatchSize;
+
+    @Value("${rabbitmq.report-requested.receive-timeout-ms:100}")
+    private long reportRequestedReceiveTimeoutMs;
+
     // Exchanges
     @Bean
     public TopicExchange attendanceExchange() {
@@ -65,26 +97,44 @@ public class RabbitMQConfig {
         return QueueBuilder.durable(reportRequestedQueue).build();
     }
 
+    // Code degli eventi prodotti da questo stesso servizio: servono solo con attendance.events.delivery=broker,
+    // altrimenti i contatori ricevono gli eventi in-process (AttendanceLocalEventListener)
     @Bean
+    @ConditionalOnProperty(name = "attendance.events.delivery", havingValue = "broker")
     public Queue attendanceDeletedQueue() {
         return QueueBuilder.durable(attendanceDeletedQueue).build();
     }
 
     @Bean
+    @ConditionalOnProperty(name = "attendance.events.delivery", havingValue = "broker")
     public Queue attendanceCreatedQueue() {
         return QueueBuilder.durable(attendanceCreatedQueue).build();
     }
 
     @Bean
+    @ConditionalOnProperty(name = "attendance.events.delivery", havingValue = "broker")
     public Queue attendanceUpdatedQueue() {
         return QueueBuilder.durable(attendanceUpdatedQueue).build();
     }
 
+    @Bean
+    @ConditionalOnProperty(name = "attendance.events.delivery", havingValue = "broker")
+    public Queue attendanceBulkUpdatedQueue() {
+        return QueueBuilder.durable(attendanceBulkUpdatedQueue).build();
+    }
+
     @Bean
     public Queue attendanceStatsQueue() {
         return QueueBuilder.durable(attendanceStatsQueue).build();
     }
 
+    // Coda esclusiva di questa istanza (nome generato, eliminata alla disconnessione)
+    // per le invalidazioni della cache inviate a tutte le repliche
+    @Bean
+    public Queue statsCacheInvalidationQueue() {
+        return new AnonymousQueue();
+    }
+
     // Bindings per eventi consumati
     @Bean
     public Binding courseScheduledBinding() {
@@ -111,6 +161,7 @@ public class RabbitMQConfig {
     }
 
     @Bean
+    @ConditionalOnProperty(name = "attendance.events.delivery", havingValue = "broker")
     public Binding attendanceDeletedBinding() {
         return BindingBuilder
                 .bind(attendanceDeletedQueue())
@@ -119,6 +170,7 @@ public class RabbitMQConfig {
     }
 
     @Bean
+    @ConditionalOnProperty(name = "attendance.events.delivery", havingValue = "broker")
     public Binding attendanceCreatedBinding() {
         return BindingBuilder
                 .bind(attendanceCreatedQueue())
@@ -127,6 +179,7 @@ public class RabbitMQConfig {
     }
 
     @Bean
+    @ConditionalOnProperty(name = "attendance.events.delivery", havingValue = "broker")
     public Binding attendanceUpdatedBinding() {
         return BindingBuilder
                 .bind(attendanceUpdatedQueue())
@@ -134,6 +187,15 @@ public class RabbitMQConfig {
                 .with("attendance.updated");
     }
 
+    @Bean
+    @ConditionalOnProperty(name = "attendance.events.delivery", havingValue = "broker")
+    public Binding attendanceBulkUpdatedBinding() {
+        return BindingBuilder
+                .bind(attendanceBulkUpdatedQueue())
+                .to(attendanceExchange())
+                .with("attendance.bulk.updated");
+    }
+
     @Bean
     public Binding attendanceStatsBinding() {
         return BindingBuilder
@@ -142,16 +204,57 @@ public class RabbitMQConfig {
                 .with("attendance.stats.generated");
     }
 
-    // Configurazione JSON converter
     @Bean
-    public Jackson2JsonMessageConverter jackson2JsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public Binding statsCacheInvalidationBinding() {
+        return BindingBuilder
+                .bind(statsCacheInvalidationQueue())
+                .to(attendanceExchange())
+                .with(cacheInvalidateRouting);
+    }
+
+    // Listener a lotti per le invalidazioni: le chiavi ripetute nello stesso lotto vengono unite
+    @Bean
+    public SimpleRabbitListenerContainerFactory cacheInvalidationListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(cacheInvalidationBatchSize);
+        factory.setReceiveTimeout(cacheInvalidationReceiveTimeoutMs);
+        return factory;
+    }
+
+    // Listener a lotti per report.requested: più consumer in parallelo, ognuno riceve fino a batch-size
+    // richieste (o quelle arrivate entro receive-timeout) e le raggruppa per corso
+    @Bean
+    public SimpleRabbitListenerContainerFactory reportRequestedListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setConcurrentConsumers(reportRequestedConcurrency);
+        factory.setMaxConcurrentConsumers(reportRequestedMaxConcurrency);
+        factory.setPrefetchCount(reportRequestedPrefetch);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(reportRequestedBatchSize);
+        factory.setReceiveTimeout(reportRequestedReceiveTimeoutMs);
+        return factory;
+    }
+
+    // Converter scelto in base al content type del messaggio: CBOR per application/cbor,
+    // JSON per application/json e per i messaggi senza content type (produttori non ancora migrati)
+    @Bean
+    public MessageConverter messageConverter() {
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(new Jackson2JsonMessageConverter());
+        converter.addDelegate(CborMessageConverter.CONTENT_TYPE, new CborMessageConverter());
+        return converter;
     }
 
     @Bean
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
         RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
-        rabbitTemplate.setMessageConverter(jackson2JsonMessageConverter());
+        rabbitTemplate.setMessageConverter(messageConverter());
         return rabbitTemplate;
     }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package it.unimol.newunimol.attendance_management.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.NegatedRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import it.unimol.newunimol.attendance_management.service.TokenJWTService;
+import jakarta.servlet.DispatcherType;
+
+/**
+ * Configurazione Spring Security: API stateless protette dal token JWT.
+ * Le operazioni di scrittura e la media del corso sono riservate ai docenti,
+ * le consultazioni sono consentite a docenti e studenti.
+ */
+@Configuration
+@EnableWebSecurity
+public class SecurityConfig {
+
+    private static final String DOCENTE = "DOCENTE";
+    private static final String STUDENTE = "STUDENTE";
+
+    private static final PathPatternRequestMatcher.Builder PATHS = PathPatternRequestMatcher.withDefaults();
+
+    // Endpoint pubblici sotto /api
+    private static final RequestMatcher PUBLIC_API = new OrRequestMatcher(
+        PATHS.matcher("/api/test"),
+        PATHS.matcher("/api/token/**")
+    );
+
+    // Endpoint riservati ai docenti
+    private static final RequestMatcher DOCENTE_ONLY = new OrRequestMatcher(
+        PATHS.matcher(HttpMethod.POST, "/api/createAttendance"),
+        PATHS.matcher(HttpMethod.POST, "/api/createAttendances"),
+        PATHS.matcher(HttpMethod.PUT, "/api/updateAttendance/**"),
+        PATHS.matcher(HttpMethod.PUT, "/api/updateLessonAttendances/**"),
+        PATHS.matcher(HttpMethod.DELETE, "/api/deleteAttendance/**"),
+        PATHS.matcher(HttpMethod.GET, "/api/attendances/course/*/attendance-average"),
+        PATHS.matcher(HttpMethod.GET, "/api/attendances/course/*/attendance-matrix")
+    );
+
+    private static final RequestMatcher PROTECTED_API = new AndRequestMatcher(
+        PATHS.matcher("/api/**"),
+        new NegatedRequestMatcher(PUBLIC_API)
+    );
+
+    @Bean
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, TokenJWTService tokenJWTService) throws Exception {
+        http
+            .csrf(csrf -> csrf.disable())
+            .httpBasic(basic -> basic.disable())
+            .formLogin(form -> form.disable())
+            .logout(logout -> logout.disable())
+            .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+            .authorizeHttpRequests(auth -> auth
+                // Le dispatch ASYNC (export in streaming) ed ERROR sono già state autorizzate sulla richiesta originale
+                .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
+                .requestMatchers(DOCENTE_ONLY).hasRole(DOCENTE)
+                .requestMatchers(PROTECTED_API).hasAnyRole(DOCENTE, STUDENTE)
+                .anyRequest().permitAll())
+            .exceptionHandling(exceptions -> exceptions
+                .authenticationEntryPoint((request, response, e) ->
+                    JwtAuthenticationFilter.reject(response, HttpStatus.UNAUTHORIZED, "Token JWT non valido o scaduto"))
+                .accessDeniedHandler((request, response, e) ->
+                    JwtAuthenticationFilter.reject(response, HttpStatus.FORBIDDEN, DOCENTE_ONLY.matches(request)
+                        ? "Operazione consentita solo ai docenti"
+                        : "Operazione consentita solo a studenti o docenti")))
+            .addFilterBefore(new JwtAuthenticationFilter(tokenJWTService, PROTECTED_API), AuthorizationFilter.class);
+        return http.build();
+    }
+}
@@ -6,21 +6,32 @@ import org.springframework.web.bind.annotation.*;
 
 import it.unimol.newunimol.attendance_management.model.Presenza;
 import it.unimol.newunimol.attendance_management.service.AttendanceService;
+import it.unimol.newunimol.attendance_management.DTO.AttendanceCreateDTO;
+import it.unimol.newunimol.attendance_management.DTO.AttendanceLessonUpdateDTO;
 import it.unimol.newunimol.attendance_management.DTO.AttendanceUpdateDTO;
-import it.unimol.newunimol.attendance_management.service.TokenJWTService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Endpoint REST delle presenze. Autenticazione e controllo dei ruoli sono gestiti
+ * dalla filter chain di Spring Security (vedi SecurityConfig).
+ */
 @RestController
 @RequestMapping("/api")
 public class AttendanceController {
 
-    @Autowired
-    private AttendanceService attendanceService;
+    // Dimensione di pagina usata quando viene passato solo il cursore
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
 
     @Autowired
-    private TokenJWTService tokenJWTService;
+    private AttendanceService attendanceService;
 
     // Endpoint di test
     @GetMapping("/test")
@@ -28,38 +39,25 @@ public class AttendanceController {
         return "L'applicazione funziona correttamente!";
     }
 
-    private String extractTokenFromHeader(String authHeader) {
-        if (authHeader == null) {
-            throw new IllegalArgumentException("Header Authorization mancante");
-        }
-        authHeader = authHeader.trim();
-        if (!authHeader.startsWith("Bearer ")) {
-            throw new IllegalArgumentException("Header Authorization non valido (manca 'Bearer ')");
-        }
-        String token = authHeader.substring(7).trim();
-        if (token.isEmpty()) {
-            throw new IllegalArgumentException("Token JWT mancante nell'header Authorization");
-        }
-        return token;
-    }
-
     // 1. Registrazione Presenza
     @PostMapping("/createAttendance")
-    public ResponseEntity<?> createAttendance(@RequestHeader("Authorization") String authHeader, @RequestBody Presenza presenza) {
-        String token = extractTokenFromHeader(authHeader);
-        if (!tokenJWTService.hasRole(token, "DOCENTE")) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Operazione consentita solo ai docenti");
-        }
+    public ResponseEntity<?> createAttendance(@RequestBody Presenza presenza) {
         return ResponseEntity.ok(attendanceService.createAttendance(presenza));
     }
 
+    // 1b. Registrazione massiva delle presenze di una lezione
+    @PostMapping("/createAttendances")
+    public ResponseEntity<?> createAttendances(@RequestBody List<AttendanceCreateDTO> presenze) {
+        try {
+            return ResponseEntity.ok(attendanceService.createAttendances(presenze));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+        }
+    }
+
     // 2. Modifica Presenza
     @PutMapping("/updateAttendance/{attendanceId}")
-    public ResponseEntity<?> updateAttendance(@RequestHeader("Authorization") String authHeader, @PathVariable String attendanceId, @RequestBody AttendanceUpdateDTO updateDTO) {
-        String token = extractTokenFromHeader(authHeader);
-        if (!tokenJWTService.hasRole(token, "DOCENTE")) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Operazione consentita solo ai docenti");
-        }
+    public ResponseEntity<?> updateAttendance(@PathVariable String attendanceId, @RequestBody AttendanceUpdateDTO updateDTO) {
         try {
             var updated = attendanceService.updateAttendance(attendanceId, updateDTO);
             if (updated == null) {
@@ -71,13 +69,20 @@ public class AttendanceController {
         }
     }
 
+    // 2b. Modifica massiva delle presenze di una lezione
+    @PutMapping("/updateLessonAttendances/{courseId}/{lessonDate}")
+    public ResponseEntity<?> updateLessonAttendances(@PathVariable String courseId, @PathVariable LocalDate lessonDate, @RequestBody AttendanceLessonUpdateDTO updateDTO) {
+        try {
+            List<String> updated = attendanceService.updateLessonAttendances(courseId, lessonDate, updateDTO);
+            return ResponseEntity.ok(Map.of("updated", updated.size(), "attendanceIds", updated));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+        }
+    }
+
     // 3. Eliminazione Presenza
     @DeleteMapping("/deleteAttendance/{attendanceId}")
-    public ResponseEntity<?> deleteAttendance(@RequestHeader("Authorization") String authHeader, @PathVariable String attendanceId) {
-        String token = extractTokenFromHeader(authHeader);
-        if (!tokenJWTService.hasRole(token, "DOCENTE")) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Operazione consentita solo ai docenti");
-        }
+    public ResponseEntity<?> deleteAttendance(@PathVariable String attendanceId) {
         try {
             attendanceService.deleteAttendance(attendanceId);
             return ResponseEntity.ok("Presenza eliminata con successo");
@@ -88,68 +93,81 @@ public class AttendanceController {
 
     // 4. Visualizzazione Presenze di uno Studente
     @GetMapping("/getStudentAttendances/{studentId}")
-    public ResponseEntity<?> getStudentAttendances(@RequestHeader("Authorization") String authHeader, @PathVariable String studentId) {
-        String token = extractTokenFromHeader(authHeader);
-        String role = tokenJWTService.extractRole(token);
-        if (!role.equalsIgnoreCase("DOCENTE") && !role.equalsIgnoreCase("STUDENTE")) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Operazione consentita solo a studenti o docenti");
+    public ResponseEntity<?> getStudentAttendances(@PathVariable String studentId,
+            @RequestParam(required = false) Integer limit, @RequestParam(required = false) String cursor) {
+        if (limit != null || cursor != null) {
+            try {
+                return ResponseEntity.ok(attendanceService.getStudentAttendances(studentId, cursor, limit != null ? limit : DEFAULT_PAGE_SIZE));
+            } catch (IllegalArgumentException ex) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+            }
         }
         return ResponseEntity.ok(attendanceService.getStudentAttendances(studentId));
     }
 
     // 5. Visualizzazione presenza tramite ID
     @GetMapping("/getAttendance/{attendanceId}")
-    public ResponseEntity<?> getAttendanceById(@RequestHeader("Authorization") String authHeader, @PathVariable String attendanceId) {
-        String token = extractTokenFromHeader(authHeader);
-        String role = tokenJWTService.extractRole(token);
-        if (!role.equalsIgnoreCase("DOCENTE") && !role.equalsIgnoreCase("STUDENTE")) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Operazione consentita solo a studenti o docenti");
-        }
+    public ResponseEntity<?> getAttendanceById(@PathVariable String attendanceId) {
         return ResponseEntity.ok(attendanceService.getAttendanceByIdDTO(attendanceId));
     }
 
     // 6. Visualizzazione Presenze per Corso
     @GetMapping("/getCourseAttendances/{courseId}")
-    public ResponseEntity<?> getCourseAttendances(@RequestHeader("Authorization") String authHeader, @PathVariable String courseId) {
-        String token = extractTokenFromHeader(authHeader);
-        String role = tokenJWTService.extractRole(token);
-        if (!role.equalsIgnoreCase("DOCENTE") && !role.equalsIgnoreCase("STUDENTE")) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Operazione consentita solo a studenti o docenti");
+    public ResponseEntity<?> getCourseAttendances(@PathVariable String courseId,
+            @RequestParam(required = false) Integer limit, @RequestParam(required = false) String cursor) {
+        if (limit != null || cursor != null) {
+            try {
+                return ResponseEntity.ok(attendanceService.getCourseAttendances(courseId, cursor, limit != null ? limit : DEFAULT_PAGE_SIZE));
+            } catch (IllegalArgumentException ex) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+            }
         }
         return ResponseEntity.ok(attendanceService.getCourseAttendances(courseId));
     }
 
     // 7. Visualizzazione presenze per giorno
     @GetMapping("/getAttendancesByDay/{date}")
-    public ResponseEntity<?> getAttendancesByDay(@RequestHeader("Authorization") String authHeader, @PathVariable LocalDate date) {
-        String token = extractTokenFromHeader(authHeader);
-        String role = tokenJWTService.extractRole(token);
-        if (!role.equalsIgnoreCase("DOCENTE") && !role.equalsIgnoreCase("STUDENTE")) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Operazione consentita solo a studenti o docenti");
+    public ResponseEntity<?> getAttendancesByDay(@PathVariable LocalDate date,
+            @RequestParam(required = false) Integer limit, @RequestParam(required = false) String cursor) {
+        if (limit != null || cursor != null) {
+            try {
+                return ResponseEntity.ok(attendanceService.getAttendancesByDay(date, cursor, limit != null ? limit : DEFAULT_PAGE_SIZE));
+            } catch (IllegalArgumentException ex) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+            }
         }
         return ResponseEntity.ok(attendanceService.getAttendancesByDay(date));
     }
 
     // 8. Percentuale presenze di uno studente per un corso
     @GetMapping("/attendances/student/{studentId}/course/{courseId}/attendance-percentage")
-    public ResponseEntity<?> getStudentCourseStatistics(@RequestHeader("Authorization") String authHeader, @PathVariable String studentId, @PathVariable String courseId) {
-        String token = extractTokenFromHeader(authHeader);
-        String role = tokenJWTService.extractRole(token);
-        if (!role.equalsIgnoreCase("DOCENTE") && !role.equalsIgnoreCase("STUDENTE")) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Operazione consentita solo a studenti o docenti");
-        }
+    public ResponseEntity<?> getStudentCourseStatistics(@PathVariable String studentId, @PathVariable String courseId) {
         return ResponseEntity.ok(attendanceService.getStudentCourseStatistics(studentId, courseId));
     }
 
     // 9. Media delle presenze di tutti gli studenti a un corso
     @GetMapping("/attendances/course/{courseId}/attendance-average")
-    public ResponseEntity<?> getCourseStatistics(@RequestHeader("Authorization") String authHeader, @PathVariable String courseId) {
-        String token = extractTokenFromHeader(authHeader);
-        if (!tokenJWTService.hasRole(token, "DOCENTE")) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Operazione consentita solo ai docenti");
-        }
+    public ResponseEntity<?> getCourseStatistics(@PathVariable String courseId) {
         return ResponseEntity.ok(attendanceService.getCourseStatistics(courseId));
     }
 
-    
+    // 10. Export in streaming (NDJSON) delle presenze di un corso
+    @GetMapping("/exportCourseAttendances/{courseId}")
+    public ResponseEntity<StreamingResponseBody> exportCourseAttendances(@PathVariable String courseId) {
+        StreamingResponseBody body = out -> attendanceService.exportCourseAttendances(courseId, out);
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    // 11. Export in streaming (NDJSON) delle presenze di un giorno
+    @GetMapping("/exportAttendancesByDay/{date}")
+    public ResponseEntity<StreamingResponseBody> exportAttendancesByDay(@PathVariable LocalDate date) {
+        StreamingResponseBody body = out -> attendanceService.exportAttendancesByDay(date, out);
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    // 12. Matrice studenti × lezioni di un corso (stati compressi, totali per riga e colonna)
+    @GetMapping("/attendances/course/{courseId}/attendance-matrix")
+    public ResponseEntity<?> getCourseAttendanceMatrix(@PathVariable String courseId) {
+        return ResponseEntity.ok(attendanceService.getCourseAttendanceMatrix(courseId));
+    }
 }
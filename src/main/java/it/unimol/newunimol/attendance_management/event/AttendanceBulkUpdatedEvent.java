@@ -0,0 +1,65 @@
+package it.unimol.newunimol.attendance_management.event;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AttendanceBulkUpdatedEvent implements Serializable {
+    private String courseId;
+    private LocalDate lessonDate;
+    private String newStatus; // null se lo stato non è cambiato
+    private LocalTime orarioIngresso;
+    private LocalTime orarioUscita;
+    private Map<String, List<String>> attendanceIdsByOldStatus;
+    private Map<String, String> studentIdsByAttendanceId;
+
+    public AttendanceBulkUpdatedEvent() {}
+
+    public AttendanceBulkUpdatedEvent(String courseId, LocalDate lessonDate, String newStatus, LocalTime orarioIngresso, LocalTime orarioUscita, Map<String, List<String>> attendanceIdsByOldStatus) {
+        this.courseId = courseId;
+        this.lessonDate = lessonDate;
+        this.newStatus = newStatus;
+        this.orarioIngresso = orarioIngresso;
+        this.orarioUscita = orarioUscita;
+        this.attendanceIdsByOldStatus = copyOf(attendanceIdsByOldStatus);
+    }
+
+    public AttendanceBulkUpdatedEvent(String courseId, LocalDate lessonDate, String newStatus, LocalTime orarioIngresso, LocalTime orarioUscita, Map<String, List<String>> attendanceIdsByOldStatus, Map<String, String> studentIdsByAttendanceId) {
+        this(courseId, lessonDate, newStatus, orarioIngresso, orarioUscita, attendanceIdsByOldStatus);
+        this.studentIdsByAttendanceId = studentIdsByAttendanceId == null ? null : Map.copyOf(studentIdsByAttendanceId);
+    }
+
+    public String getCourseId() { return courseId; }
+    public void setCourseId(String courseId) { this.courseId = courseId; }
+
+    public LocalDate getLessonDate() { return lessonDate; }
+    public void setLessonDate(LocalDate lessonDate) { this.lessonDate = lessonDate; }
+
+    public String getNewStatus() { return newStatus; }
+    public void setNewStatus(String newStatus) { this.newStatus = newStatus; }
+
+    public LocalTime getOrarioIngresso() { return orarioIngresso; }
+    public void setOrarioIngresso(LocalTime orarioIngresso) { this.orarioIngresso = orarioIngresso; }
+
+    public LocalTime getOrarioUscita() { return orarioUscita; }
+    public void setOrarioUscita(LocalTime orarioUscita) { this.orarioUscita = orarioUscita; }
+
+    public Map<String, List<String>> getAttendanceIdsByOldStatus() { return copyOf(attendanceIdsByOldStatus); }
+    public void setAttendanceIdsByOldStatus(Map<String, List<String>> attendanceIdsByOldStatus) { this.attendanceIdsByOldStatus = copyOf(attendanceIdsByOldStatus); }
+
+    public Map<String, String> getStudentIdsByAttendanceId() { return studentIdsByAttendanceId == null ? null : Map.copyOf(studentIdsByAttendanceId); }
+    public void setStudentIdsByAttendanceId(Map<String, String> studentIdsByAttendanceId) { this.studentIdsByAttendanceId = studentIdsByAttendanceId == null ? null : Map.copyOf(studentIdsByAttendanceId); }
+
+    private static Map<String, List<String>> copyOf(Map<String, List<String>> source) {
+        if (source == null) {
+            return null;
+        }
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        source.forEach((status, ids) -> copy.put(status, List.copyOf(ids)));
+        return Collections.unmodifiableMap(copy);
+    }
+}
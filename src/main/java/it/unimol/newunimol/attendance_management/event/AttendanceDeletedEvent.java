@@ -8,14 +8,20 @@ public class AttendanceDeletedEvent implements Serializable {
     private String studentId;
     private String courseId;
     private LocalDate lessonDate;
+    private String status; // stato al momento dell'eliminazione
 
     public AttendanceDeletedEvent() {}
 
     public AttendanceDeletedEvent(String attendanceId, String studentId, String courseId, LocalDate lessonDate) {
+        this(attendanceId, studentId, courseId, lessonDate, null);
+    }
+
+    public AttendanceDeletedEvent(String attendanceId, String studentId, String courseId, LocalDate lessonDate, String status) {
         this.attendanceId = attendanceId;
         this.studentId = studentId;
         this.courseId = courseId;
         this.lessonDate = lessonDate;
+        this.status = status;
     }
 
     public String getAttendanceId() { return attendanceId; }
@@ -29,4 +35,7 @@ public class AttendanceDeletedEvent implements Serializable {
 
     public LocalDate getLessonDate() { return lessonDate; }
     public void setLessonDate(LocalDate lessonDate) { this.lessonDate = lessonDate; }
-} 
\ No newline at end of file
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+}
@@ -0,0 +1,77 @@
+package it.unimol.newunimol.attendance_management.event;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Riepilogo delle modifiche alle presenze di una lezione in una finestra di tempo:
+ * per ogni stato gli studenti che vi sono arrivati (ultimo stato nella finestra) e gli studenti
+ * la cui presenza è stata eliminata. Sostituisce, per chi lo sottoscrive, i singoli eventi per riga.
+ * presentCount e recordedCount sono i totali della lezione (presenti e presenze registrate) letti
+ * al momento della pubblicazione, così chi riceve il riepilogo non deve ricontarli.
+ */
+public class AttendanceLessonSummaryEvent implements Serializable {
+    private String courseId;
+    private LocalDate lessonDate;
+    private Map<String, List<String>> studentIdsByStatus;
+    private List<String> deletedStudentIds;
+    private int changes;
+    private long presentCount;
+    private long recordedCount;
+    private LocalDateTime windowStart;
+    private LocalDateTime windowEnd;
+
+    public AttendanceLessonSummaryEvent() {}
+
+    public AttendanceLessonSummaryEvent(String courseId, LocalDate lessonDate, Map<String, List<String>> studentIdsByStatus,
+                                        List<String> deletedStudentIds, int changes, LocalDateTime windowStart, LocalDateTime windowEnd) {
+        this.courseId = courseId;
+        this.lessonDate = lessonDate;
+        this.studentIdsByStatus = copyOf(studentIdsByStatus);
+        this.deletedStudentIds = deletedStudentIds == null ? null : List.copyOf(deletedStudentIds);
+        this.changes = changes;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+    }
+
+    public String getCourseId() { return courseId; }
+    public void setCourseId(String courseId) { this.courseId = courseId; }
+
+    public LocalDate getLessonDate() { return lessonDate; }
+    public void setLessonDate(LocalDate lessonDate) { this.lessonDate = lessonDate; }
+
+    public Map<String, List<String>> getStudentIdsByStatus() { return copyOf(studentIdsByStatus); }
+    public void setStudentIdsByStatus(Map<String, List<String>> studentIdsByStatus) { this.studentIdsByStatus = copyOf(studentIdsByStatus); }
+
+    public List<String> getDeletedStudentIds() { return deletedStudentIds == null ? null : List.copyOf(deletedStudentIds); }
+    public void setDeletedStudentIds(List<String> deletedStudentIds) { this.deletedStudentIds = deletedStudentIds == null ? null : List.copyOf(deletedStudentIds); }
+
+    public int getChanges() { return changes; }
+    public void setChanges(int changes) { this.changes = changes; }
+
+    public long getPresentCount() { return presentCount; }
+    public void setPresentCount(long presentCount) { this.presentCount = presentCount; }
+
+    public long getRecordedCount() { return recordedCount; }
+    public void setRecordedCount(long recordedCount) { this.recordedCount = recordedCount; }
+
+    public LocalDateTime getWindowStart() { return windowStart; }
+    public void setWindowStart(LocalDateTime windowStart) { this.windowStart = windowStart; }
+
+    public LocalDateTime getWindowEnd() { return windowEnd; }
+    public void setWindowEnd(LocalDateTime windowEnd) { this.windowEnd = windowEnd; }
+
+    private static Map<String, List<String>> copyOf(Map<String, List<String>> source) {
+        if (source == null) {
+            return null;
+        }
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        source.forEach((status, ids) -> copy.put(status, List.copyOf(ids)));
+        return Collections.unmodifiableMap(copy);
+    }
+}
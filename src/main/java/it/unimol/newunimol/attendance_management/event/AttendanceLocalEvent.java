@@ -0,0 +1,21 @@
+package it.unimol.newunimol.attendance_management.event;
+
+/**
+ * Evento applicativo Spring che porta a un listener dello stesso processo un evento sulle presenze
+ * (AttendanceCreatedEvent, AttendanceUpdatedEvent, AttendanceBulkUpdatedEvent o AttendanceDeletedEvent).
+ * L'eventId coincide con il messageId del messaggio RabbitMQ corrispondente, se pubblicato,
+ * così la deduplica dei consumer vale per entrambi i percorsi.
+ */
+public class AttendanceLocalEvent {
+    private final String eventId;
+    private final Object payload;
+
+    public AttendanceLocalEvent(String eventId, Object payload) {
+        this.eventId = eventId;
+        this.payload = payload;
+    }
+
+    public String getEventId() { return eventId; }
+
+    public Object getPayload() { return payload; }
+}
@@ -6,6 +6,8 @@ import java.time.LocalTime;
 
 public class AttendanceUpdatedEvent implements Serializable {
     private String attendanceId;
+    private String studentId;
+    private String courseId;
     private String oldStatus;
     private String newStatus;
     private LocalDate lessonDate;
@@ -15,7 +17,13 @@ public class AttendanceUpdatedEvent implements Serializable {
     public AttendanceUpdatedEvent() {}
 
     public AttendanceUpdatedEvent(String attendanceId, String oldStatus, String newStatus, LocalDate lessonDate, LocalTime orarioIngresso, LocalTime orarioUscita) {
+        this(attendanceId, null, null, oldStatus, newStatus, lessonDate, orarioIngresso, orarioUscita);
+    }
+
+    public AttendanceUpdatedEvent(String attendanceId, String studentId, String courseId, String oldStatus, String newStatus, LocalDate lessonDate, LocalTime orarioIngresso, LocalTime orarioUscita) {
         this.attendanceId = attendanceId;
+        this.studentId = studentId;
+        this.courseId = courseId;
         this.oldStatus = oldStatus;
         this.newStatus = newStatus;
         this.lessonDate = lessonDate;
@@ -26,6 +34,12 @@ public class AttendanceUpdatedEvent implements Serializable {
     public String getAttendanceId() { return attendanceId; }
     public void setAttendanceId(String attendanceId) { this.attendanceId = attendanceId; }
 
+    public String getStudentId() { return studentId; }
+    public void setStudentId(String studentId) { this.studentId = studentId; }
+
+    public String getCourseId() { return courseId; }
+    public void setCourseId(String courseId) { this.courseId = courseId; }
+
     public String getOldStatus() { return oldStatus; }
     public void setOldStatus(String oldStatus) { this.oldStatus = oldStatus; }
 
@@ -0,0 +1,53 @@
+package it.unimol.newunimol.attendance_management.event;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * Evento course.scheduled: calendario delle lezioni di un corso appena programmato.
+ */
+public class CourseScheduledEvent implements Serializable {
+    private String courseId;
+    private List<Lesson> lessons;
+
+    public CourseScheduledEvent() {}
+
+    public CourseScheduledEvent(String courseId, List<Lesson> lessons) {
+        this.courseId = courseId;
+        this.lessons = lessons == null ? null : List.copyOf(lessons);
+    }
+
+    public String getCourseId() { return courseId; }
+    public void setCourseId(String courseId) { this.courseId = courseId; }
+
+    public List<Lesson> getLessons() { return lessons == null ? null : List.copyOf(lessons); }
+    public void setLessons(List<Lesson> lessons) { this.lessons = lessons == null ? null : List.copyOf(lessons); }
+
+    /**
+     * Lezione del calendario: data e orario di inizio e fine (opzionali).
+     */
+    public static class Lesson implements Serializable {
+        private LocalDate lessonDate;
+        private LocalTime startTime;
+        private LocalTime endTime;
+
+        public Lesson() {}
+
+        public Lesson(LocalDate lessonDate, LocalTime startTime, LocalTime endTime) {
+            this.lessonDate = lessonDate;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        public LocalDate getLessonDate() { return lessonDate; }
+        public void setLessonDate(LocalDate lessonDate) { this.lessonDate = lessonDate; }
+
+        public LocalTime getStartTime() { return startTime; }
+        public void setStartTime(LocalTime startTime) { this.startTime = startTime; }
+
+        public LocalTime getEndTime() { return endTime; }
+        public void setEndTime(LocalTime endTime) { this.endTime = endTime; }
+    }
+}
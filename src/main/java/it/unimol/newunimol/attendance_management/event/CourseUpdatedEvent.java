@@ -0,0 +1,26 @@
+package it.unimol.newunimol.attendance_management.event;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Evento course.updated: modifica di un corso. Se presente, lessons è il calendario completo
+ * aggiornato e sostituisce quello ricevuto in precedenza; null se il calendario non è cambiato.
+ */
+public class CourseUpdatedEvent implements Serializable {
+    private String courseId;
+    private List<CourseScheduledEvent.Lesson> lessons;
+
+    public CourseUpdatedEvent() {}
+
+    public CourseUpdatedEvent(String courseId, List<CourseScheduledEvent.Lesson> lessons) {
+        this.courseId = courseId;
+        this.lessons = lessons == null ? null : List.copyOf(lessons);
+    }
+
+    public String getCourseId() { return courseId; }
+    public void setCourseId(String courseId) { this.courseId = courseId; }
+
+    public List<CourseScheduledEvent.Lesson> getLessons() { return lessons == null ? null : List.copyOf(lessons); }
+    public void setLessons(List<CourseScheduledEvent.Lesson> lessons) { this.lessons = lessons == null ? null : List.copyOf(lessons); }
+}
@@ -0,0 +1,44 @@
+package it.unimol.newunimol.attendance_management.event;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StatsCacheInvalidatedEvent implements Serializable {
+    private String origin; // ID dell'istanza che ha pubblicato l'invalidazione
+    private boolean all; // true: svuotare tutta la cache
+    private List<String> courseIds;
+    private Map<String, List<String>> studentIdsByCourseId;
+
+    public StatsCacheInvalidatedEvent() {}
+
+    public StatsCacheInvalidatedEvent(String origin, boolean all, List<String> courseIds, Map<String, List<String>> studentIdsByCourseId) {
+        this.origin = origin;
+        this.all = all;
+        this.courseIds = courseIds == null ? null : List.copyOf(courseIds);
+        this.studentIdsByCourseId = copyOf(studentIdsByCourseId);
+    }
+
+    public String getOrigin() { return origin; }
+    public void setOrigin(String origin) { this.origin = origin; }
+
+    public boolean isAll() { return all; }
+    public void setAll(boolean all) { this.all = all; }
+
+    public List<String> getCourseIds() { return courseIds == null ? null : List.copyOf(courseIds); }
+    public void setCourseIds(List<String> courseIds) { this.courseIds = courseIds == null ? null : List.copyOf(courseIds); }
+
+    public Map<String, List<String>> getStudentIdsByCourseId() { return copyOf(studentIdsByCourseId); }
+    public void setStudentIdsByCourseId(Map<String, List<String>> studentIdsByCourseId) { this.studentIdsByCourseId = copyOf(studentIdsByCourseId); }
+
+    private static Map<String, List<String>> copyOf(Map<String, List<String>> source) {
+        if (source == null) {
+            return null;
+        }
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        source.forEach((courseId, ids) -> copy.put(courseId, List.copyOf(ids)));
+        return Collections.unmodifiableMap(copy);
+    }
+}
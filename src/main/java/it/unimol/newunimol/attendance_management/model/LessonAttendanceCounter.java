@@ -0,0 +1,76 @@
+package it.unimol.newunimol.attendance_management.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Contatori materializzati di una lezione: numero di presenze registrate e di presenti.
+ * Aggiornati in modo incrementale dagli eventi attendance.* (vedi AttendanceCounterService).
+ */
+@Entity
+@Table(name = "contatori_lezione")
+@IdClass(LessonAttendanceCounter.Key.class)
+public class LessonAttendanceCounter {
+
+    @Id
+    private String courseId;
+    @Id
+    private LocalDate lessonDate;
+    private long attendanceCount;
+    private long presentCount;
+
+    public LessonAttendanceCounter() {
+        // Costruttore vuoto richiesto da JPA
+    }
+
+    public LessonAttendanceCounter(String courseId, LocalDate lessonDate, long attendanceCount, long presentCount) {
+        this.courseId = courseId;
+        this.lessonDate = lessonDate;
+        this.attendanceCount = attendanceCount;
+        this.presentCount = presentCount;
+    }
+
+    public String getCourseId() { return courseId; }
+
+    public LocalDate getLessonDate() { return lessonDate; }
+
+    public long getAttendanceCount() { return attendanceCount; }
+
+    public long getPresentCount() { return presentCount; }
+
+    /**
+     * Chiave composta (courseId, lessonDate).
+     */
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String courseId;
+        private LocalDate lessonDate;
+
+        public Key() {
+            // Costruttore vuoto richiesto da JPA
+        }
+
+        public Key(String courseId, LocalDate lessonDate) {
+            this.courseId = courseId;
+            this.lessonDate = lessonDate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key other)) return false;
+            return Objects.equals(courseId, other.courseId) && Objects.equals(lessonDate, other.lessonDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(courseId, lessonDate);
+        }
+    }
+}
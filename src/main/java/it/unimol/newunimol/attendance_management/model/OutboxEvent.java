@@ -0,0 +1,77 @@
+package it.unimol.newunimol.attendance_management.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import org.springframework.data.domain.Persistable;
+import java.time.Instant;
+
+/**
+ * Evento in attesa di pubblicazione su RabbitMQ (transactional outbox).
+ * Viene scritto nella stessa transazione della modifica alle presenze e
+ * inoltrato al broker in background da OutboxRelayService.
+ */
+@Entity
+@Table(name = "outbox_eventi")
+public class OutboxEvent implements Persistable<String> {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+    @Column(nullable = false)
+    private String exchange;
+    @Column(nullable = false)
+    private String routingKey;
+    // Valore dell'header __TypeId__ usato dal converter JSON dei consumer
+    private String eventType;
+    private String contentType;
+    @Lob
+    @Column(nullable = false)
+    private byte[] payload;
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    @Transient
+    private boolean isNew = true;
+
+    public OutboxEvent() {
+        // Costruttore vuoto richiesto da JPA
+    }
+
+    public OutboxEvent(String id, String exchange, String routingKey, String eventType, String contentType, byte[] payload, Instant createdAt) {
+        this.id = id;
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.eventType = eventType;
+        this.contentType = contentType;
+        this.payload = payload.clone();
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String getId() { return id; }
+
+    public String getExchange() { return exchange; }
+
+    public String getRoutingKey() { return routingKey; }
+
+    public String getEventType() { return eventType; }
+
+    public String getContentType() { return contentType; }
+
+    public byte[] getPayload() { return payload.clone(); }
+
+    public Instant getCreatedAt() { return createdAt; }
+
+    @Override
+    public boolean isNew() { return isNew; }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() { this.isNew = false; }
+}
@@ -1,24 +1,43 @@
 package it.unimol.newunimol.attendance_management.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import org.springframework.data.domain.Persistable;
 import java.time.LocalDate;
 import java.time.LocalTime;
 
 @Entity
-@Table(name = "presenze")
-public class Presenza {
+@Table(name = "presenze", indexes = {
+    @Index(name = "idx_presenze_student_course", columnList = "studentId, courseId, status"),
+    @Index(name = "idx_presenze_course_lesson", columnList = "courseId, lessonDate, status"),
+    @Index(name = "idx_presenze_lesson_date", columnList = "lessonDate"),
+    @Index(name = "idx_presenze_student_lesson", columnList = "studentId, lessonDate"),
+    @Index(name = "idx_presenze_course_lesson_id", columnList = "courseId, lessonDate, attendanceId")
+})
+public class Presenza implements Persistable<String> {
 
     @Id
+    @Column(length = 36)
     private String attendanceId;
     private String studentId;
     private String courseId;
     private LocalDate lessonDate;
+    @Column(length = 16)
     private String status;
     private LocalTime orarioIngresso;
     private LocalTime orarioUscita;
 
+    // L'ID è assegnato dall'applicazione: senza questo flag save() farebbe una SELECT (merge) prima di ogni INSERT
+    @Transient
+    private boolean isNew = true;
+
     public Presenza() {
         // Costruttore vuoto richiesto da JPA
     }
@@ -53,4 +72,16 @@ public class Presenza {
 
     public LocalTime getOrarioUscita() { return orarioUscita; }
     public void setOrarioUscita(LocalTime orarioUscita) { this.orarioUscita = orarioUscita; }
-}
\ No newline at end of file
+
+    @Override
+    @JsonIgnore
+    public String getId() { return attendanceId; }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() { return isNew; }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() { this.isNew = false; }
+}
@@ -0,0 +1,35 @@
+package it.unimol.newunimol.attendance_management.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Evento già applicato ai contatori, identificato dal messageId AMQP.
+ * Rende idempotente l'elaborazione con consegna at-least-once.
+ */
+@Entity
+@Table(name = "eventi_elaborati")
+public class ProcessedEvent {
+
+    @Id
+    @Column(length = 64)
+    private String eventId;
+    @Column(nullable = false)
+    private Instant processedAt;
+
+    public ProcessedEvent() {
+        // Costruttore vuoto richiesto da JPA
+    }
+
+    public ProcessedEvent(String eventId, Instant processedAt) {
+        this.eventId = eventId;
+        this.processedAt = processedAt;
+    }
+
+    public String getEventId() { return eventId; }
+
+    public Instant getProcessedAt() { return processedAt; }
+}
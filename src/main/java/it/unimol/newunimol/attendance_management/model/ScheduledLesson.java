@@ -0,0 +1,77 @@
+package it.unimol.newunimol.attendance_management.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Objects;
+
+/**
+ * Lezione del calendario di un corso, ricevuta dagli eventi course.scheduled e course.updated.
+ * È la fonte del numero di lezioni di un corso, anche per quelle senza presenze registrate.
+ */
+@Entity
+@Table(name = "calendario_lezioni")
+@IdClass(ScheduledLesson.Key.class)
+public class ScheduledLesson {
+
+    @Id
+    private String courseId;
+    @Id
+    private LocalDate lessonDate;
+    private LocalTime startTime;
+    private LocalTime endTime;
+
+    public ScheduledLesson() {
+        // Costruttore vuoto richiesto da JPA
+    }
+
+    public ScheduledLesson(String courseId, LocalDate lessonDate, LocalTime startTime, LocalTime endTime) {
+        this.courseId = courseId;
+        this.lessonDate = lessonDate;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    public String getCourseId() { return courseId; }
+
+    public LocalDate getLessonDate() { return lessonDate; }
+
+    public LocalTime getStartTime() { return startTime; }
+
+    public LocalTime getEndTime() { return endTime; }
+
+    /**
+     * Chiave composta (courseId, lessonDate).
+     */
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String courseId;
+        private LocalDate lessonDate;
+
+        public Key() {
+            // Costruttore vuoto richiesto da JPA
+        }
+
+        public Key(String courseId, LocalDate lessonDate) {
+            this.courseId = courseId;
+            this.lessonDate = lessonDate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key other)) return false;
+            return Objects.equals(courseId, other.courseId) && Objects.equals(lessonDate, other.lessonDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(courseId, lessonDate);
+        }
+    }
+}
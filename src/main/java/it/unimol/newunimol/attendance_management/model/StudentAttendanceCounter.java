@@ -0,0 +1,71 @@
+package it.unimol.newunimol.attendance_management.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Contatore materializzato delle presenze di uno studente a un corso.
+ * Aggiornato in modo incrementale dagli eventi attendance.* (vedi AttendanceCounterService).
+ */
+@Entity
+@Table(name = "contatori_studente")
+@IdClass(StudentAttendanceCounter.Key.class)
+public class StudentAttendanceCounter {
+
+    @Id
+    private String studentId;
+    @Id
+    private String courseId;
+    private long presentCount;
+
+    public StudentAttendanceCounter() {
+        // Costruttore vuoto richiesto da JPA
+    }
+
+    public StudentAttendanceCounter(String studentId, String courseId, long presentCount) {
+        this.studentId = studentId;
+        this.courseId = courseId;
+        this.presentCount = presentCount;
+    }
+
+    public String getStudentId() { return studentId; }
+
+    public String getCourseId() { return courseId; }
+
+    public long getPresentCount() { return presentCount; }
+
+    /**
+     * Chiave composta (studentId, courseId).
+     */
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String studentId;
+        private String courseId;
+
+        public Key() {
+            // Costruttore vuoto richiesto da JPA
+        }
+
+        public Key(String studentId, String courseId) {
+            this.studentId = studentId;
+            this.courseId = courseId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key other)) return false;
+            return Objects.equals(studentId, other.studentId) && Objects.equals(courseId, other.courseId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(studentId, courseId);
+        }
+    }
+}
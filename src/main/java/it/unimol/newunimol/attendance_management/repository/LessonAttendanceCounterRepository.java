@@ -0,0 +1,60 @@
+package it.unimol.newunimol.attendance_management.repository;
+
+import java.time.LocalDate;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import it.unimol.newunimol.attendance_management.model.LessonAttendanceCounter;
+
+@Repository
+public interface LessonAttendanceCounterRepository extends JpaRepository<LessonAttendanceCounter, LessonAttendanceCounter.Key> {
+
+    /**
+     * Applica in modo atomico una variazione ai contatori di una lezione.
+     * @return numero di righe aggiornate (0 se il contatore non esiste ancora)
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE LessonAttendanceCounter c SET c.attendanceCount = c.attendanceCount + :attendanceDelta, "
+            + "c.presentCount = c.presentCount + :presentDelta "
+            + "WHERE c.courseId = :courseId AND c.lessonDate = :lessonDate")
+    int increment(@Param("courseId") String courseId, @Param("lessonDate") LocalDate lessonDate,
+                  @Param("attendanceDelta") long attendanceDelta, @Param("presentDelta") long presentDelta);
+
+    /**
+     * Totali di un corso. Le lezioni sono quelle del calendario già svolte (data non successiva a today)
+     * più le lezioni fuori calendario con almeno una presenza registrata; senza calendario il risultato
+     * coincide con il conteggio delle sole lezioni con presenze.
+     * @param courseId l'ID del corso
+     * @param today la data di riferimento
+     * @return numero di lezioni e somma dei presenti
+     */
+    @Query("SELECT (SELECT COUNT(l) FROM ScheduledLesson l WHERE l.courseId = :courseId AND l.lessonDate <= :today) "
+            + "+ COALESCE(SUM(CASE WHEN c.attendanceCount > 0 AND NOT EXISTS (SELECT 1 FROM ScheduledLesson s "
+            + "WHERE s.courseId = c.courseId AND s.lessonDate = c.lessonDate AND s.lessonDate <= :today) THEN 1 ELSE 0 END), 0) AS lessons, "
+            + "COALESCE(SUM(c.presentCount), 0) AS presences "
+            + "FROM LessonAttendanceCounter c WHERE c.courseId = :courseId")
+    CourseTotals getCourseTotals(@Param("courseId") String courseId, @Param("today") LocalDate today);
+
+    /**
+     * Ricostruisce i contatori di tutte le lezioni a partire dalla tabella presenze.
+     * @return numero di contatori creati
+     */
+    @Modifying
+    @Query("INSERT INTO LessonAttendanceCounter (courseId, lessonDate, attendanceCount, presentCount) "
+            + "SELECT p.courseId, p.lessonDate, COUNT(p), SUM(CASE WHEN LOWER(p.status) = 'present' THEN 1 ELSE 0 END) "
+            + "FROM Presenza p WHERE p.courseId IS NOT NULL AND p.lessonDate IS NOT NULL "
+            + "GROUP BY p.courseId, p.lessonDate")
+    int rebuildFromAttendances();
+
+    /**
+     * Proiezione con i totali di un corso.
+     */
+    interface CourseTotals {
+        Long getLessons();
+        Long getPresences();
+    }
+}
@@ -0,0 +1,28 @@
+package it.unimol.newunimol.attendance_management.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import it.unimol.newunimol.attendance_management.model.OutboxEvent;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, String> {
+
+    /**
+     * Blocca il prossimo lotto di eventi da inoltrare, in ordine di inserimento (ID UUIDv7).
+     * Le righe già bloccate da un'altra replica vengono saltate (SKIP LOCKED), così più istanze
+     * possono svuotare l'outbox in parallelo senza pubblicare due volte lo stesso lotto.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT o FROM OutboxEvent o ORDER BY o.id")
+    List<OutboxEvent> lockNextBatch(Pageable pageable);
+}
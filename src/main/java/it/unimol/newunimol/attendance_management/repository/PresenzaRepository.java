@@ -1,12 +1,161 @@
 package it.unimol.newunimol.attendance_management.repository;
 
 import it.unimol.newunimol.attendance_management.model.Presenza;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 import java.time.LocalDate;
+import java.time.LocalTime;
 
 public interface PresenzaRepository extends JpaRepository<Presenza, String> {
     List<Presenza> findByStudentId(String studentId);
     List<Presenza> findByCourseId(String courseId);
     List<Presenza> findByLessonDate(LocalDate date);
-} 
\ No newline at end of file
+
+    // Paginazione keyset: ordinamento stabile su (lessonDate, attendanceId), il cursore è l'ultima riga letta
+    List<Presenza> findByStudentIdOrderByLessonDateAscAttendanceIdAsc(String studentId, Pageable pageable);
+    List<Presenza> findByCourseIdOrderByLessonDateAscAttendanceIdAsc(String courseId, Pageable pageable);
+    List<Presenza> findByLessonDateOrderByAttendanceIdAsc(LocalDate date, Pageable pageable);
+
+    @Query("SELECT p FROM Presenza p WHERE p.studentId = :studentId "
+            + "AND (p.lessonDate > :lessonDate OR (p.lessonDate = :lessonDate AND p.attendanceId > :attendanceId)) "
+            + "ORDER BY p.lessonDate, p.attendanceId")
+    List<Presenza> findByStudentIdAfter(@Param("studentId") String studentId, @Param("lessonDate") LocalDate lessonDate,
+                                        @Param("attendanceId") String attendanceId, Pageable pageable);
+
+    @Query("SELECT p FROM Presenza p WHERE p.courseId = :courseId "
+            + "AND (p.lessonDate > :lessonDate OR (p.lessonDate = :lessonDate AND p.attendanceId > :attendanceId)) "
+            + "ORDER BY p.lessonDate, p.attendanceId")
+    List<Presenza> findByCourseIdAfter(@Param("courseId") String courseId, @Param("lessonDate") LocalDate lessonDate,
+                                       @Param("attendanceId") String attendanceId, Pageable pageable);
+
+    @Query("SELECT p FROM Presenza p WHERE p.lessonDate = :lessonDate AND p.attendanceId > :attendanceId "
+            + "ORDER BY p.attendanceId")
+    List<Presenza> findByLessonDateAfter(@Param("lessonDate") LocalDate lessonDate,
+                                         @Param("attendanceId") String attendanceId, Pageable pageable);
+
+    // Export in streaming: lettura a blocchi (useCursorFetch su MySQL), entità in sola lettura
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    Stream<Presenza> streamByCourseIdOrderByLessonDateAscAttendanceIdAsc(String courseId);
+
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    Stream<Presenza> streamByLessonDateOrderByAttendanceIdAsc(LocalDate date);
+
+    /**
+     * Restituisce ID e stato attuale delle presenze di una lezione, opzionalmente filtrate per stato.
+     * Le righe lette restano bloccate (SELECT ... FOR UPDATE) fino alla fine della transazione, così
+     * lo stato letto è ancora quello attuale quando updateAttendances le modifica.
+     * @param courseId l'ID del corso
+     * @param lessonDate la data della lezione
+     * @param status lo stato attuale da filtrare, o null per tutte
+     * @return lista di terne (attendanceId, studentId, status)
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p.attendanceId AS attendanceId, p.studentId AS studentId, p.status AS status FROM Presenza p "
+            + "WHERE p.courseId = :courseId AND p.lessonDate = :lessonDate AND (:status IS NULL OR p.status = :status)")
+    List<AttendanceStatus> findStatusesByLesson(@Param("courseId") String courseId, @Param("lessonDate") LocalDate lessonDate,
+                                                @Param("status") String status);
+
+    /**
+     * Aggiorna con un'unica UPDATE le presenze indicate; i valori null lasciano invariato il campo.
+     * @return numero di righe aggiornate
+     */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query("UPDATE Presenza p SET p.status = COALESCE(:status, p.status), "
+            + "p.orarioIngresso = COALESCE(:orarioIngresso, p.orarioIngresso), "
+            + "p.orarioUscita = COALESCE(:orarioUscita, p.orarioUscita) "
+            + "WHERE p.attendanceId IN :attendanceIds")
+    int updateAttendances(@Param("attendanceIds") Collection<String> attendanceIds, @Param("status") String status,
+                          @Param("orarioIngresso") LocalTime orarioIngresso, @Param("orarioUscita") LocalTime orarioUscita);
+
+    /**
+     * Conta presenze registrate e presenti delle lezioni indicate, raggruppate per (corso, data).
+     * Il filtro sulle due liste può includere combinazioni non richieste: vanno scartate dal chiamante.
+     * @param courseIds gli ID dei corsi
+     * @param lessonDates le date delle lezioni
+     * @return una riga per ogni lezione con almeno una presenza
+     */
+    @Query("SELECT p.courseId AS courseId, p.lessonDate AS lessonDate, COUNT(p) AS recordedCount, "
+            + "SUM(CASE WHEN LOWER(p.status) = 'present' THEN 1 ELSE 0 END) AS presentCount "
+            + "FROM Presenza p WHERE p.courseId IN :courseIds AND p.lessonDate IN :lessonDates "
+            + "GROUP BY p.courseId, p.lessonDate")
+    List<LessonTotals> countByLessons(@Param("courseIds") Collection<String> courseIds,
+                                      @Param("lessonDates") Collection<LocalDate> lessonDates);
+
+    /**
+     * Restituisce lo stato delle presenze ancora registrate per gli studenti e le lezioni indicati.
+     * Come per countByLessons il filtro può includere combinazioni non richieste.
+     * @param courseIds gli ID dei corsi
+     * @param lessonDates le date delle lezioni
+     * @param studentIds gli ID degli studenti
+     * @return una riga per ogni presenza trovata
+     */
+    @Query("SELECT p.courseId AS courseId, p.lessonDate AS lessonDate, p.studentId AS studentId, p.status AS status "
+            + "FROM Presenza p WHERE p.courseId IN :courseIds AND p.lessonDate IN :lessonDates AND p.studentId IN :studentIds")
+    List<LessonStudentStatus> findStudentStatusesByLessons(@Param("courseIds") Collection<String> courseIds,
+                                                          @Param("lessonDates") Collection<LocalDate> lessonDates,
+                                                          @Param("studentIds") Collection<String> studentIds);
+
+    /**
+     * Restituisce studente, data e stato di tutte le presenze di un corso, senza caricare le entità.
+     * @param courseId l'ID del corso
+     * @return lista di terne (studentId, lessonDate, status)
+     */
+    @Query("SELECT new it.unimol.newunimol.attendance_management.repository.PresenzaRepository$AttendanceCell("
+            + "p.studentId, p.lessonDate, p.status) FROM Presenza p "
+            + "WHERE p.courseId = :courseId AND p.studentId IS NOT NULL AND p.lessonDate IS NOT NULL")
+    List<AttendanceCell> findCellsByCourseId(@Param("courseId") String courseId);
+
+    /**
+     * Studente, data e stato di una presenza (cella della matrice del corso). È un record e non
+     * una proiezione a interfaccia: per decine di migliaia di righe evita un proxy per riga.
+     */
+    record AttendanceCell(String studentId, LocalDate lessonDate, String status) {}
+
+    /**
+     * Proiezione con ID, studente e stato di una presenza.
+     */
+    interface AttendanceStatus {
+        String getAttendanceId();
+        String getStudentId();
+        String getStatus();
+    }
+
+    /**
+     * Proiezione con i totali di una lezione.
+     */
+    interface LessonTotals {
+        String getCourseId();
+        LocalDate getLessonDate();
+        Long getRecordedCount();
+        Long getPresentCount();
+    }
+
+    /**
+     * Proiezione con lo stato di uno studente in una lezione.
+     */
+    interface LessonStudentStatus {
+        String getCourseId();
+        LocalDate getLessonDate();
+        String getStudentId();
+        String getStatus();
+    }
+}
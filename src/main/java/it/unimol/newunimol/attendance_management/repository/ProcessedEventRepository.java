@@ -0,0 +1,33 @@
+package it.unimol.newunimol.attendance_management.repository;
+
+import java.time.Instant;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import it.unimol.newunimol.attendance_management.model.ProcessedEvent;
+
+@Repository
+public interface ProcessedEventRepository extends JpaRepository<ProcessedEvent, String> {
+
+    /**
+     * Elimina gli ID degli eventi elaborati prima della data indicata.
+     * @return numero di righe eliminate
+     */
+    @Modifying
+    @Query("DELETE FROM ProcessedEvent e WHERE e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") Instant before);
+
+    /**
+     * Registra come elaborati gli eventi ancora in attesa nell'outbox: la loro modifica è già nella
+     * tabella presenze, quindi dopo una ricostruzione dei contatori non vanno applicati di nuovo.
+     * @return numero di ID registrati
+     */
+    @Modifying
+    @Query("INSERT INTO ProcessedEvent (eventId, processedAt) SELECT o.id, :processedAt FROM OutboxEvent o "
+            + "WHERE NOT EXISTS (SELECT e.eventId FROM ProcessedEvent e WHERE e.eventId = o.id)")
+    int markPendingOutboxEvents(@Param("processedAt") Instant processedAt);
+}
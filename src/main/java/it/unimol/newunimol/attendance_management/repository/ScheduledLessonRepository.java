@@ -0,0 +1,44 @@
+package it.unimol.newunimol.attendance_management.repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import it.unimol.newunimol.attendance_management.model.ScheduledLesson;
+
+@Repository
+public interface ScheduledLessonRepository extends JpaRepository<ScheduledLesson, ScheduledLesson.Key> {
+
+    /**
+     * Restituisce le date delle lezioni in calendario di un corso.
+     * @param courseId l'ID del corso
+     * @return le date delle lezioni
+     */
+    @Query("SELECT l.lessonDate FROM ScheduledLesson l WHERE l.courseId = :courseId")
+    List<LocalDate> findLessonDatesByCourseId(@Param("courseId") String courseId);
+
+    /**
+     * Elimina dal calendario di un corso le lezioni non più previste.
+     * @param courseId l'ID del corso
+     * @param lessonDates le date delle lezioni da mantenere (non vuoto)
+     * @return numero di lezioni eliminate
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM ScheduledLesson l WHERE l.courseId = :courseId AND l.lessonDate NOT IN :lessonDates")
+    int deleteByCourseIdAndLessonDateNotIn(@Param("courseId") String courseId, @Param("lessonDates") Collection<LocalDate> lessonDates);
+
+    /**
+     * Elimina tutto il calendario di un corso.
+     * @param courseId l'ID del corso
+     * @return numero di lezioni eliminate
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM ScheduledLesson l WHERE l.courseId = :courseId")
+    int deleteByCourseId(@Param("courseId") String courseId);
+}
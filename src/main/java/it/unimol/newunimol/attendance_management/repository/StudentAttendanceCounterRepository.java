@@ -0,0 +1,43 @@
+package it.unimol.newunimol.attendance_management.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import it.unimol.newunimol.attendance_management.model.StudentAttendanceCounter;
+
+@Repository
+public interface StudentAttendanceCounterRepository extends JpaRepository<StudentAttendanceCounter, StudentAttendanceCounter.Key> {
+
+    /**
+     * Applica in modo atomico una variazione al numero di presenze di uno studente a un corso.
+     * @return numero di righe aggiornate (0 se il contatore non esiste ancora)
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE StudentAttendanceCounter c SET c.presentCount = c.presentCount + :presentDelta "
+            + "WHERE c.studentId = :studentId AND c.courseId = :courseId")
+    int increment(@Param("studentId") String studentId, @Param("courseId") String courseId,
+                  @Param("presentDelta") long presentDelta);
+
+    /**
+     * Restituisce i contatori esistenti degli studenti indicati per un corso.
+     * @return i contatori trovati (gli studenti senza presenze non hanno contatore)
+     */
+    List<StudentAttendanceCounter> findByCourseIdAndStudentIdIn(String courseId, Collection<String> studentIds);
+
+    /**
+     * Ricostruisce i contatori di tutti gli studenti a partire dalla tabella presenze.
+     * @return numero di contatori creati
+     */
+    @Modifying
+    @Query("INSERT INTO StudentAttendanceCounter (studentId, courseId, presentCount) "
+            + "SELECT p.studentId, p.courseId, COUNT(p) FROM Presenza p "
+            + "WHERE LOWER(p.status) = 'present' AND p.studentId IS NOT NULL AND p.courseId IS NOT NULL "
+            + "GROUP BY p.studentId, p.courseId")
+    int rebuildFromAttendances();
+}
@@ -0,0 +1,171 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Comando di recovery: con {@code --attendance.counters.rebuild=true} ricostruisce all'avvio
+ * i contatori delle statistiche dalla tabella presenze.
+ * Prima della ricostruzione le code dei contatori consumate da questa istanza vengono svuotate
+ * (entro attendance.counters.rebuild.drain-timeout-ms), poi i consumer RabbitMQ attivi vengono fermati
+ * (e al termine riavviati solo quelli che erano attivi) e la consegna locale degli eventi viene svuotata
+ * e sospesa; gli eventi ancora nell'outbox sono esclusi da {@link AttendanceCounterService#rebuild()}.
+ * Le altre repliche continuano a consumare e a produrre eventi: va eseguito con una sola replica avviata,
+ * altrimenti gli eventi elaborati altrove durante la ricostruzione possono essere contati due volte.
+ */
+@Component
+@ConditionalOnProperty(name = "attendance.counters.rebuild", havingValue = "true")
+public class AttendanceCounterRebuildRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttendanceCounterRebuildRunner.class);
+    private static final long DRAIN_POLL_MS = 100;
+
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "AttendanceCounterService is a Spring singleton bean, safe to store")
+    private final AttendanceCounterService attendanceCounterService;
+    private final ObjectProvider<RabbitListenerEndpointRegistry> listenerRegistry;
+    private final ObjectProvider<AttendanceLocalEventListener> localEventListener;
+    private final ObjectProvider<ThreadPoolTaskExecutor> localEventExecutor;
+    private final ObjectProvider<AmqpAdmin> amqpAdmin;
+
+    @Value("${attendance.counters.rebuild.drain-timeout-ms:30000}")
+    private long drainTimeoutMs = 30000;
+
+    @Value("${rabbitmq.queue.attendance.created:attendance.created.queue}")
+    private String attendanceCreatedQueue = "attendance.created.queue";
+
+    @Value("${rabbitmq.queue.attendance.updated:attendance.updated.queue}")
+    private String attendanceUpdatedQueue = "attendance.updated.queue";
+
+    @Value("${rabbitmq.queue.attendance.bulk-updated:attendance.bulk.updated.queue}")
+    private String attendanceBulkUpdatedQueue = "attendance.bulk.updated.queue";
+
+    @Value("${rabbitmq.queue.attendance.deleted:attendance.deleted.queue}")
+    private String attendanceDeletedQueue = "attendance.deleted.queue";
+
+    public AttendanceCounterRebuildRunner(AttendanceCounterService attendanceCounterService,
+                                          ObjectProvider<RabbitListenerEndpointRegistry> listenerRegistry,
+                                          ObjectProvider<AttendanceLocalEventListener> localEventListener,
+                                          @Qualifier("localEventExecutor") ObjectProvider<ThreadPoolTaskExecutor> localEventExecutor,
+                                          ObjectProvider<AmqpAdmin> amqpAdmin) {
+        this.attendanceCounterService = attendanceCounterService;
+        this.listenerRegistry = listenerRegistry;
+        this.localEventListener = localEventListener;
+        this.localEventExecutor = localEventExecutor;
+        this.amqpAdmin = amqpAdmin;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws InterruptedException {
+        List<MessageListenerContainer> stopped = stopRunningContainers();
+        AttendanceLocalEventListener listener = localEventListener.getIfAvailable();
+        try {
+            if (listener != null) {
+                drainLocalEvents();
+                listener.suspend();
+            }
+            try {
+                logger.info("Ricostruzione dei contatori delle statistiche in corso");
+                attendanceCounterService.rebuild();
+            } finally {
+                if (listener != null) {
+                    listener.resume();
+                }
+            }
+        } finally {
+            stopped.forEach(MessageListenerContainer::start);
+        }
+    }
+
+    private List<MessageListenerContainer> stopRunningContainers() throws InterruptedException {
+        List<MessageListenerContainer> stopped = new ArrayList<>();
+        RabbitListenerEndpointRegistry registry = listenerRegistry.getIfAvailable();
+        if (registry == null) {
+            return stopped;
+        }
+        drainCounterQueues(registry);
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            if (container.isRunning()) {
+                container.stop();
+                stopped.add(container);
+            }
+        }
+        return stopped;
+    }
+
+    // Attende che i consumer attivi svuotino le code dei contatori: i messaggi già inoltrati dall'outbox
+    // non sono più riconoscibili e, se consumati dopo la ricostruzione, verrebbero contati due volte
+    private void drainCounterQueues(RabbitListenerEndpointRegistry registry) throws InterruptedException {
+        AmqpAdmin admin = amqpAdmin.getIfAvailable();
+        if (admin == null) {
+            return;
+        }
+        Set<String> counterQueues = Set.of(attendanceCreatedQueue, attendanceUpdatedQueue,
+            attendanceBulkUpdatedQueue, attendanceDeletedQueue);
+        List<String> queues = new ArrayList<>();
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            if (container.isRunning() && container instanceof AbstractMessageListenerContainer listenerContainer) {
+                for (String queue : listenerContainer.getQueueNames()) {
+                    if (counterQueues.contains(queue)) {
+                        queues.add(queue);
+                    }
+                }
+            }
+        }
+        long deadline = System.currentTimeMillis() + drainTimeoutMs;
+        for (String queue : queues) {
+            while (pendingMessages(admin, queue) > 0) {
+                if (System.currentTimeMillis() >= deadline) {
+                    logger.warn("Coda {} non svuotata dopo {} ms: la ricostruzione procede comunque", queue, drainTimeoutMs);
+                    return;
+                }
+                Thread.sleep(DRAIN_POLL_MS);
+            }
+        }
+    }
+
+    private static long pendingMessages(AmqpAdmin admin, String queue) {
+        try {
+            QueueInformation info = admin.getQueueInfo(queue);
+            return info == null ? 0 : info.getMessageCount();
+        } catch (AmqpException e) {
+            logger.warn("Stato della coda {} non disponibile: {}", queue, e.getMessage());
+            return 0;
+        }
+    }
+
+    // Attende che gli eventi locali già accodati siano applicati, così non finiscono dopo la ricostruzione
+    private void drainLocalEvents() throws InterruptedException {
+        ThreadPoolTaskExecutor executor = localEventExecutor.getIfAvailable();
+        if (executor == null) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + drainTimeoutMs;
+        while (executor.getQueueSize() > 0 || executor.getActiveCount() > 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                logger.warn("Eventi locali ancora in coda dopo {} ms: la ricostruzione procede comunque", drainTimeoutMs);
+                return;
+            }
+            Thread.sleep(DRAIN_POLL_MS);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import it.unimol.newunimol.attendance_management.event.AttendanceBulkUpdatedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceCreatedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceDeletedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceUpdatedEvent;
+import it.unimol.newunimol.attendance_management.model.LessonAttendanceCounter;
+import it.unimol.newunimol.attendance_management.model.ProcessedEvent;
+import it.unimol.newunimol.attendance_management.model.StudentAttendanceCounter;
+import it.unimol.newunimol.attendance_management.repository.LessonAttendanceCounterRepository;
+import it.unimol.newunimol.attendance_management.repository.ProcessedEventRepository;
+import it.unimol.newunimol.attendance_management.repository.StudentAttendanceCounterRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Service che mantiene il read model delle statistiche: contatori per lezione
+ * (presenze registrate e presenti) e per studente/corso (presenti).
+ * I contatori sono aggiornati con variazioni (delta) calcolate dal solo contenuto dell'evento,
+ * quindi il risultato non dipende dall'ordine di arrivo tra code diverse; gli eventi già
+ * applicati vengono riconosciuti dal messageId e ignorati.
+ */
+@Service
+public class AttendanceCounterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttendanceCounterService.class);
+
+    private static final String PRESENT = "present";
+
+    @Autowired
+    private LessonAttendanceCounterRepository lessonCounterRepository;
+
+    @Autowired
+    private StudentAttendanceCounterRepository studentCounterRepository;
+
+    @Autowired
+    private ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    private AttendanceStatsCache statsCache;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${attendance.counters.processed-events.retention-days:7}")
+    private long processedEventsRetentionDays = 7;
+
+    /**
+     * Applica un evento di creazione presenza.
+     * @param eventId il messageId dell'evento, o null se assente (nessuna deduplica)
+     * @param event l'evento ricevuto
+     */
+    @Transactional
+    public void applyCreated(String eventId, AttendanceCreatedEvent event) {
+        if (!markProcessed(eventId)) {
+            return;
+        }
+        long present = presentDelta(event.getStatus());
+        addToLesson(event.getCourseId(), event.getLessonDate(), 1, present);
+        addToStudent(event.getStudentId(), event.getCourseId(), present);
+    }
+
+    /**
+     * Applica un evento di modifica presenza (transizione oldStatus → newStatus).
+     * @param eventId il messageId dell'evento, o null se assente (nessuna deduplica)
+     * @param event l'evento ricevuto
+     */
+    @Transactional
+    public void applyUpdated(String eventId, AttendanceUpdatedEvent event) {
+        if (!markProcessed(eventId)) {
+            return;
+        }
+        if (event.getCourseId() == null) {
+            logger.warn("AttendanceUpdatedEvent {} senza courseId: contatori non aggiornati", event.getAttendanceId());
+            return;
+        }
+        long present = presentDelta(event.getNewStatus()) - presentDelta(event.getOldStatus());
+        addToLesson(event.getCourseId(), event.getLessonDate(), 0, present);
+        addToStudent(event.getStudentId(), event.getCourseId(), present);
+    }
+
+    /**
+     * Applica un evento aggregato di modifica delle presenze di una lezione.
+     * @param eventId il messageId dell'evento, o null se assente (nessuna deduplica)
+     * @param event l'evento ricevuto
+     */
+    @Transactional
+    public void applyBulkUpdated(String eventId, AttendanceBulkUpdatedEvent event) {
+        if (!markProcessed(eventId) || event.getNewStatus() == null || event.getAttendanceIdsByOldStatus() == null) {
+            return;
+        }
+        Map<String, String> studentIds = event.getStudentIdsByAttendanceId() != null
+            ? event.getStudentIdsByAttendanceId() : Map.of();
+        long lessonDelta = 0;
+        Map<String, Long> studentDeltas = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : event.getAttendanceIdsByOldStatus().entrySet()) {
+            long delta = presentDelta(event.getNewStatus()) - presentDelta(entry.getKey());
+            if (delta == 0) {
+                continue;
+            }
+            for (String attendanceId : entry.getValue()) {
+                lessonDelta += delta;
+                String studentId = studentIds.get(attendanceId);
+                if (studentId != null) {
+                    studentDeltas.merge(studentId, delta, Long::sum);
+                }
+            }
+        }
+        addToLesson(event.getCourseId(), event.getLessonDate(), 0, lessonDelta);
+        studentDeltas.forEach((studentId, delta) -> addToStudent(studentId, event.getCourseId(), delta));
+    }
+
+    /**
+     * Applica un evento di eliminazione presenza.
+     * @param eventId il messageId dell'evento, o null se assente (nessuna deduplica)
+     * @param event l'evento ricevuto
+     */
+    @Transactional
+    public void applyDeleted(String eventId, AttendanceDeletedEvent event) {
+        if (!markProcessed(eventId)) {
+            return;
+        }
+        long present = -presentDelta(event.getStatus());
+        addToLesson(event.getCourseId(), event.getLessonDate(), -1, present);
+        addToStudent(event.getStudentId(), event.getCourseId(), present);
+    }
+
+    /**
+     * Restituisce numero di lezioni e somma dei presenti di un corso.
+     * Le lezioni sono contate dal calendario (fino a oggi) e dai contatori delle lezioni fuori calendario.
+     * @param courseId l'ID del corso
+     * @return i totali del corso
+     */
+    @Transactional(readOnly = true)
+    public LessonAttendanceCounterRepository.CourseTotals getCourseTotals(String courseId) {
+        return lessonCounterRepository.getCourseTotals(courseId, LocalDate.now());
+    }
+
+    /**
+     * Restituisce il numero di presenze di uno studente a un corso.
+     * @param studentId l'ID dello studente
+     * @param courseId l'ID del corso
+     * @return il numero di presenze
+     */
+    @Transactional(readOnly = true)
+    public long getStudentPresentCount(String studentId, String courseId) {
+        return studentCounterRepository.findById(new StudentAttendanceCounter.Key(studentId, courseId))
+            .map(StudentAttendanceCounter::getPresentCount)
+            .orElse(0L);
+    }
+
+    /**
+     * Restituisce con una sola query il numero di presenze di più studenti a un corso.
+     * @param courseId l'ID del corso
+     * @param studentIds gli ID degli studenti
+     * @return mappa studentId → numero di presenze (0 per gli studenti senza contatore)
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Long> getStudentPresentCounts(String courseId, Collection<String> studentIds) {
+        Map<String, Long> counts = new HashMap<>();
+        studentIds.forEach(studentId -> counts.put(studentId, 0L));
+        studentCounterRepository.findByCourseIdAndStudentIdIn(courseId, studentIds)
+            .forEach(c -> counts.put(c.getStudentId(), c.getPresentCount()));
+        return counts;
+    }
+
+    /**
+     * Ricostruisce da zero tutti i contatori a partire dalla tabella presenze.
+     * Nella stessa transazione gli eventi ancora nell'outbox vengono registrati come elaborati, perché
+     * la loro modifica è già compresa nella ricostruzione. Non copre i messaggi già inoltrati al broker
+     * e non ancora consumati, né quelli consumati da altre repliche: va eseguita dopo aver svuotato le code
+     * e con una sola replica avviata (vedi AttendanceCounterRebuildRunner).
+     * @return numero di contatori (lezione + studente) ricreati
+     */
+    @Transactional
+    public int rebuild() {
+        int pending = processedEventRepository.markPendingOutboxEvents(Instant.now());
+        lessonCounterRepository.deleteAllInBatch();
+        studentCounterRepository.deleteAllInBatch();
+        int lessons = lessonCounterRepository.rebuildFromAttendances();
+        int students = studentCounterRepository.rebuildFromAttendances();
+        statsCache.evictAll();
+        logger.info("Contatori ricostruiti: {} lezioni, {} studente/corso, {} eventi in outbox esclusi", lessons, students, pending);
+        return lessons + students;
+    }
+
+    /**
+     * Elimina periodicamente gli ID degli eventi elaborati più vecchi della finestra di deduplica.
+     */
+    @Scheduled(cron = "${attendance.counters.processed-events.cleanup-cron:0 0 3 * * *}")
+    @Transactional
+    public void purgeProcessedEvents() {
+        int purged = processedEventRepository.deleteProcessedBefore(
+            Instant.now().minus(Duration.ofDays(processedEventsRetentionDays)));
+        logger.info("Eliminati {} ID di eventi elaborati", purged);
+    }
+
+    private boolean markProcessed(String eventId) {
+        if (eventId == null) {
+            return true;
+        }
+        if (processedEventRepository.existsById(eventId)) {
+            logger.debug("Evento {} già applicato ai contatori, ignorato", eventId);
+            return false;
+        }
+        entityManager.persist(new ProcessedEvent(eventId, Instant.now()));
+        return true;
+    }
+
+    private void addToLesson(String courseId, LocalDate lessonDate, long attendanceDelta, long presentDelta) {
+        if (courseId == null || lessonDate == null || (attendanceDelta == 0 && presentDelta == 0)) {
+            return;
+        }
+        statsCache.evictCourse(courseId);
+        if (lessonCounterRepository.increment(courseId, lessonDate, attendanceDelta, presentDelta) == 0) {
+            entityManager.persist(new LessonAttendanceCounter(courseId, lessonDate, attendanceDelta, presentDelta));
+        }
+    }
+
+    private void addToStudent(String studentId, String courseId, long presentDelta) {
+        if (studentId == null || courseId == null || presentDelta == 0) {
+            return;
+        }
+        statsCache.evictStudentCourse(studentId, courseId);
+        if (studentCounterRepository.increment(studentId, courseId, presentDelta) == 0) {
+            entityManager.persist(new StudentAttendanceCounter(studentId, courseId, presentDelta));
+        }
+    }
+
+    private static long presentDelta(String status) {
+        return PRESENT.equalsIgnoreCase(status) ? 1 : 0;
+    }
+}
@@ -0,0 +1,119 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.micrometer.core.annotation.Timed;
+import it.unimol.newunimol.attendance_management.event.AttendanceBulkUpdatedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceCreatedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceDeletedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceLocalEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceUpdatedEvent;
+
+/**
+ * Applica ai contatori delle statistiche gli eventi sulle presenze prodotti da questa istanza,
+ * senza passare dal broker: riceve l'evento applicativo dopo il commit della transazione che lo ha
+ * generato e lo elabora in modo asincrono. Sostituisce i consumer RabbitMQ delle code attendance.*
+ * quando attendance.events.delivery=local.
+ * Con più worker due eventi della stessa lezione o dello stesso studente possono creare insieme la
+ * riga del contatore (chiave duplicata) o andare in deadlock: la transazione di applicazione viene
+ * annullata per intero, compresa la registrazione dell'evento come elaborato, e ritentata fino a
+ * attendance.events.local.max-attempts volte.
+ * Durante la ricostruzione dei contatori l'applicazione viene sospesa con {@link #suspend()}:
+ * gli eventi ricevuti nel frattempo attendono {@link #resume()}.
+ * Un evento non applicato (errore o arresto del processo prima dell'elaborazione) lascia i contatori
+ * indietro fino alla ricostruzione (attendance.counters.rebuild=true).
+ */
+@Timed(value = "attendance.events.consume", description = "Durata dell'elaborazione degli eventi ricevuti")
+@Service
+@ConditionalOnProperty(name = "attendance.events.delivery", havingValue = "local", matchIfMissing = true)
+public class AttendanceLocalEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttendanceLocalEventListener.class);
+
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "AttendanceCounterService is a Spring singleton bean, safe to store")
+    private final AttendanceCounterService attendanceCounterService;
+
+    // Lettura: applicazione di un evento; scrittura: ricostruzione dei contatori in corso
+    private final ReadWriteLock applyLock = new ReentrantReadWriteLock();
+
+    @Value("${attendance.events.local.max-attempts:3}")
+    private int maxAttempts = 3;
+
+    public AttendanceLocalEventListener(AttendanceCounterService attendanceCounterService) {
+        this.attendanceCounterService = attendanceCounterService;
+    }
+
+    @Async("localEventExecutor")
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void handleAttendanceEvent(AttendanceLocalEvent event) {
+        applyLock.readLock().lock();
+        try {
+            applyWithRetry(event);
+        } finally {
+            applyLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sospende l'applicazione degli eventi: attende la fine di quelli in corso e blocca i successivi
+     * fino a {@link #resume()}, da chiamare dallo stesso thread.
+     */
+    public void suspend() {
+        applyLock.writeLock().lock();
+    }
+
+    /**
+     * Riprende l'applicazione degli eventi sospesa con {@link #suspend()}.
+     */
+    public void resume() {
+        applyLock.writeLock().unlock();
+    }
+
+    private void applyWithRetry(AttendanceLocalEvent event) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                apply(event);
+                return;
+            } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    logger.error("Evento locale {} non applicato ai contatori dopo {} tentativi: {}",
+                            event.getEventId(), attempt, e.getMessage(), e);
+                    return;
+                }
+                logger.debug("Conflitto sui contatori per l'evento locale {} (tentativo {}), ritento: {}",
+                        event.getEventId(), attempt, e.getMessage());
+            } catch (Exception e) {
+                logger.error("Evento locale {} non applicato ai contatori: {}", event.getEventId(), e.getMessage(), e);
+                return;
+            }
+        }
+    }
+
+    private void apply(AttendanceLocalEvent event) {
+        Object payload = event.getPayload();
+        if (payload instanceof AttendanceCreatedEvent created) {
+            attendanceCounterService.applyCreated(event.getEventId(), created);
+        } else if (payload instanceof AttendanceUpdatedEvent updated) {
+            attendanceCounterService.applyUpdated(event.getEventId(), updated);
+        } else if (payload instanceof AttendanceBulkUpdatedEvent bulkUpdated) {
+            attendanceCounterService.applyBulkUpdated(event.getEventId(), bulkUpdated);
+        } else if (payload instanceof AttendanceDeletedEvent deleted) {
+            attendanceCounterService.applyDeleted(event.getEventId(), deleted);
+        } else {
+            logger.warn("Evento locale non gestito: {}", payload == null ? null : payload.getClass().getSimpleName());
+        }
+    }
+}
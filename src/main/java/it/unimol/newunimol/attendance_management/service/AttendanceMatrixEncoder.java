@@ -0,0 +1,122 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+import it.unimol.newunimol.attendance_management.DTO.AttendanceMatrixDTO;
+import it.unimol.newunimol.attendance_management.repository.PresenzaRepository;
+
+/**
+ * Costruisce la matrice studenti × lezioni di un corso con gli stati compressi in un array di bit:
+ * 2 bit per cella finché gli stati distinti sono al più tre (present, absent e un terzo), altrimenti 4 o 8.
+ * Gli indici di studenti (ordine alfabetico) e lezioni (ordine di data) sono densi; i totali
+ * per riga e per colonna sono calcolati nello stesso passaggio in cui vengono scritte le celle.
+ */
+public final class AttendanceMatrixEncoder {
+
+    private static final String PRESENT = "present";
+    private static final String ABSENT = "absent";
+
+    private AttendanceMatrixEncoder() {
+    }
+
+    /**
+     * @param courseId l'ID del corso
+     * @param scheduledDates le date del calendario del corso (colonne anche senza presenze)
+     * @param rows le presenze del corso
+     * @return la matrice del corso
+     */
+    public static AttendanceMatrixDTO encode(String courseId, Collection<LocalDate> scheduledDates,
+                                             List<PresenzaRepository.AttendanceCell> rows) {
+        // Primo passaggio: indici densi di studenti, lezioni e stati
+        TreeSet<String> students = new TreeSet<>();
+        TreeSet<LocalDate> lessons = new TreeSet<>(scheduledDates);
+        List<String> statuses = new ArrayList<>(List.of(PRESENT, ABSENT));
+        Map<String, Integer> codes = new HashMap<>(Map.of(PRESENT, 1, ABSENT, 2));
+        for (PresenzaRepository.AttendanceCell row : rows) {
+            students.add(row.studentId());
+            lessons.add(row.lessonDate());
+            codes.computeIfAbsent(normalize(row.status()), status -> {
+                statuses.add(status);
+                return statuses.size();
+            });
+        }
+        Map<String, Integer> studentIndex = index(students);
+        Map<LocalDate, Integer> lessonIndex = index(lessons);
+        int columns = lessons.size();
+        int bitsPerCell = bitsPerCell(statuses.size());
+        int mask = (1 << bitsPerCell) - 1;
+
+        // Secondo passaggio: celle e totali
+        byte[] cells = new byte[(int) (((long) students.size() * columns * bitsPerCell + 7) / 8)];
+        int[] presentByStudent = new int[students.size()];
+        int[] presentByLesson = new int[columns];
+        int[] recordedByLesson = new int[columns];
+        for (PresenzaRepository.AttendanceCell row : rows) {
+            int student = studentIndex.get(row.studentId());
+            int lesson = lessonIndex.get(row.lessonDate());
+            int code = codes.get(normalize(row.status()));
+            long bit = ((long) student * columns + lesson) * bitsPerCell;
+            int offset = (int) (bit >>> 3);
+            int shift = (int) (bit & 7);
+            int previous = (cells[offset] >>> shift) & mask;
+            // Più presenze dello stesso studente nella stessa lezione: vale l'ultima letta
+            if (previous != 0) {
+                recordedByLesson[lesson]--;
+                if (previous == 1) {
+                    presentByStudent[student]--;
+                    presentByLesson[lesson]--;
+                }
+            }
+            cells[offset] = (byte) ((cells[offset] & ~(mask << shift)) | (code << shift));
+            recordedByLesson[lesson]++;
+            if (code == 1) {
+                presentByStudent[student]++;
+                presentByLesson[lesson]++;
+            }
+        }
+        return new AttendanceMatrixDTO(courseId, List.copyOf(students), List.copyOf(lessons), statuses, bitsPerCell,
+            Base64.getEncoder().encodeToString(cells), toList(presentByStudent), toList(presentByLesson), toList(recordedByLesson));
+    }
+
+    private static String normalize(String status) {
+        return status == null ? "" : status.toLowerCase(Locale.ROOT);
+    }
+
+    // Bit per cella (divisore di 8, così una cella non è mai divisa tra due byte); il codice 0 è la cella vuota
+    private static int bitsPerCell(int statuses) {
+        if (statuses < 4) {
+            return 2;
+        }
+        if (statuses < 16) {
+            return 4;
+        }
+        if (statuses < 256) {
+            return 8;
+        }
+        throw new IllegalStateException("Troppi stati distinti per la matrice delle presenze: " + statuses);
+    }
+
+    private static <T> Map<T, Integer> index(Collection<T> values) {
+        Map<T, Integer> index = new HashMap<>(values.size() * 2);
+        for (T value : values) {
+            index.put(value, index.size());
+        }
+        return index;
+    }
+
+    private static List<Integer> toList(int[] values) {
+        List<Integer> list = new ArrayList<>(values.length);
+        for (int value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
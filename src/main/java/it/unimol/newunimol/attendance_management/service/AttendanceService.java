@@ -1,39 +1,92 @@
 package it.unimol.newunimol.attendance_management.service;
 
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
 import it.unimol.newunimol.attendance_management.model.Presenza;
+import it.unimol.newunimol.attendance_management.repository.LessonAttendanceCounterRepository;
 import it.unimol.newunimol.attendance_management.repository.PresenzaRepository;
+import it.unimol.newunimol.attendance_management.repository.ScheduledLessonRepository;
 import it.unimol.newunimol.attendance_management.DTO.AttendanceUpdateDTO;
+import it.unimol.newunimol.attendance_management.DTO.AttendanceBulkResultDTO;
+import it.unimol.newunimol.attendance_management.DTO.AttendanceCreateDTO;
 import it.unimol.newunimol.attendance_management.DTO.AttendanceDTO;
+import it.unimol.newunimol.attendance_management.DTO.AttendanceLessonUpdateDTO;
+import it.unimol.newunimol.attendance_management.DTO.AttendanceMatrixDTO;
+import it.unimol.newunimol.attendance_management.event.AttendanceBulkUpdatedEvent;
+import it.unimol.newunimol.attendance_management.DTO.AttendancePageDTO;
+import it.unimol.newunimol.attendance_management.util.Uuid7;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.stream.Stream;
 import java.time.LocalDate;
 
 /**
  * Service per la gestione delle presenze degli studenti ai corsi.
  * Fornisce metodi per creare, aggiornare, eliminare e ottenere statistiche sulle presenze.
  */
+@Timed(value = "attendance.service", description = "Durata dei metodi di AttendanceService")
 @Service
 public class AttendanceService {
+    /** Dimensione massima di una pagina per le liste paginate. */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /** Numero massimo di presenze registrabili con una singola richiesta massiva. */
+    public static final int MAX_BULK_SIZE = 1000;
+
     @Autowired
     private PresenzaRepository presenzaRepository;
+
+    @Autowired
+    private ScheduledLessonRepository scheduledLessonRepository;
     
     @Autowired
     private EventPublisherService eventPublisherService;
+
+    @Autowired
+    private AttendanceCounterService attendanceCounterService;
+
+    @Autowired
+    private AttendanceStatsCache statsCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
     
     /**
      * Crea una nuova presenza.
      * @param presenza la presenza da aggiungere
      * @return la presenza creata con un nuovo ID
      */
+    @Transactional
     public Presenza createAttendance(Presenza presenza) {
         Presenza newPresenza = new Presenza(
-            UUID.randomUUID().toString(),
+            Uuid7.next(),
             presenza.getStudentId(),
             presenza.getCourseId(),
             presenza.getLessonDate(),
@@ -55,12 +108,69 @@ public class AttendanceService {
         return saved;
     }
 
+    /**
+     * Registra in un'unica transazione le presenze di una lezione (appello).
+     * Gli inserimenti vengono inviati al database in batch JDBC e gli eventi pubblicati su un solo canale.
+     * Le righe non valide vengono scartate singolarmente senza bloccare le altre.
+     * @param rows le presenze da registrare, tutte relative allo stesso corso e data
+     * @return l'esito di ogni riga, nello stesso ordine della richiesta
+     */
+    @Transactional
+    public List<AttendanceBulkResultDTO> createAttendances(List<AttendanceCreateDTO> rows) {
+        if (rows == null || rows.isEmpty()) {
+            throw new IllegalArgumentException("Nessuna presenza da registrare");
+        }
+        if (rows.size() > MAX_BULK_SIZE) {
+            throw new IllegalArgumentException("Al massimo " + MAX_BULK_SIZE + " presenze per richiesta");
+        }
+        AttendanceCreateDTO first = rows.get(0);
+        if (first == null || first.courseId() == null || first.lessonDate() == null) {
+            throw new IllegalArgumentException("courseId e lessonDate sono obbligatori");
+        }
+
+        List<AttendanceBulkResultDTO> results = new ArrayList<>(rows.size());
+        List<Presenza> toSave = new ArrayList<>(rows.size());
+        Set<String> seenStudents = new HashSet<>();
+        for (int i = 0; i < rows.size(); i++) {
+            AttendanceCreateDTO dto = rows.get(i);
+            String error = null;
+            if (dto == null || dto.studentId() == null || dto.studentId().isBlank()) {
+                error = "studentId mancante";
+            } else if (!first.courseId().equals(dto.courseId()) || !first.lessonDate().equals(dto.lessonDate())) {
+                error = "La presenza non appartiene alla stessa lezione";
+            } else if (!seenStudents.add(dto.studentId())) {
+                error = "Studente duplicato nella richiesta";
+            }
+            String studentId = dto == null ? null : dto.studentId();
+            if (error != null) {
+                results.add(new AttendanceBulkResultDTO(i, studentId, null, false, error));
+                continue;
+            }
+            Presenza presenza = new Presenza(
+                Uuid7.next(),
+                dto.studentId(),
+                dto.courseId(),
+                dto.lessonDate(),
+                dto.status(),
+                dto.orarioIngresso(),
+                null // orarioUscita sempre null in creazione
+            );
+            toSave.add(presenza);
+            results.add(new AttendanceBulkResultDTO(i, studentId, presenza.getAttendanceId(), true, null));
+        }
+
+        presenzaRepository.saveAll(toSave);
+        eventPublisherService.publishAttendancesCreated(toSave);
+        return results;
+    }
+
     /**
      * Aggiorna una presenza esistente tramite ID.
      * @param attendanceId l'ID della presenza da aggiornare
      * @param updateDTO il DTO con i nuovi valori
      * @return la presenza aggiornata, o null se non trovata
      */
+    @Transactional
     public Presenza updateAttendance(String attendanceId, AttendanceUpdateDTO updateDTO) {
         return presenzaRepository.findById(attendanceId)
             .map(p -> {
@@ -91,6 +201,8 @@ public class AttendanceService {
                 // Pubblica evento RabbitMQ
                 eventPublisherService.publishAttendanceUpdated(
                     updated.getAttendanceId(),
+                    updated.getStudentId(),
+                    updated.getCourseId(),
                     oldStatus,
                     updated.getStatus(),
                     updated.getLessonDate(),
@@ -102,10 +214,65 @@ public class AttendanceService {
             .orElse(null);
     }
 
+    /**
+     * Aggiorna con un'unica UPDATE tutte le presenze di una lezione, opzionalmente filtrate per stato attuale.
+     * Valgono le stesse regole di updateAttendance: l'entrata in ritardo è consentita solo su assenze
+     * e l'uscita anticipata solo su presenze, quindi richiedono il filtro currentStatus corrispondente.
+     * Le righe della lezione vengono lette con un lock in scrittura, così una modifica concorrente non può
+     * cambiarne lo stato tra la lettura e l'UPDATE e l'evento riporta lo stato precedente corretto.
+     * @param courseId l'ID del corso
+     * @param lessonDate la data della lezione
+     * @param updateDTO il filtro e i nuovi valori
+     * @return gli ID delle presenze aggiornate
+     */
+    @Transactional
+    public List<String> updateLessonAttendances(String courseId, LocalDate lessonDate, AttendanceLessonUpdateDTO updateDTO) {
+        if (updateDTO.status() == null && updateDTO.orarioIngresso() == null && updateDTO.orarioUscita() == null) {
+            throw new IllegalArgumentException("Nessuna modifica richiesta");
+        }
+        // Controllo coerenza logica
+        if (updateDTO.orarioIngresso() != null && !"absent".equalsIgnoreCase(updateDTO.currentStatus())) {
+            throw new IllegalArgumentException("Entrata in ritardo consentita solo su assenze");
+        }
+        if (updateDTO.orarioUscita() != null && !"present".equalsIgnoreCase(updateDTO.currentStatus())) {
+            throw new IllegalArgumentException("Uscita anticipata consentita solo su presenze");
+        }
+
+        List<PresenzaRepository.AttendanceStatus> affected =
+            presenzaRepository.findStatusesByLesson(courseId, lessonDate, updateDTO.currentStatus());
+        if (affected.isEmpty()) {
+            return List.of();
+        }
+        Map<String, List<String>> idsByOldStatus = new LinkedHashMap<>();
+        Map<String, String> studentIds = new LinkedHashMap<>();
+        List<String> ids = new ArrayList<>(affected.size());
+        for (PresenzaRepository.AttendanceStatus a : affected) {
+            ids.add(a.getAttendanceId());
+            idsByOldStatus.computeIfAbsent(String.valueOf(a.getStatus()), k -> new ArrayList<>()).add(a.getAttendanceId());
+            if (a.getStudentId() != null) {
+                studentIds.put(a.getAttendanceId(), a.getStudentId());
+            }
+        }
+        presenzaRepository.updateAttendances(ids, updateDTO.status(), updateDTO.orarioIngresso(), updateDTO.orarioUscita());
+
+        // Pubblica un solo evento RabbitMQ per tutta la lezione
+        eventPublisherService.publishAttendanceBulkUpdated(new AttendanceBulkUpdatedEvent(
+            courseId,
+            lessonDate,
+            updateDTO.status(),
+            updateDTO.orarioIngresso(),
+            updateDTO.orarioUscita(),
+            idsByOldStatus,
+            studentIds
+        ));
+        return ids;
+    }
+
     /**
      * Elimina una presenza tramite ID.
      * @param attendanceId l'ID della presenza da eliminare
      */
+    @Transactional
     public void deleteAttendance(String attendanceId) {
         Presenza p = presenzaRepository.findById(attendanceId).orElse(null);
         if (p != null) {
@@ -115,7 +282,8 @@ public class AttendanceService {
                 p.getAttendanceId(),
                 p.getStudentId(),
                 p.getCourseId(),
-                p.getLessonDate()
+                p.getLessonDate(),
+                p.getStatus()
             );
         } else {
             throw new RuntimeException("Presenza non trovata");
@@ -158,6 +326,159 @@ public class AttendanceService {
         return presenzaRepository.findByLessonDate(date);
     }
 
+    /**
+     * Restituisce una pagina delle presenze di uno studente (paginazione keyset).
+     * @param studentId l'ID dello studente
+     * @param cursor il cursore restituito dalla pagina precedente, o null per la prima pagina
+     * @param limit il numero massimo di elementi (al massimo MAX_PAGE_SIZE)
+     * @return la pagina con il cursore per la successiva, o null se è l'ultima
+     */
+    public AttendancePageDTO getStudentAttendances(String studentId, String cursor, int limit) {
+        Pageable pageable = pageRequest(limit);
+        PageCursor after = decodeCursor(cursor);
+        List<Presenza> rows = after == null
+            ? presenzaRepository.findByStudentIdOrderByLessonDateAscAttendanceIdAsc(studentId, pageable)
+            : presenzaRepository.findByStudentIdAfter(studentId, after.lessonDate(), after.attendanceId(), pageable);
+        return toPage(rows, pageable.getPageSize() - 1);
+    }
+
+    /**
+     * Restituisce una pagina delle presenze di un corso (paginazione keyset).
+     * @param courseId l'ID del corso
+     * @param cursor il cursore restituito dalla pagina precedente, o null per la prima pagina
+     * @param limit il numero massimo di elementi (al massimo MAX_PAGE_SIZE)
+     * @return la pagina con il cursore per la successiva, o null se è l'ultima
+     */
+    public AttendancePageDTO getCourseAttendances(String courseId, String cursor, int limit) {
+        Pageable pageable = pageRequest(limit);
+        PageCursor after = decodeCursor(cursor);
+        List<Presenza> rows = after == null
+            ? presenzaRepository.findByCourseIdOrderByLessonDateAscAttendanceIdAsc(courseId, pageable)
+            : presenzaRepository.findByCourseIdAfter(courseId, after.lessonDate(), after.attendanceId(), pageable);
+        return toPage(rows, pageable.getPageSize() - 1);
+    }
+
+    /**
+     * Restituisce una pagina delle presenze di un giorno (paginazione keyset).
+     * @param date la data delle presenze
+     * @param cursor il cursore restituito dalla pagina precedente, o null per la prima pagina
+     * @param limit il numero massimo di elementi (al massimo MAX_PAGE_SIZE)
+     * @return la pagina con il cursore per la successiva, o null se è l'ultima
+     */
+    public AttendancePageDTO getAttendancesByDay(LocalDate date, String cursor, int limit) {
+        Pageable pageable = pageRequest(limit);
+        PageCursor after = decodeCursor(cursor);
+        List<Presenza> rows = after == null
+            ? presenzaRepository.findByLessonDateOrderByAttendanceIdAsc(date, pageable)
+            : presenzaRepository.findByLessonDateAfter(date, after.attendanceId(), pageable);
+        return toPage(rows, pageable.getPageSize() - 1);
+    }
+
+    // Legge una riga in più del limite per sapere se esiste una pagina successiva
+    private Pageable pageRequest(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit deve essere compreso tra 1 e " + MAX_PAGE_SIZE);
+        }
+        return PageRequest.of(0, limit + 1);
+    }
+
+    private AttendancePageDTO toPage(List<Presenza> rows, int limit) {
+        if (rows.size() <= limit) {
+            return new AttendancePageDTO(rows, null);
+        }
+        List<Presenza> items = rows.subList(0, limit);
+        Presenza last = items.get(limit - 1);
+        return new AttendancePageDTO(items, encodeCursor(last));
+    }
+
+    private String encodeCursor(Presenza last) {
+        String raw = last.getLessonDate() + "|" + last.getAttendanceId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private PageCursor decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursore non valido", e);
+        }
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Cursore non valido");
+        }
+        try {
+            return new PageCursor(LocalDate.parse(parts[0]), parts[1]);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Cursore non valido", e);
+        }
+    }
+
+    // Posizione dell'ultima riga letta: chiave dell'ordinamento keyset
+    private record PageCursor(LocalDate lessonDate, String attendanceId) {
+    }
+
+    /**
+     * Esporta in streaming le presenze di un corso in formato NDJSON (una presenza per riga).
+     * Le righe vengono lette a blocchi e staccate dal persistence context dopo la scrittura,
+     * quindi la memoria usata non dipende dalla dimensione del corso.
+     * @param courseId l'ID del corso
+     * @param out lo stream su cui scrivere
+     * @return il numero di presenze esportate
+     * @throws IOException se la scrittura fallisce
+     */
+    @Transactional(readOnly = true)
+    public long exportCourseAttendances(String courseId, OutputStream out) throws IOException {
+        try (Stream<Presenza> rows = presenzaRepository.streamByCourseIdOrderByLessonDateAscAttendanceIdAsc(courseId)) {
+            return writeNdjson(rows, out);
+        }
+    }
+
+    /**
+     * Esporta in streaming le presenze di un giorno in formato NDJSON (una presenza per riga).
+     * @param date la data delle presenze
+     * @param out lo stream su cui scrivere
+     * @return il numero di presenze esportate
+     * @throws IOException se la scrittura fallisce
+     */
+    @Transactional(readOnly = true)
+    public long exportAttendancesByDay(LocalDate date, OutputStream out) throws IOException {
+        try (Stream<Presenza> rows = presenzaRepository.streamByLessonDateOrderByAttendanceIdAsc(date)) {
+            return writeNdjson(rows, out);
+        }
+    }
+
+    /**
+     * Restituisce la matrice studenti × lezioni delle presenze di un corso, con stati compressi
+     * e totali per studente e per lezione. Le colonne comprendono anche le lezioni in calendario
+     * senza presenze registrate.
+     * @param courseId l'ID del corso
+     * @return la matrice del corso
+     */
+    @Transactional(readOnly = true)
+    public AttendanceMatrixDTO getCourseAttendanceMatrix(String courseId) {
+        return AttendanceMatrixEncoder.encode(courseId,
+            scheduledLessonRepository.findLessonDatesByCourseId(courseId),
+            presenzaRepository.findCellsByCourseId(courseId));
+    }
+
+    private long writeNdjson(Stream<Presenza> rows, OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        long count = 0;
+        Iterator<Presenza> it = rows.iterator();
+        while (it.hasNext()) {
+            Presenza p = it.next();
+            writer.writeValue(out, p);
+            out.write('\n');
+            entityManager.detach(p);
+            count++;
+        }
+        out.flush();
+        return count;
+    }
+
     /**
      * Calcola le statistiche di presenza di uno studente per un corso.
      * @param studentId l'ID dello studente
@@ -165,24 +486,30 @@ public class AttendanceService {
      * @return mappa con totale lezioni, presenze e percentuale
      */
     public Map<String, Double> getStudentCourseStatistics(String studentId, String courseId) {
-        // Ottiene tutte le presenze dello studente per quel corso
-        List<Presenza> studentCourseAttendances = presenzaRepository.findByStudentId(studentId)
-            .stream()
-            .filter(p -> p.getCourseId().equals(courseId))
-            .toList();
-
-        // Ottiene il numero totale di lezioni del corso
-        List<Presenza> courseAttendances = presenzaRepository.findByCourseId(courseId);
-        long totalCourseLessons = courseAttendances.stream()
-            .map(p -> p.getLessonDate())
-            .distinct()
-            .count();
-
-        // Conta le presenze effettive dello studente
-        long presentLessons = studentCourseAttendances.stream()
-            .filter(p -> "present".equals(p.getStatus()))
-            .count();
+        // Legge i contatori materializzati (aggiornati dagli eventi) invece di contare le righe
+        long totalCourseLessons = getCourseCounts(courseId).lessons();
+        long presentLessons = statsCache.getStudentPresentCount(studentId, courseId,
+            id -> attendanceCounterService.getStudentPresentCount(id, courseId));
+        return studentStatistics(totalCourseLessons, presentLessons);
+    }
+
+    /**
+     * Calcola le statistiche di presenza di più studenti per lo stesso corso:
+     * i totali del corso sono letti una sola volta e le presenze degli studenti con una sola query.
+     * @param courseId l'ID del corso
+     * @param studentIds gli ID degli studenti
+     * @return mappa studentId → statistiche, nello stesso formato di getStudentCourseStatistics
+     */
+    public Map<String, Map<String, Double>> getStudentsCourseStatistics(String courseId, Collection<String> studentIds) {
+        long totalCourseLessons = getCourseCounts(courseId).lessons();
+        Map<String, Long> presentLessons = statsCache.getStudentPresentCounts(courseId, studentIds,
+            missing -> attendanceCounterService.getStudentPresentCounts(courseId, missing));
+        Map<String, Map<String, Double>> stats = new HashMap<>();
+        presentLessons.forEach((studentId, present) -> stats.put(studentId, studentStatistics(totalCourseLessons, present)));
+        return stats;
+    }
 
+    private static Map<String, Double> studentStatistics(long totalCourseLessons, long presentLessons) {
         // Calcola la percentuale di presenze rispetto al totale delle lezioni del corso
         double attendancePercentage;
         if (totalCourseLessons > 0) {
@@ -204,34 +531,31 @@ public class AttendanceService {
      * @return mappa con totale lezioni e media presenze per lezione
      */
     public Map<String, Double> getCourseStatistics(String courseId) {
-        // Ottiene tutte le date delle lezioni del corso
-        List<Presenza> courseAttendances = presenzaRepository.findByCourseId(courseId);
-        List<LocalDate> courseDates = courseAttendances.stream()
-            .map(p -> p.getLessonDate())
-            .distinct()
-            .collect(Collectors.toList());
-
-        // Per ogni lezione, conta il numero di presenze
-        List<Long> presencesPerLesson = courseDates.stream()
-            .map(date -> courseAttendances.stream()
-                .filter(p -> p.getLessonDate().equals(date) && 
-                       "present".equals(p.getStatus()))
-                .count())
-            .collect(Collectors.toList());
+        // Numero di lezioni e somma dei presenti dai contatori materializzati
+        AttendanceStatsCache.CourseCounts totals = getCourseCounts(courseId);
+        long totalLessons = totals.lessons();
+        long presences = totals.presences();
 
         // Calcola la media delle presenze per lezione
-        double averagePresencesPerLesson = presencesPerLesson.isEmpty() ? 0.0 :
-            presencesPerLesson.stream()
-                .mapToDouble(Long::doubleValue)
-                .average()
-                .orElse(0.0);
+        double averagePresencesPerLesson = totalLessons > 0 ? (double) presences / totalLessons : 0.0;
 
         return Map.of(
-            "totalLessons", (double) courseDates.size(),
+            "totalLessons", (double) totalLessons,
             "averagePresencesPerLesson", averagePresencesPerLesson
         );
     }
 
+    private AttendanceStatsCache.CourseCounts getCourseCounts(String courseId) {
+        return statsCache.getCourseCounts(courseId, id -> {
+            LessonAttendanceCounterRepository.CourseTotals totals = attendanceCounterService.getCourseTotals(id);
+            return new AttendanceStatsCache.CourseCounts(nullToZero(totals.getLessons()), nullToZero(totals.getPresences()));
+        });
+    }
+
+    private static long nullToZero(Long value) {
+        return value != null ? value : 0L;
+    }
+
     public AttendanceDTO getAttendanceByIdDTO(String attendanceId) {
         Presenza p = getAttendanceById(attendanceId);
         if (p == null) return null;
@@ -0,0 +1,201 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Cache in-process, limitata per dimensione e durata, dei valori da cui sono calcolate
+ * le statistiche: totali per corso (lezioni e presenti) e presenze per studente/corso.
+ * Le due parti sono in cache separate, così una modifica alle presenze di uno studente invalida
+ * solo la chiave del corso e quella (studente, corso) coinvolte, senza toccare gli altri studenti.
+ * Le invalidazioni richieste dentro una transazione vengono ripetute dopo il commit
+ * e diffuse alle altre repliche tramite {@link CacheInvalidationPublisher}.
+ * Le letture concorrenti dei totali dello stesso corso condividono un'unica esecuzione
+ * ({@link SingleFlight}), così un errore del database arriva a tutti i chiamanti in attesa
+ * invece di far ripetere la query a ciascuno.
+ * Hit, miss ed evizioni sono esposti come metriche {@code cache.*} con tag
+ * {@code cache=attendance.stats.course} e {@code cache=attendance.stats.student}.
+ */
+@Component
+public class AttendanceStatsCache {
+
+    /** Totali di un corso: numero di lezioni e somma dei presenti. */
+    public record CourseCounts(long lessons, long presences) {
+    }
+
+    private record StudentCourseKey(String studentId, String courseId) {
+    }
+
+    private final Cache<String, CourseCounts> courseCache;
+    private final Cache<StudentCourseKey, Long> studentCache;
+    private final SingleFlight<String, CourseCounts> courseFlight;
+
+    // Assente quando la cache è usata senza broker (es. test)
+    @Autowired(required = false)
+    private CacheInvalidationPublisher invalidationPublisher;
+
+    public AttendanceStatsCache(MeterRegistry meterRegistry,
+                                @Value("${attendance.stats-cache.max-size:10000}") long maxSize,
+                                @Value("${attendance.stats-cache.ttl:PT5M}") Duration ttl) {
+        this.courseCache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+        this.studentCache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, courseCache, "attendance.stats.course");
+        CaffeineCacheMetrics.monitor(meterRegistry, studentCache, "attendance.stats.student");
+        this.courseFlight = new SingleFlight<>(meterRegistry, "course");
+    }
+
+    /**
+     * Restituisce i totali di un corso, caricandoli con il loader in caso di miss.
+     * Le chiamate concorrenti per lo stesso corso attendono la stessa esecuzione; i hit non passano
+     * da SingleFlight, così le sue metriche contano solo i miss.
+     * @param courseId l'ID del corso
+     * @param loader la funzione che legge i totali dal database
+     * @return i totali del corso
+     */
+    public CourseCounts getCourseCounts(String courseId, Function<String, CourseCounts> loader) {
+        CourseCounts cached = courseCache.getIfPresent(courseId);
+        if (cached != null) {
+            return cached;
+        }
+        return courseFlight.execute(courseId, () -> courseCache.get(courseId, loader));
+    }
+
+    /**
+     * Restituisce le presenze di uno studente a un corso, caricandole con il loader in caso di miss.
+     * @param studentId l'ID dello studente
+     * @param courseId l'ID del corso
+     * @param loader la funzione che legge il valore dal database
+     * @return il numero di presenze
+     */
+    public long getStudentPresentCount(String studentId, String courseId, ToLongFunction<String> loader) {
+        return studentCache.get(new StudentCourseKey(studentId, courseId), key -> loader.applyAsLong(key.studentId()));
+    }
+
+    /**
+     * Restituisce le presenze di più studenti a un corso; quelle non in cache vengono caricate
+     * tutte insieme con una sola chiamata al loader.
+     * @param courseId l'ID del corso
+     * @param studentIds gli ID degli studenti
+     * @param loader la funzione che legge dal database le presenze degli studenti mancanti
+     * @return mappa studentId → numero di presenze
+     */
+    public Map<String, Long> getStudentPresentCounts(String courseId, Collection<String> studentIds,
+                                                     Function<Set<String>, Map<String, Long>> loader) {
+        List<StudentCourseKey> keys = studentIds.stream().map(id -> new StudentCourseKey(id, courseId)).toList();
+        Map<StudentCourseKey, Long> cached = studentCache.getAll(keys, missing -> {
+            Map<String, Long> loaded = loader.apply(missing.stream()
+                .map(StudentCourseKey::studentId)
+                .collect(Collectors.toSet()));
+            Map<StudentCourseKey, Long> byKey = new HashMap<>();
+            missing.forEach(key -> byKey.put(key, loaded.getOrDefault(key.studentId(), 0L)));
+            return byKey;
+        });
+        Map<String, Long> counts = new HashMap<>();
+        cached.forEach((key, count) -> counts.put(key.studentId(), count));
+        return counts;
+    }
+
+    /**
+     * Invalida i totali di un corso.
+     * @param courseId l'ID del corso
+     */
+    public void evictCourse(String courseId) {
+        if (courseId == null) {
+            return;
+        }
+        evict(() -> courseCache.invalidate(courseId));
+        if (invalidationPublisher != null) {
+            invalidationPublisher.invalidate(courseId, null);
+        }
+    }
+
+    /**
+     * Invalida i totali del corso e le presenze dello studente a quel corso.
+     * @param studentId l'ID dello studente
+     * @param courseId l'ID del corso
+     */
+    public void evictStudentCourse(String studentId, String courseId) {
+        if (courseId == null) {
+            return;
+        }
+        evict(() -> {
+            courseCache.invalidate(courseId);
+            if (studentId != null) {
+                studentCache.invalidate(new StudentCourseKey(studentId, courseId));
+            }
+        });
+        if (invalidationPublisher != null) {
+            invalidationPublisher.invalidate(courseId, studentId);
+        }
+    }
+
+    /**
+     * Svuota entrambe le cache.
+     */
+    public void evictAll() {
+        evict(this::evictAllLocally);
+        if (invalidationPublisher != null) {
+            invalidationPublisher.invalidateAll();
+        }
+    }
+
+    /**
+     * Invalida le chiavi indicate solo su questa istanza, senza diffonderle (invalidazioni ricevute).
+     * @param courseIds i corsi di cui invalidare i totali
+     * @param studentIdsByCourseId gli studenti di cui invalidare le presenze, per corso
+     */
+    public void evictLocally(Collection<String> courseIds, Map<String, ? extends Collection<String>> studentIdsByCourseId) {
+        courseCache.invalidateAll(courseIds);
+        studentIdsByCourseId.forEach((courseId, studentIds) ->
+            studentIds.forEach(studentId -> studentCache.invalidate(new StudentCourseKey(studentId, courseId))));
+    }
+
+    /**
+     * Svuota entrambe le cache solo su questa istanza.
+     */
+    public void evictAllLocally() {
+        courseCache.invalidateAll();
+        studentCache.invalidateAll();
+    }
+
+    // Invalida subito e di nuovo dopo il commit: tra i due momenti un altro thread può aver ricaricato
+    // il valore precedente dal database (Caffeine attende un caricamento in corso sulla stessa chiave)
+    private static void evict(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import it.unimol.newunimol.attendance_management.event.StatsCacheInvalidatedEvent;
+
+/**
+ * Riceve le invalidazioni pubblicate dalle altre repliche sulla coda esclusiva di questa istanza.
+ * I messaggi arrivano a lotti: le chiavi ripetute nel lotto vengono unite e ogni chiave
+ * viene invalidata una sola volta.
+ */
+@Service
+public class CacheInvalidationListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationListener.class);
+
+    @Autowired
+    private AttendanceStatsCache statsCache;
+
+    @Autowired
+    private CacheInvalidationPublisher cacheInvalidationPublisher;
+
+    @RabbitListener(queues = "#{statsCacheInvalidationQueue.name}", containerFactory = "cacheInvalidationListenerContainerFactory")
+    public void handleStatsCacheInvalidated(List<StatsCacheInvalidatedEvent> events) {
+        boolean all = false;
+        Set<String> courseIds = new HashSet<>();
+        Map<String, Set<String>> studentIdsByCourseId = new HashMap<>();
+        for (StatsCacheInvalidatedEvent event : events) {
+            if (cacheInvalidationPublisher.getInstanceId().equals(event.getOrigin())) {
+                continue; // già invalidata localmente da chi l'ha pubblicata
+            }
+            all |= event.isAll();
+            if (event.getCourseIds() != null) {
+                courseIds.addAll(event.getCourseIds());
+            }
+            if (event.getStudentIdsByCourseId() != null) {
+                event.getStudentIdsByCourseId().forEach((courseId, studentIds) ->
+                    studentIdsByCourseId.computeIfAbsent(courseId, k -> new HashSet<>()).addAll(studentIds));
+            }
+        }
+        if (all) {
+            statsCache.evictAllLocally();
+        } else if (!courseIds.isEmpty() || !studentIdsByCourseId.isEmpty()) {
+            statsCache.evictLocally(courseIds, studentIdsByCourseId);
+        }
+        logger.debug("[RabbitMQ] Invalidazioni ricevute: {} messaggi, {} corsi", events.size(), courseIds.size());
+    }
+}
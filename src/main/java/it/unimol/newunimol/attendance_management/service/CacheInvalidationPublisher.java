@@ -0,0 +1,127 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import it.unimol.newunimol.attendance_management.event.StatsCacheInvalidatedEvent;
+
+/**
+ * Diffonde alle altre repliche del servizio le chiavi della cache delle statistiche da invalidare.
+ * Le chiavi richieste nella stessa transazione vengono raccolte, deduplicate e inviate con un solo
+ * messaggio dopo il commit; fuori da una transazione il messaggio parte subito.
+ * L'invio è best-effort e diretto (senza outbox): un'invalidazione persa lascia al più un valore
+ * vecchio fino alla scadenza della voce in cache.
+ */
+@Service
+public class CacheInvalidationPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationPublisher.class);
+
+    // Identifica questa istanza: le invalidazioni pubblicate da lei stessa vengono ignorate in ricezione
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "RabbitTemplate is a Spring singleton bean, safe to store")
+    private final RabbitTemplate rabbitTemplate;
+
+    @Value("${rabbitmq.exchange.attendance}")
+    private String attendanceExchange;
+
+    @Value("${rabbitmq.routing.attendance.cache-invalidate:attendance.cache.invalidate}")
+    private String cacheInvalidateRouting = "attendance.cache.invalidate";
+
+    public CacheInvalidationPublisher(RabbitTemplate rabbitTemplate) {
+        this.rabbitTemplate = rabbitTemplate;
+    }
+
+    /**
+     * @return l'ID di questa istanza, riportato nelle invalidazioni pubblicate
+     */
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Richiede l'invalidazione dei totali di un corso e, se indicato, delle presenze di uno studente a quel corso.
+     * @param courseId l'ID del corso
+     * @param studentId l'ID dello studente, o null
+     */
+    public void invalidate(String courseId, String studentId) {
+        Pending pending = pending();
+        pending.courseIds.add(courseId);
+        if (studentId != null) {
+            pending.studentIdsByCourseId.computeIfAbsent(courseId, k -> new LinkedHashSet<>()).add(studentId);
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            send(pending);
+        }
+    }
+
+    /**
+     * Richiede lo svuotamento completo della cache su tutte le repliche.
+     */
+    public void invalidateAll() {
+        Pending pending = pending();
+        pending.all = true;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            send(pending);
+        }
+    }
+
+    // Chiavi in attesa della transazione corrente (una nuova raccolta se non c'è transazione)
+    private Pending pending() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return new Pending();
+        }
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Pending created = new Pending();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send(created);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CacheInvalidationPublisher.this);
+                }
+            });
+            pending = created;
+        }
+        return pending;
+    }
+
+    private void send(Pending pending) {
+        Map<String, List<String>> studentIds = new LinkedHashMap<>();
+        pending.studentIdsByCourseId.forEach((courseId, ids) -> studentIds.put(courseId, new ArrayList<>(ids)));
+        StatsCacheInvalidatedEvent event = new StatsCacheInvalidatedEvent(
+            instanceId, pending.all, new ArrayList<>(pending.courseIds), studentIds);
+        try {
+            rabbitTemplate.convertAndSend(attendanceExchange, cacheInvalidateRouting, event);
+        } catch (AmqpException e) {
+            logger.warn("Invalidazione della cache non inviata alle altre repliche: {}", e.getMessage());
+        }
+    }
+
+    private static final class Pending {
+        private boolean all;
+        private final Set<String> courseIds = new LinkedHashSet<>();
+        private final Map<String, Set<String>> studentIdsByCourseId = new LinkedHashMap<>();
+    }
+}
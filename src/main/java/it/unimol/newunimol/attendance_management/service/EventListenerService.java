@@ -3,83 +3,169 @@ package it.unimol.newunimol.attendance_management.service;
 import it.unimol.newunimol.attendance_management.event.AttendanceCreatedEvent;
 import it.unimol.newunimol.attendance_management.event.AttendanceUpdatedEvent;
 import it.unimol.newunimol.attendance_management.event.AttendanceDeletedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceBulkUpdatedEvent;
 import it.unimol.newunimol.attendance_management.event.ReportRequestedEvent;
 import it.unimol.newunimol.attendance_management.event.AttendanceStatsGeneratedEvent;
+import it.unimol.newunimol.attendance_management.event.CourseScheduledEvent;
+import it.unimol.newunimol.attendance_management.event.CourseUpdatedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
+
+import io.micrometer.core.annotation.Timed;
+
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+@Timed(value = "attendance.events.consume", description = "Durata dell'elaborazione degli eventi ricevuti")
 @Service
 public class EventListenerService {
 
     private static final Logger logger = LoggerFactory.getLogger(EventListenerService.class);
 
+    // I consumer degli eventi prodotti da questo servizio partono solo se la consegna passa dal broker
+    private static final String BROKER_DELIVERY = "#{'${attendance.events.delivery:local}' == 'broker'}";
+
     @Autowired
     private AttendanceService attendanceService;
     @Autowired
     private EventPublisherService eventPublisherService;
+    @Autowired
+    private AttendanceCounterService attendanceCounterService;
+    @Autowired
+    private LessonCalendarService lessonCalendarService;
 
-    @RabbitListener(queues = "${rabbitmq.queue.attendance.created}")
-    public void handleAttendanceCreated(AttendanceCreatedEvent event) {
+    @RabbitListener(queues = "${rabbitmq.queue.course.scheduled}")
+    public void handleCourseScheduled(CourseScheduledEvent event) {
+        logger.info("[RabbitMQ] Ricevuto CourseScheduledEvent: courseId={}, lessons={}",
+                event.getCourseId(), event.getLessons() != null ? event.getLessons().size() : null);
+        // Aggiorna il calendario delle lezioni usato dalle statistiche
+        lessonCalendarService.applyCourseScheduled(event);
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.course.updated}")
+    public void handleCourseUpdated(CourseUpdatedEvent event) {
+        logger.info("[RabbitMQ] Ricevuto CourseUpdatedEvent: courseId={}, lessons={}",
+                event.getCourseId(), event.getLessons() != null ? event.getLessons().size() : null);
+        lessonCalendarService.applyCourseUpdated(event);
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.attendance.created}", autoStartup = BROKER_DELIVERY)
+    public void handleAttendanceCreated(AttendanceCreatedEvent event,
+                                        @Header(name = AmqpHeaders.MESSAGE_ID, required = false) String messageId) {
         logger.info("[RabbitMQ] Ricevuto AttendanceCreatedEvent: attendanceId={}, studentId={}, courseId={}, lessonDate={}, status={}, orarioIngresso={}, orarioUscita={}",
                 event.getAttendanceId(), event.getStudentId(), event.getCourseId(), event.getLessonDate(), event.getStatus(), event.getOrarioIngresso(), event.getOrarioUscita());
-        // Qui puoi aggiungere logica di business
+        // Aggiorna i contatori delle statistiche
+        attendanceCounterService.applyCreated(messageId, event);
     }
 
-    @RabbitListener(queues = "${rabbitmq.queue.attendance.updated}")
-    public void handleAttendanceUpdated(AttendanceUpdatedEvent event) {
+    @RabbitListener(queues = "${rabbitmq.queue.attendance.updated}", autoStartup = BROKER_DELIVERY)
+    public void handleAttendanceUpdated(AttendanceUpdatedEvent event,
+                                        @Header(name = AmqpHeaders.MESSAGE_ID, required = false) String messageId) {
         logger.info("[RabbitMQ] Ricevuto AttendanceUpdatedEvent: attendanceId={}, oldStatus={}, newStatus={}, lessonDate={}, orarioIngresso={}, orarioUscita={}",
                 event.getAttendanceId(), event.getOldStatus(), event.getNewStatus(), event.getLessonDate(), event.getOrarioIngresso(), event.getOrarioUscita());
-        // Qui puoi aggiungere logica di business
+        // Aggiorna i contatori delle statistiche
+        attendanceCounterService.applyUpdated(messageId, event);
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.attendance.bulk-updated}", autoStartup = BROKER_DELIVERY)
+    public void handleAttendanceBulkUpdated(AttendanceBulkUpdatedEvent event,
+                                            @Header(name = AmqpHeaders.MESSAGE_ID, required = false) String messageId) {
+        logger.info("[RabbitMQ] Ricevuto AttendanceBulkUpdatedEvent: courseId={}, lessonDate={}, newStatus={}",
+                event.getCourseId(), event.getLessonDate(), event.getNewStatus());
+        // Aggiorna i contatori delle statistiche
+        attendanceCounterService.applyBulkUpdated(messageId, event);
     }
 
-    @RabbitListener(queues = "${rabbitmq.queue.attendance.deleted}")
-    public void handleAttendanceDeleted(AttendanceDeletedEvent event) {
+    @RabbitListener(queues = "${rabbitmq.queue.attendance.deleted}", autoStartup = BROKER_DELIVERY)
+    public void handleAttendanceDeleted(AttendanceDeletedEvent event,
+                                        @Header(name = AmqpHeaders.MESSAGE_ID, required = false) String messageId) {
         logger.info("[RabbitMQ] Ricevuto AttendanceDeletedEvent: attendanceId={}, studentId={}, courseId={}, lessonDate={}",
                 event.getAttendanceId(), event.getStudentId(), event.getCourseId(), event.getLessonDate());
-        // Qui puoi aggiungere logica di business
+        // Aggiorna i contatori delle statistiche
+        attendanceCounterService.applyDeleted(messageId, event);
     }
 
-    @RabbitListener(queues = "${rabbitmq.queue.report.requested}")
-    public void handleReportRequested(ReportRequestedEvent event) {
-        logger.info("[RabbitMQ] Ricevuto ReportRequestedEvent: requestId={}, studentId={}, courseId={}, reportType={}",
-                event.getRequestId(), event.getStudentId(), event.getCourseId(), event.getReportType());
-        try {
+    /**
+     * Riceve le richieste di report a lotti: le richieste dello stesso tipo e corso vengono raggruppate,
+     * i dati del corso sono calcolati una sola volta e viene pubblicato un evento per ogni requestId.
+     */
+    @RabbitListener(queues = "${rabbitmq.queue.report.requested}", containerFactory = "reportRequestedListenerContainerFactory")
+    public void handleReportRequested(List<ReportRequestedEvent> events) {
+        logger.info("[RabbitMQ] Ricevuti {} ReportRequestedEvent", events.size());
+        Map<String, List<ReportRequestedEvent>> percentageByCourse = new LinkedHashMap<>();
+        Map<String, List<ReportRequestedEvent>> averageByCourse = new LinkedHashMap<>();
+        for (ReportRequestedEvent event : events) {
             if ("percentage".equals(event.getReportType())) {
-                // Statistiche percentuali per studente su corso
-                var stats = attendanceService.getStudentCourseStatistics(event.getStudentId(), event.getCourseId());
-                AttendanceStatsGeneratedEvent statsEvent = new AttendanceStatsGeneratedEvent(
-                        event.getRequestId(),
-                        event.getStudentId(),
-                        event.getCourseId(),
-                        stats.get("totalCourseLessons"),
-                        stats.get("presentLessons"),
-                        stats.get("attendancePercentage"),
-                        null,
-                        LocalDateTime.now()
-                );
-                eventPublisherService.publishAttendanceStatsGenerated(statsEvent);
+                percentageByCourse.computeIfAbsent(event.getCourseId(), k -> new ArrayList<>()).add(event);
             } else if ("average".equals(event.getReportType())) {
+                averageByCourse.computeIfAbsent(event.getCourseId(), k -> new ArrayList<>()).add(event);
+            } else {
+                logger.warn("[RabbitMQ] ReportRequestedEvent con reportType sconosciuto: requestId={}, reportType={}",
+                        event.getRequestId(), event.getReportType());
+            }
+        }
+
+        List<AttendanceStatsGeneratedEvent> statsEvents = new ArrayList<>(events.size());
+        percentageByCourse.forEach((courseId, requests) -> {
+            try {
+                // Statistiche percentuali per studente su corso
+                Set<String> studentIds = new HashSet<>();
+                requests.forEach(r -> studentIds.add(r.getStudentId()));
+                var statsByStudent = attendanceService.getStudentsCourseStatistics(courseId, studentIds);
+                for (ReportRequestedEvent request : requests) {
+                    var stats = statsByStudent.get(request.getStudentId());
+                    statsEvents.add(new AttendanceStatsGeneratedEvent(
+                            request.getRequestId(),
+                            request.getStudentId(),
+                            courseId,
+                            stats.get("totalCourseLessons"),
+                            stats.get("presentLessons"),
+                            stats.get("attendancePercentage"),
+                            null,
+                            LocalDateTime.now()
+                    ));
+                }
+            } catch (Exception e) {
+                logger.error("[RabbitMQ] Errore nel processare {} ReportRequestedEvent del corso {}", requests.size(), courseId, e);
+            }
+        });
+        averageByCourse.forEach((courseId, requests) -> {
+            try {
                 // Statistiche medie per corso
-                var stats = attendanceService.getCourseStatistics(event.getCourseId());
-                AttendanceStatsGeneratedEvent statsEvent = new AttendanceStatsGeneratedEvent(
-                        event.getRequestId(),
-                        null,
-                        event.getCourseId(),
-                        stats.get("totalLessons"),
-                        null,
-                        null,
-                        stats.get("averagePresencesPerLesson"),
-                        LocalDateTime.now()
-                );
-                eventPublisherService.publishAttendanceStatsGenerated(statsEvent);
+                var stats = attendanceService.getCourseStatistics(courseId);
+                for (ReportRequestedEvent request : requests) {
+                    statsEvents.add(new AttendanceStatsGeneratedEvent(
+                            request.getRequestId(),
+                            null,
+                            courseId,
+                            stats.get("totalLessons"),
+                            null,
+                            null,
+                            stats.get("averagePresencesPerLesson"),
+                            LocalDateTime.now()
+                    ));
+                }
+            } catch (Exception e) {
+                logger.error("[RabbitMQ] Errore nel processare {} ReportRequestedEvent del corso {}", requests.size(), courseId, e);
             }
-            logger.info("[RabbitMQ] Statistiche pubblicate per requestId={}", event.getRequestId());
+        });
+
+        try {
+            eventPublisherService.publishAttendanceStatsGenerated(statsEvents);
+            logger.info("[RabbitMQ] Statistiche pubblicate per {} richieste ({} corsi)",
+                    statsEvents.size(), percentageByCourse.size() + averageByCourse.size());
         } catch (Exception e) {
-            logger.error("[RabbitMQ] Errore nel processare ReportRequestedEvent: {}", event.getRequestId(), e);
+            logger.error("[RabbitMQ] Errore nella pubblicazione di {} AttendanceStatsGeneratedEvent", statsEvents.size(), e);
         }
     }
 }
\ No newline at end of file
@@ -4,20 +4,51 @@ import it.unimol.newunimol.attendance_management.event.AttendanceCreatedEvent;
 import it.unimol.newunimol.attendance_management.event.AttendanceUpdatedEvent;
 import it.unimol.newunimol.attendance_management.event.AttendanceDeletedEvent;
 import it.unimol.newunimol.attendance_management.event.AttendanceStatsGeneratedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceBulkUpdatedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceLessonSummaryEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceLocalEvent;
+import it.unimol.newunimol.attendance_management.model.OutboxEvent;
+import it.unimol.newunimol.attendance_management.model.Presenza;
+import it.unimol.newunimol.attendance_management.repository.OutboxEventRepository;
+import it.unimol.newunimol.attendance_management.repository.PresenzaRepository;
+import it.unimol.newunimol.attendance_management.util.Uuid7;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+
+import io.micrometer.core.annotation.Timed;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Service responsabile della pubblicazione di eventi RabbitMQ relativi alle presenze.
  * Permette di notificare la creazione, aggiornamento ed eliminazione delle presenze.
+ * Gli eventi non vengono inviati direttamente al broker: sono salvati nell'outbox
+ * all'interno della transazione del chiamante e inoltrati da OutboxRelayService.
+ * Con attendance.events.delivery=local gli eventi sulle presenze sono consegnati anche ai listener
+ * di questo processo come eventi applicativi, e l'invio al broker per gli altri microservizi
+ * (attendance.events.fanout.enabled) diventa facoltativo.
+ * Insieme agli eventi per riga viene pubblicato, ogni attendance.events.lesson-summary.window-ms,
+ * un riepilogo per lezione delle modifiche avvenute nella finestra.
  */
+@Timed(value = "attendance.events.enqueue", description = "Durata del salvataggio degli eventi nell'outbox")
 @Service
 public class EventPublisherService {
 
@@ -26,23 +57,58 @@ public class EventPublisherService {
     @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "RabbitTemplate is a Spring singleton bean, safe to store")
     private final RabbitTemplate rabbitTemplate;
 
+    private final OutboxEventRepository outboxEventRepository;
+
+    private final PresenzaRepository presenzaRepository;
+
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "ApplicationEventPublisher is the Spring context, safe to store")
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    // local: i listener di questo processo ricevono gli eventi in-process; broker: li ricevono dalle code RabbitMQ
+    @Value("${attendance.events.delivery:local}")
+    private String delivery = "local";
+
+    // Invio degli eventi sulle presenze a RabbitMQ per gli altri microservizi (sempre attivo con delivery=broker)
+    @Value("${attendance.events.fanout.enabled:true}")
+    private boolean fanoutEnabled = true;
+
     @Value("${rabbitmq.exchange.attendance}")
     private String attendanceExchange;
 
+    // Formato dei messaggi pubblicati: application/json (default) o application/cbor
+    @Value("${rabbitmq.events.content-type:application/json}")
+    private String eventsContentType = MessageProperties.CONTENT_TYPE_JSON;
+
     @Value("${rabbitmq.routing.attendance.created}")
     private String attendanceCreatedRouting;
 
     @Value("${rabbitmq.routing.attendance.updated}")
     private String attendanceUpdatedRouting;
 
+    @Value("${rabbitmq.routing.attendance.bulk-updated}")
+    private String attendanceBulkUpdatedRouting;
+
     @Value("${rabbitmq.routing.attendance.deleted}")
     private String attendanceDeletedRouting;
 
     @Value("${rabbitmq.routing.attendance.stats}")
     private String attendanceStatsRouting;
 
-    public EventPublisherService(RabbitTemplate rabbitTemplate) {
+    @Value("${attendance.events.lesson-summary.enabled:true}")
+    private boolean lessonSummaryEnabled = true;
+
+    @Value("${rabbitmq.routing.attendance.lesson-summary:attendance.lesson.summary}")
+    private String attendanceLessonSummaryRouting = "attendance.lesson.summary";
+
+    // Modifiche confermate in attesa del prossimo riepilogo per lezione
+    private final LessonSummaryBuffer lessonSummaryBuffer = new LessonSummaryBuffer();
+
+    public EventPublisherService(RabbitTemplate rabbitTemplate, OutboxEventRepository outboxEventRepository,
+                                 PresenzaRepository presenzaRepository, ApplicationEventPublisher applicationEventPublisher) {
         this.rabbitTemplate = rabbitTemplate;
+        this.outboxEventRepository = outboxEventRepository;
+        this.presenzaRepository = presenzaRepository;
+        this.applicationEventPublisher = applicationEventPublisher;
     }
 
     /**
@@ -53,55 +119,233 @@ public class EventPublisherService {
         AttendanceCreatedEvent event = new AttendanceCreatedEvent(
                 attendanceId, studentId, courseId, lessonDate, status, orarioIngresso, orarioUscita
         );
-        try {
-            rabbitTemplate.convertAndSend(attendanceExchange, attendanceCreatedRouting, event);
-            logger.info("Published AttendanceCreatedEvent for attendance: {}", attendanceId);
-        } catch (Exception e) {
-            logger.error("Failed to publish AttendanceCreatedEvent for attendance: {}", attendanceId, e);
+        publishAttendanceEvent(attendanceCreatedRouting, event);
+        recordLessonChange(courseId, lessonDate, studentId, status);
+        logger.info("Queued AttendanceCreatedEvent for attendance: {}", attendanceId);
+    }
+
+    /**
+     * Pubblica gli eventi di creazione di un insieme di presenze con un unico inserimento batch nell'outbox.
+     */
+    public void publishAttendancesCreated(List<Presenza> created) {
+        if (created.isEmpty()) {
+            return;
         }
+        List<OutboxEvent> outbox = new ArrayList<>(created.size());
+        for (Presenza p : created) {
+            AttendanceCreatedEvent event = new AttendanceCreatedEvent(
+                    p.getAttendanceId(), p.getStudentId(), p.getCourseId(), p.getLessonDate(),
+                    p.getStatus(), p.getOrarioIngresso(), p.getOrarioUscita()
+            );
+            String eventId = Uuid7.next();
+            if (isBrokerPublishing()) {
+                outbox.add(toOutbox(eventId, attendanceCreatedRouting, event));
+            }
+            publishLocally(eventId, event);
+            recordLessonChange(p.getCourseId(), p.getLessonDate(), p.getStudentId(), p.getStatus());
+        }
+        if (!outbox.isEmpty()) {
+            outboxEventRepository.saveAll(outbox);
+        }
+        logger.info("Queued {} AttendanceCreatedEvent in batch", created.size());
     }
 
     /**
      * Pubblica un evento di aggiornamento presenza.
      */
-    public void publishAttendanceUpdated(String attendanceId, String oldStatus, String newStatus,
+    public void publishAttendanceUpdated(String attendanceId, String studentId, String courseId, String oldStatus, String newStatus,
                                          LocalDate lessonDate, LocalTime orarioIngresso, LocalTime orarioUscita) {
         AttendanceUpdatedEvent event = new AttendanceUpdatedEvent(
-                attendanceId, oldStatus, newStatus, lessonDate, orarioIngresso, orarioUscita
+                attendanceId, studentId, courseId, oldStatus, newStatus, lessonDate, orarioIngresso, orarioUscita
         );
-        try {
-            rabbitTemplate.convertAndSend(attendanceExchange, attendanceUpdatedRouting, event);
-            logger.info("Published AttendanceUpdatedEvent for attendance: {}", attendanceId);
-        } catch (Exception e) {
-            logger.error("Failed to publish AttendanceUpdatedEvent for attendance: {}", attendanceId, e);
+        publishAttendanceEvent(attendanceUpdatedRouting, event);
+        recordLessonChange(courseId, lessonDate, studentId, newStatus);
+        logger.info("Queued AttendanceUpdatedEvent for attendance: {}", attendanceId);
+    }
+
+    /**
+     * Pubblica un evento aggregato di aggiornamento delle presenze di una lezione.
+     */
+    public void publishAttendanceBulkUpdated(AttendanceBulkUpdatedEvent event) {
+        publishAttendanceEvent(attendanceBulkUpdatedRouting, event);
+        Map<String, String> studentIds = event.getStudentIdsByAttendanceId();
+        if (studentIds != null && event.getAttendanceIdsByOldStatus() != null) {
+            event.getAttendanceIdsByOldStatus().forEach((oldStatus, attendanceIds) -> {
+                String status = event.getNewStatus() != null ? event.getNewStatus() : oldStatus;
+                attendanceIds.forEach(id -> recordLessonChange(event.getCourseId(), event.getLessonDate(), studentIds.get(id), status));
+            });
         }
+        logger.info("Queued AttendanceBulkUpdatedEvent for course: {}, lessonDate: {}", event.getCourseId(), event.getLessonDate());
     }
 
     /**
      * Pubblica un evento di eliminazione presenza.
      */
     public void publishAttendanceDeleted(String attendanceId, String studentId, String courseId,
-                                         LocalDate lessonDate) {
+                                         LocalDate lessonDate, String status) {
         AttendanceDeletedEvent event = new AttendanceDeletedEvent(
-                attendanceId, studentId, courseId, lessonDate
+                attendanceId, studentId, courseId, lessonDate, status
         );
-        try {
-            rabbitTemplate.convertAndSend(attendanceExchange, attendanceDeletedRouting, event);
-            logger.info("Published AttendanceDeletedEvent for attendance: {}", attendanceId);
-        } catch (Exception e) {
-            logger.error("Failed to publish AttendanceDeletedEvent for attendance: {}", attendanceId, e);
+        publishAttendanceEvent(attendanceDeletedRouting, event);
+        if (lessonSummaryEnabled && isBrokerPublishing()) {
+            lessonSummaryBuffer.recordDeleted(courseId, lessonDate, studentId);
         }
+        logger.info("Queued AttendanceDeletedEvent for attendance: {}", attendanceId);
     }
 
     /**
      * Pubblica un evento di statistiche generate.
      */
     public void publishAttendanceStatsGenerated(AttendanceStatsGeneratedEvent event) {
+        outboxEventRepository.save(toOutbox(Uuid7.next(), attendanceStatsRouting, event));
+        logger.info("Queued AttendanceStatsGeneratedEvent for request: {}", event.getRequestId());
+    }
+
+    /**
+     * Pubblica gli eventi di statistiche generate di un lotto di richieste con un unico inserimento batch nell'outbox.
+     */
+    public void publishAttendanceStatsGenerated(List<AttendanceStatsGeneratedEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<OutboxEvent> outbox = new ArrayList<>(events.size());
+        for (AttendanceStatsGeneratedEvent event : events) {
+            outbox.add(toOutbox(Uuid7.next(), attendanceStatsRouting, event));
+        }
+        outboxEventRepository.saveAll(outbox);
+        logger.info("Queued {} AttendanceStatsGeneratedEvent in batch", events.size());
+    }
+
+    /**
+     * Pubblica un riepilogo per ogni lezione modificata nell'ultima finestra, con un unico inserimento batch
+     * nell'outbox. Il riepilogo è tenuto in memoria fino alla pubblicazione: se il processo si arresta
+     * prima, restano comunque gli eventi per riga. I totali delle lezioni sono letti con una sola query;
+     * uno studente con un'altra presenza ancora registrata nella lezione non viene riportato come eliminato.
+     */
+    @Scheduled(fixedDelayString = "${attendance.events.lesson-summary.window-ms:2000}")
+    public void publishLessonSummaries() {
+        List<AttendanceLessonSummaryEvent> summaries = lessonSummaryBuffer.drain();
+        if (summaries.isEmpty()) {
+            return;
+        }
         try {
-            rabbitTemplate.convertAndSend(attendanceExchange, attendanceStatsRouting, event);
-            logger.info("Published AttendanceStatsGeneratedEvent for request: {}", event.getRequestId());
-        } catch (Exception e) {
-            logger.error("Failed to publish AttendanceStatsGeneratedEvent for request: {}", event.getRequestId(), e);
+            fillLessonTotals(summaries);
+            keepStudentsWithRemainingRows(summaries);
+            List<OutboxEvent> outbox = new ArrayList<>(summaries.size());
+            for (AttendanceLessonSummaryEvent summary : summaries) {
+                outbox.add(toOutbox(Uuid7.next(), attendanceLessonSummaryRouting, summary));
+            }
+            outboxEventRepository.saveAll(outbox);
+        } catch (RuntimeException e) {
+            lessonSummaryBuffer.restore(summaries);
+            logger.warn("Riepiloghi per lezione non salvati nell'outbox, ritento alla prossima finestra: {}", e.getMessage());
+            return;
+        }
+        logger.info("Queued {} AttendanceLessonSummaryEvent", summaries.size());
+    }
+
+    private void fillLessonTotals(List<AttendanceLessonSummaryEvent> summaries) {
+        Set<String> courseIds = new HashSet<>();
+        Set<LocalDate> lessonDates = new HashSet<>();
+        summaries.forEach(summary -> {
+            courseIds.add(summary.getCourseId());
+            lessonDates.add(summary.getLessonDate());
+        });
+        Map<String, PresenzaRepository.LessonTotals> totals = new HashMap<>();
+        presenzaRepository.countByLessons(courseIds, lessonDates)
+            .forEach(t -> totals.put(t.getCourseId() + "|" + t.getLessonDate(), t));
+        for (AttendanceLessonSummaryEvent summary : summaries) {
+            PresenzaRepository.LessonTotals lesson = totals.get(summary.getCourseId() + "|" + summary.getLessonDate());
+            summary.setRecordedCount(lesson == null ? 0 : lesson.getRecordedCount());
+            summary.setPresentCount(lesson == null || lesson.getPresentCount() == null ? 0 : lesson.getPresentCount());
+        }
+    }
+
+    // Un'eliminazione riguarda una sola riga: se lo studente ha ancora una presenza nella lezione
+    // viene riportato con lo stato di quella riga invece che tra gli eliminati
+    private void keepStudentsWithRemainingRows(List<AttendanceLessonSummaryEvent> summaries) {
+        Set<String> courseIds = new HashSet<>();
+        Set<LocalDate> lessonDates = new HashSet<>();
+        Set<String> studentIds = new HashSet<>();
+        for (AttendanceLessonSummaryEvent summary : summaries) {
+            if (!summary.getDeletedStudentIds().isEmpty()) {
+                courseIds.add(summary.getCourseId());
+                lessonDates.add(summary.getLessonDate());
+                studentIds.addAll(summary.getDeletedStudentIds());
+            }
+        }
+        if (studentIds.isEmpty()) {
+            return;
+        }
+        Map<String, String> remaining = new HashMap<>();
+        presenzaRepository.findStudentStatusesByLessons(courseIds, lessonDates, studentIds)
+            .forEach(r -> remaining.put(r.getCourseId() + "|" + r.getLessonDate() + "|" + r.getStudentId(), String.valueOf(r.getStatus())));
+        for (AttendanceLessonSummaryEvent summary : summaries) {
+            List<String> deleted = new ArrayList<>();
+            Map<String, List<String>> byStatus = new LinkedHashMap<>();
+            summary.getStudentIdsByStatus().forEach((status, ids) -> byStatus.put(status, new ArrayList<>(ids)));
+            for (String studentId : summary.getDeletedStudentIds()) {
+                String status = remaining.get(summary.getCourseId() + "|" + summary.getLessonDate() + "|" + studentId);
+                if (status == null) {
+                    deleted.add(studentId);
+                } else {
+                    byStatus.computeIfAbsent(status, k -> new ArrayList<>()).add(studentId);
+                }
+            }
+            summary.setDeletedStudentIds(deleted);
+            summary.setStudentIdsByStatus(byStatus);
+        }
+    }
+
+    private void recordLessonChange(String courseId, LocalDate lessonDate, String studentId, String status) {
+        if (lessonSummaryEnabled && isBrokerPublishing()) {
+            lessonSummaryBuffer.record(courseId, lessonDate, studentId, status);
         }
     }
+
+    // Evento sulle presenze: nell'outbox per il broker e/o ai listener locali, con lo stesso ID
+    private void publishAttendanceEvent(String routingKey, Object event) {
+        String eventId = Uuid7.next();
+        if (isBrokerPublishing()) {
+            outboxEventRepository.save(toOutbox(eventId, routingKey, event));
+        }
+        publishLocally(eventId, event);
+    }
+
+    private void publishLocally(String eventId, Object event) {
+        if (isLocalDelivery()) {
+            applicationEventPublisher.publishEvent(new AttendanceLocalEvent(eventId, event));
+        }
+    }
+
+    private boolean isLocalDelivery() {
+        return "local".equalsIgnoreCase(delivery);
+    }
+
+    // Con delivery=broker anche i consumer di questo servizio dipendono dal broker
+    private boolean isBrokerPublishing() {
+        return fanoutEnabled || !isLocalDelivery();
+    }
+
+    /**
+     * Serializza l'evento con lo stesso converter del RabbitTemplate, così il messaggio inoltrato
+     * dal relay è identico a quello che sarebbe stato inviato direttamente. Il content type
+     * richiesto sceglie il formato (JSON o CBOR) e viene salvato con il messaggio.
+     */
+    private OutboxEvent toOutbox(String eventId, String routingKey, Object event) {
+        MessageProperties requested = new MessageProperties();
+        requested.setContentType(eventsContentType);
+        Message message = rabbitTemplate.getMessageConverter().toMessage(event, requested);
+        MessageProperties props = message.getMessageProperties();
+        Object typeId = props.getHeaders().get(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME);
+        return new OutboxEvent(
+                eventId,
+                attendanceExchange,
+                routingKey,
+                typeId != null ? typeId.toString() : null,
+                props.getContentType(),
+                message.getBody(),
+                Instant.now()
+        );
+    }
 }
\ No newline at end of file
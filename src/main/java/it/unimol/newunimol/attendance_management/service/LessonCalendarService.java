@@ -0,0 +1,84 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import it.unimol.newunimol.attendance_management.event.CourseScheduledEvent;
+import it.unimol.newunimol.attendance_management.event.CourseUpdatedEvent;
+import it.unimol.newunimol.attendance_management.model.ScheduledLesson;
+import it.unimol.newunimol.attendance_management.repository.ScheduledLessonRepository;
+
+/**
+ * Service che mantiene il calendario delle lezioni dei corsi a partire dagli eventi del microservizio Corsi.
+ * Il calendario è la fonte del numero di lezioni usato nelle statistiche: ogni modifica
+ * invalida i totali del corso in cache. L'applicazione degli eventi è idempotente
+ * (inserimento o aggiornamento per chiave), quindi un messaggio ricevuto due volte non cambia il risultato.
+ */
+@Service
+public class LessonCalendarService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LessonCalendarService.class);
+
+    @Autowired
+    private ScheduledLessonRepository scheduledLessonRepository;
+
+    @Autowired
+    private AttendanceStatsCache statsCache;
+
+    /**
+     * Aggiunge al calendario le lezioni di un corso programmato, aggiornando orari di quelle già presenti.
+     * @param event l'evento course.scheduled
+     */
+    @Transactional
+    public void applyCourseScheduled(CourseScheduledEvent event) {
+        if (event.getCourseId() == null || event.getLessons() == null) {
+            logger.warn("CourseScheduledEvent senza courseId o lezioni ignorato: courseId={}", event.getCourseId());
+            return;
+        }
+        List<ScheduledLesson> lessons = toLessons(event.getCourseId(), event.getLessons());
+        scheduledLessonRepository.saveAll(lessons);
+        statsCache.evictCourse(event.getCourseId());
+        logger.info("Calendario del corso {}: {} lezioni programmate", event.getCourseId(), lessons.size());
+    }
+
+    /**
+     * Sostituisce il calendario di un corso con quello dell'evento; se l'evento non contiene
+     * il calendario non fa nulla.
+     * @param event l'evento course.updated
+     */
+    @Transactional
+    public void applyCourseUpdated(CourseUpdatedEvent event) {
+        if (event.getCourseId() == null || event.getLessons() == null) {
+            logger.debug("CourseUpdatedEvent senza calendario: courseId={}", event.getCourseId());
+            return;
+        }
+        List<ScheduledLesson> lessons = toLessons(event.getCourseId(), event.getLessons());
+        int removed = lessons.isEmpty()
+            ? scheduledLessonRepository.deleteByCourseId(event.getCourseId())
+            : scheduledLessonRepository.deleteByCourseIdAndLessonDateNotIn(event.getCourseId(),
+                lessons.stream().map(ScheduledLesson::getLessonDate).toList());
+        scheduledLessonRepository.saveAll(lessons);
+        statsCache.evictCourse(event.getCourseId());
+        logger.info("Calendario del corso {} aggiornato: {} lezioni, {} rimosse", event.getCourseId(), lessons.size(), removed);
+    }
+
+    // Una lezione per data: con date ripetute vale l'ultima
+    private static List<ScheduledLesson> toLessons(String courseId, List<CourseScheduledEvent.Lesson> lessons) {
+        Map<LocalDate, ScheduledLesson> byDate = new LinkedHashMap<>();
+        for (CourseScheduledEvent.Lesson lesson : lessons) {
+            if (lesson != null && lesson.getLessonDate() != null) {
+                byDate.put(lesson.getLessonDate(),
+                    new ScheduledLesson(courseId, lesson.getLessonDate(), lesson.getStartTime(), lesson.getEndTime()));
+            }
+        }
+        return List.copyOf(byDate.values());
+    }
+}
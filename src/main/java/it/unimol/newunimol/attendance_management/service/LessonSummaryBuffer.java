@@ -0,0 +1,161 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import it.unimol.newunimol.attendance_management.event.AttendanceLessonSummaryEvent;
+
+/**
+ * Accumula le modifiche alle presenze per lezione (courseId, lessonDate) fino al prossimo {@link #drain()}.
+ * Le modifiche fatte in una transazione entrano nel buffer solo dopo il commit; fuori da una
+ * transazione entrano subito. Per ogni studente conta solo l'ultima modifica registrata nella finestra:
+ * un nuovo stato oppure l'eliminazione, segnata a parte e mai codificata nello stato (che può essere null).
+ */
+public final class LessonSummaryBuffer {
+
+    private Map<LessonKey, Lesson> lessons = new LinkedHashMap<>();
+
+    /**
+     * Registra il nuovo stato di uno studente in una lezione.
+     * @param status il nuovo stato (null viene riportato come "null")
+     */
+    public void record(String courseId, LocalDate lessonDate, String studentId, String status) {
+        add(courseId, lessonDate, studentId, String.valueOf(status), false);
+    }
+
+    /**
+     * Registra l'eliminazione di una presenza di uno studente in una lezione.
+     */
+    public void recordDeleted(String courseId, LocalDate lessonDate, String studentId) {
+        add(courseId, lessonDate, studentId, null, true);
+    }
+
+    private void add(String courseId, LocalDate lessonDate, String studentId, String status, boolean deleted) {
+        if (courseId == null || lessonDate == null || studentId == null) {
+            return;
+        }
+        Change change = new Change(new LessonKey(courseId, lessonDate), studentId, status, deleted);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(List.of(change));
+            return;
+        }
+        pending().add(change);
+    }
+
+    /**
+     * Restituisce un riepilogo per ogni lezione modificata dall'ultima chiamata e svuota il buffer.
+     */
+    public List<AttendanceLessonSummaryEvent> drain() {
+        Map<LessonKey, Lesson> drained;
+        synchronized (this) {
+            if (lessons.isEmpty()) {
+                return List.of();
+            }
+            drained = lessons;
+            lessons = new LinkedHashMap<>();
+        }
+        LocalDateTime windowEnd = LocalDateTime.now();
+        List<AttendanceLessonSummaryEvent> events = new ArrayList<>(drained.size());
+        drained.forEach((key, lesson) -> {
+            Map<String, List<String>> studentIdsByStatus = new LinkedHashMap<>();
+            lesson.statusByStudentId.forEach((studentId, status) ->
+                studentIdsByStatus.computeIfAbsent(status, s -> new ArrayList<>()).add(studentId));
+            events.add(new AttendanceLessonSummaryEvent(key.courseId(), key.lessonDate(), studentIdsByStatus,
+                new ArrayList<>(lesson.deletedStudentIds), lesson.changes, lesson.firstChangeAt, windowEnd));
+        });
+        return events;
+    }
+
+    /**
+     * Rimette nel buffer i riepiloghi non pubblicati, senza sovrascrivere le modifiche arrivate nel frattempo.
+     */
+    public synchronized void restore(List<AttendanceLessonSummaryEvent> events) {
+        for (AttendanceLessonSummaryEvent event : events) {
+            LessonKey key = new LessonKey(event.getCourseId(), event.getLessonDate());
+            Lesson newer = lessons.remove(key);
+            Lesson lesson = new Lesson(event.getWindowStart());
+            event.getStudentIdsByStatus().forEach((status, ids) -> ids.forEach(id -> lesson.statusByStudentId.put(id, status)));
+            lesson.deletedStudentIds.addAll(event.getDeletedStudentIds());
+            lesson.changes = event.getChanges();
+            if (newer != null) {
+                newer.statusByStudentId.forEach(lesson::setStatus);
+                newer.deletedStudentIds.forEach(lesson::setDeleted);
+                lesson.changes += newer.changes;
+            }
+            lessons.put(key, lesson);
+        }
+    }
+
+    private synchronized void apply(List<Change> changes) {
+        LocalDateTime now = LocalDateTime.now();
+        for (Change change : changes) {
+            Lesson lesson = lessons.computeIfAbsent(change.lesson(), k -> new Lesson(now));
+            if (change.deleted()) {
+                lesson.setDeleted(change.studentId());
+            } else {
+                lesson.setStatus(change.studentId(), change.status());
+            }
+            lesson.changes++;
+        }
+    }
+
+    // Modifiche in attesa del commit della transazione corrente
+    @SuppressWarnings("unchecked")
+    private List<Change> pending() {
+        List<Change> pending = (List<Change>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<Change> created = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(created);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(LessonSummaryBuffer.this);
+                }
+            });
+            pending = created;
+        }
+        return pending;
+    }
+
+    private record LessonKey(String courseId, LocalDate lessonDate) {}
+
+    private record Change(LessonKey lesson, String studentId, String status, boolean deleted) {}
+
+    private static final class Lesson {
+        private final LocalDateTime firstChangeAt;
+        private final Map<String, String> statusByStudentId = new LinkedHashMap<>();
+        private final Set<String> deletedStudentIds = new LinkedHashSet<>();
+        private int changes;
+
+        private Lesson(LocalDateTime firstChangeAt) {
+            this.firstChangeAt = firstChangeAt;
+        }
+
+        // Rimuove e reinserisce per mantenere l'ordine dell'ultima modifica
+        private void setStatus(String studentId, String status) {
+            deletedStudentIds.remove(studentId);
+            statusByStudentId.remove(studentId);
+            statusByStudentId.put(studentId, status);
+        }
+
+        private void setDeleted(String studentId) {
+            statusByStudentId.remove(studentId);
+            deletedStudentIds.remove(studentId);
+            deletedStudentIds.add(studentId);
+        }
+    }
+}
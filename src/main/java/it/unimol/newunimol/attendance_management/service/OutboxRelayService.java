@@ -0,0 +1,177 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import it.unimol.newunimol.attendance_management.model.OutboxEvent;
+import it.unimol.newunimol.attendance_management.repository.OutboxEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Inoltra a RabbitMQ gli eventi salvati nell'outbox.
+ * Ogni lotto viene inviato senza attendere il singolo messaggio e cancellato dall'outbox solo per
+ * gli eventi confermati dal broker (publisher confirms correlati): in caso di errore le righe restano
+ * e vengono ritentate al giro successivo, quindi la consegna è at-least-once e i consumer possono
+ * deduplicare sul messageId. Espone le metriche attendance.outbox.pending,
+ * attendance.outbox.confirm.latency e attendance.outbox.publish.failures (per motivo: nack, timeout, error).
+ */
+@Service
+@ConditionalOnProperty(name = "outbox.relay.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxRelayService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelayService.class);
+
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "RabbitTemplate is a Spring singleton bean, safe to store")
+    private final RabbitTemplate rabbitTemplate;
+    private final OutboxEventRepository outboxEventRepository;
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "TransactionTemplate is a Spring singleton bean, safe to store")
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${outbox.relay.batch-size:200}")
+    private int batchSize = 200;
+
+    @Value("${outbox.relay.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs = 5000;
+
+    private final Timer confirmLatency;
+    private final Counter nackedEvents;
+    private final Counter timedOutEvents;
+    private final Counter failedEvents;
+
+    public OutboxRelayService(RabbitTemplate rabbitTemplate, OutboxEventRepository outboxEventRepository,
+                              TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.outboxEventRepository = outboxEventRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.confirmLatency = Timer.builder("attendance.outbox.confirm.latency")
+            .description("Tempo tra l'invio di un evento e la conferma del broker")
+            .register(meterRegistry);
+        this.nackedEvents = publishFailures(meterRegistry, "nack");
+        this.timedOutEvents = publishFailures(meterRegistry, "timeout");
+        this.failedEvents = publishFailures(meterRegistry, "error");
+        Gauge.builder("attendance.outbox.pending", outboxEventRepository, OutboxEventRepository::count)
+            .description("Eventi in attesa di pubblicazione nell'outbox")
+            .register(meterRegistry);
+    }
+
+    private static Counter publishFailures(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("attendance.outbox.publish.failures")
+            .description("Eventi dell'outbox non confermati dal broker")
+            .tag("reason", reason)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Svuota l'outbox a lotti finché trova lotti pieni.
+     */
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:200}")
+    public void relay() {
+        try {
+            while (relayBatch() == batchSize) {
+                // Altri eventi in coda: prosegue subito con il lotto successivo
+            }
+        } catch (Exception e) {
+            logger.warn("Outbox relay failed, events will be retried: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Pubblica un lotto di eventi con conferme asincrone correlate e rimuove dall'outbox
+     * solo quelli confermati dal broker; gli eventi rifiutati (nack) o senza conferma entro
+     * il timeout restano nell'outbox e vengono ritentati al giro successivo.
+     * @return il numero di eventi confermati
+     */
+    int relayBatch() {
+        Integer sent = transactionTemplate.execute(status -> {
+            List<OutboxEvent> batch = outboxEventRepository.lockNextBatch(PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            List<CorrelationData> confirms = new ArrayList<>(batch.size());
+            for (OutboxEvent event : batch) {
+                CorrelationData correlation = new CorrelationData(event.getId());
+                long sentAt = System.nanoTime();
+                correlation.getFuture().whenComplete((confirm, ex) ->
+                    confirmLatency.record(System.nanoTime() - sentAt, TimeUnit.NANOSECONDS));
+                try {
+                    rabbitTemplate.send(event.getExchange(), event.getRoutingKey(), toMessage(event), correlation);
+                } catch (AmqpException e) {
+                    failedEvents.increment(batch.size() - confirms.size());
+                    throw e;
+                }
+                confirms.add(correlation);
+            }
+
+            List<OutboxEvent> acked = new ArrayList<>(batch.size());
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+            for (int i = 0; i < batch.size(); i++) {
+                if (isAcked(confirms.get(i), deadline)) {
+                    acked.add(batch.get(i));
+                }
+            }
+            if (!acked.isEmpty()) {
+                outboxEventRepository.deleteAllInBatch(acked);
+            }
+            if (acked.size() < batch.size()) {
+                logger.warn("Outbox relay: {} of {} events not confirmed, will be retried", batch.size() - acked.size(), batch.size());
+            }
+            return acked.size();
+        });
+        return sent != null ? sent : 0;
+    }
+
+    private boolean isAcked(CorrelationData correlation, long deadline) {
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            CorrelationData.Confirm confirm = correlation.getFuture().get(remaining, TimeUnit.NANOSECONDS);
+            if (!confirm.isAck()) {
+                nackedEvents.increment();
+                logger.warn("Outbox event {} nacked by broker: {}", correlation.getId(), confirm.getReason());
+            }
+            return confirm.isAck();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (TimeoutException e) {
+            timedOutEvents.increment();
+            return false;
+        } catch (ExecutionException e) {
+            failedEvents.increment();
+            return false;
+        }
+    }
+
+    private static Message toMessage(OutboxEvent event) {
+        MessageProperties props = new MessageProperties();
+        props.setMessageId(event.getId());
+        props.setContentType(event.getContentType());
+        props.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        if (event.getEventType() != null) {
+            props.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, event.getEventType());
+        }
+        return new Message(event.getPayload(), props);
+    }
+}
@@ -0,0 +1,80 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Unisce le chiamate concorrenti con la stessa chiave: la prima esegue il calcolo, le altre
+ * arrivate mentre è in corso ne attendono e condividono il risultato (o l'eccezione).
+ * Terminato il calcolo la chiave viene rilasciata, quindi nessun risultato viene conservato.
+ * Le chiamate sono contate in {@code attendance.stats.singleflight} con tag {@code result=executed}
+ * (calcolo eseguito) o {@code result=shared} (risultato condiviso): il loro rapporto misura
+ * quanto calcolo viene risparmiato.
+ * @param <K> il tipo della chiave
+ * @param <V> il tipo del risultato
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter executed;
+    private final Counter shared;
+
+    public SingleFlight(MeterRegistry meterRegistry, String name) {
+        this.executed = Counter.builder("attendance.stats.singleflight")
+            .description("Chiamate che hanno eseguito il calcolo")
+            .tag("name", name)
+            .tag("result", "executed")
+            .register(meterRegistry);
+        this.shared = Counter.builder("attendance.stats.singleflight")
+            .description("Chiamate che hanno condiviso un calcolo già in corso")
+            .tag("name", name)
+            .tag("result", "shared")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Esegue il calcolo per la chiave, o attende quello già in corso per la stessa chiave.
+     * @param key la chiave del calcolo
+     * @param computation il calcolo da eseguire
+     * @return il risultato del calcolo
+     */
+    public V execute(K key, Supplier<V> computation) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, created);
+        if (running != null) {
+            shared.increment();
+            return await(running);
+        }
+        executed.increment();
+        try {
+            V result = computation.get();
+            created.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    // Rilancia a chi attende la stessa eccezione ricevuta da chi ha eseguito il calcolo
+    private static <V> V await(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
@@ -14,7 +15,13 @@ import java.util.function.Function;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import io.micrometer.core.annotation.Timed;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import it.unimol.newunimol.attendance_management.DTO.TokenJWTDto;
@@ -31,9 +38,18 @@ public class TokenJWTService {
     @Value("${jwt.expiration}")
     private Long jwtExpiration;
 
+    @Value("${jwt.claims-cache.max-size:10000}")
+    private long claimsCacheMaxSize = 10000;
+
     private PrivateKey privateKey;
     private PublicKey publicKey;
 
+    // Parser immutabile e thread-safe, costruito una sola volta
+    private volatile JwtParser jwtParser;
+
+    // Claims dei token già verificati, evitano una nuova verifica RSA fino alla scadenza del token
+    private volatile Cache<String, Claims> claimsCache;
+
     private PrivateKey getPrivateKey() {
         if (this.privateKey == null) {
             try {
@@ -69,12 +85,47 @@ public class TokenJWTService {
         return claimsResolver.apply(claims);
     }
 
+    private JwtParser getJwtParser() {
+        if (this.jwtParser == null) {
+            this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(getPublicKey())
+                .build();
+        }
+        return jwtParser;
+    }
+
+    private Cache<String, Claims> getClaimsCache() {
+        if (this.claimsCache == null) {
+            this.claimsCache = Caffeine.newBuilder()
+                .maximumSize(claimsCacheMaxSize)
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String token, Claims claims, long currentTime) {
+                        // La voce scade insieme al token; senza exp vale la durata standard dei token
+                        Date expiration = claims.getExpiration();
+                        long millis = expiration != null
+                            ? expiration.getTime() - System.currentTimeMillis()
+                            : jwtExpiration * 1000;
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String token, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String token, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        }
+        return claimsCache;
+    }
+
     private Claims extractAllClaims (String token) {
-        return Jwts.parserBuilder()
-            .setSigningKey(getPublicKey())
-            .build()
-            .parseClaimsJws(token)
-            .getBody();
+        return getClaimsCache().get(token, t -> getJwtParser().parseClaimsJws(t).getBody());
     }
 
     public String extractUserId(String token) {
@@ -125,6 +176,7 @@ public class TokenJWTService {
         return new TokenJWTDto(token, userId, username, role, now / 1000, expiration / 1000);
     }
 
+    @Timed(value = "attendance.jwt.parse", description = "Durata della validazione e lettura dei token JWT")
     public TokenJWTDto parseToken(String token) {
         Claims claims = extractAllClaims(token);
         return new TokenJWTDto(
@@ -132,8 +184,8 @@ public class TokenJWTService {
             claims.getSubject(),
             claims.get("username", String.class),
             claims.get("role", String.class),
-            claims.getIssuedAt().getTime() / 1000,
-            claims.getExpiration().getTime() / 1000
+            claims.getIssuedAt() != null ? claims.getIssuedAt().getTime() / 1000 : null,
+            claims.getExpiration() != null ? claims.getExpiration().getTime() / 1000 : null
         );
     }
 }
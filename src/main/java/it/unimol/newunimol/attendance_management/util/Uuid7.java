@@ -0,0 +1,27 @@
+package it.unimol.newunimol.attendance_management.util;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Generatore di UUID versione 7 (RFC 9562), usati come ID delle presenze e degli eventi dell'outbox.
+ */
+public final class Uuid7 {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private Uuid7() {
+    }
+
+    /**
+     * Genera un nuovo UUID versione 7: i primi 48 bit sono il timestamp in millisecondi, quindi gli ID
+     * successivi vengono inseriti in coda all'indice clustered di InnoDB invece che in posizioni casuali.
+     * @return l'ID in formato testuale standard
+     */
+    public static String next() {
+        long timestamp = System.currentTimeMillis();
+        long msb = (timestamp << 16) | 0x7000L | (RANDOM.nextInt() & 0x0FFFL);
+        long lsb = (RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb).toString();
+    }
+}
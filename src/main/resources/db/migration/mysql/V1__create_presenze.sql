@@ -0,0 +1,11 @@
+-- Schema iniziale della tabella presenze (no-op sui database creati da Hibernate)
+CREATE TABLE IF NOT EXISTS presenze (
+    attendanceId VARCHAR(36) NOT NULL,
+    studentId VARCHAR(255),
+    courseId VARCHAR(255),
+    lessonDate DATE,
+    status VARCHAR(16),
+    orarioIngresso TIME,
+    orarioUscita TIME,
+    PRIMARY KEY (attendanceId)
+) ENGINE = InnoDB;
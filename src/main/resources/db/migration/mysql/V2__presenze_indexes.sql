@@ -0,0 +1,29 @@
+-- Tipi colonna compatti: gli ID sono UUID testuali (36 caratteri), lo stato e' present/absent
+ALTER TABLE presenze
+    MODIFY attendanceId VARCHAR(36) NOT NULL,
+    MODIFY status VARCHAR(16);
+
+-- Indici secondari; creati solo se mancanti (ddl-auto=update potrebbe averli gia' aggiunti)
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'CREATE INDEX idx_presenze_student_course ON presenze (studentId, courseId, status)', 'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'presenze' AND index_name = 'idx_presenze_student_course');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'CREATE INDEX idx_presenze_course_lesson ON presenze (courseId, lessonDate, status)', 'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'presenze' AND index_name = 'idx_presenze_course_lesson');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'CREATE INDEX idx_presenze_lesson_date ON presenze (lessonDate)', 'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'presenze' AND index_name = 'idx_presenze_lesson_date');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
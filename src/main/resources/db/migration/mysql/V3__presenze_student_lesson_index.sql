@@ -0,0 +1,8 @@
+-- Indice per la paginazione keyset delle presenze di uno studente (ordinate per lessonDate, attendanceId)
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'CREATE INDEX idx_presenze_student_lesson ON presenze (studentId, lessonDate)', 'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'presenze' AND index_name = 'idx_presenze_student_lesson');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,11 @@
+-- Outbox transazionale: eventi scritti insieme alle presenze e inoltrati a RabbitMQ in background
+CREATE TABLE IF NOT EXISTS outbox_eventi (
+    id VARCHAR(36) NOT NULL,
+    exchange VARCHAR(255) NOT NULL,
+    routingKey VARCHAR(255) NOT NULL,
+    eventType VARCHAR(255),
+    contentType VARCHAR(255),
+    payload LONGBLOB NOT NULL,
+    createdAt DATETIME(6) NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
@@ -0,0 +1,35 @@
+-- Read model delle statistiche: contatori aggiornati dagli eventi attendance.*
+CREATE TABLE IF NOT EXISTS contatori_lezione (
+    courseId VARCHAR(255) NOT NULL,
+    lessonDate DATE NOT NULL,
+    attendanceCount BIGINT NOT NULL,
+    presentCount BIGINT NOT NULL,
+    PRIMARY KEY (courseId, lessonDate)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS contatori_studente (
+    studentId VARCHAR(255) NOT NULL,
+    courseId VARCHAR(255) NOT NULL,
+    presentCount BIGINT NOT NULL,
+    PRIMARY KEY (studentId, courseId)
+) ENGINE = InnoDB;
+
+-- Eventi già applicati ai contatori (deduplica della consegna at-least-once)
+CREATE TABLE IF NOT EXISTS eventi_elaborati (
+    eventId VARCHAR(64) NOT NULL,
+    processedAt DATETIME(6) NOT NULL,
+    PRIMARY KEY (eventId)
+) ENGINE = InnoDB;
+
+-- Popola i contatori dalle presenze già esistenti
+INSERT INTO contatori_lezione (courseId, lessonDate, attendanceCount, presentCount)
+SELECT courseId, lessonDate, COUNT(*), SUM(CASE WHEN LOWER(status) = 'present' THEN 1 ELSE 0 END)
+FROM presenze WHERE courseId IS NOT NULL AND lessonDate IS NOT NULL
+GROUP BY courseId, lessonDate
+ON DUPLICATE KEY UPDATE attendanceCount = VALUES(attendanceCount), presentCount = VALUES(presentCount);
+
+INSERT INTO contatori_studente (studentId, courseId, presentCount)
+SELECT studentId, courseId, COUNT(*)
+FROM presenze WHERE LOWER(status) = 'present' AND studentId IS NOT NULL AND courseId IS NOT NULL
+GROUP BY studentId, courseId
+ON DUPLICATE KEY UPDATE presentCount = VALUES(presentCount);
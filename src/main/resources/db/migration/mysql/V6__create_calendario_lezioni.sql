@@ -0,0 +1,8 @@
+-- Calendario delle lezioni dei corsi, aggiornato dagli eventi course.scheduled e course.updated
+CREATE TABLE IF NOT EXISTS calendario_lezioni (
+    courseId VARCHAR(255) NOT NULL,
+    lessonDate DATE NOT NULL,
+    startTime TIME NULL,
+    endTime TIME NULL,
+    PRIMARY KEY (courseId, lessonDate)
+) ENGINE = InnoDB;
@@ -0,0 +1,9 @@
+-- Indice per la paginazione keyset delle presenze di un corso (ordinate per lessonDate, attendanceId):
+-- idx_presenze_course_lesson ha status prima della chiave primaria e non evita l'ordinamento
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+    'CREATE INDEX idx_presenze_course_lesson_id ON presenze (courseId, lessonDate, attendanceId)', 'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'presenze' AND index_name = 'idx_presenze_course_lesson_id');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
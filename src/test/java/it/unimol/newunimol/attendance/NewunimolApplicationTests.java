@@ -1,14 +1,59 @@
 package it.unimol.newunimol.attendance;
 
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import it.unimol.newunimol.attendance_management.NewunimolApplication;
+import it.unimol.newunimol.attendance_management.model.Presenza;
+import it.unimol.newunimol.attendance_management.service.AttendanceCounterService;
+import it.unimol.newunimol.attendance_management.service.AttendanceService;
 
 @SpringBootTest(classes = NewunimolApplication.class)
 class NewunimolApplicationTests {
 
+	@Autowired
+	private AttendanceService attendanceService;
+
+	@Autowired
+	private AttendanceCounterService attendanceCounterService;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void serviceAndRepositoryCalls_ShouldBeTimedWithBoundedTags() {
+		attendanceService.getStudentCourseStatistics("metrics-student", "metrics-course");
+
+		Timer service = meterRegistry.get("attendance.service")
+			.tags("method", "getStudentCourseStatistics", "exception", "none").timer();
+		assertEquals(1, service.count());
+		assertFalse(meterRegistry.get("spring.data.repository.invocations").timers().isEmpty());
+		assertTrue(meterRegistry.getMeters().stream()
+			.flatMap(meter -> meter.getId().getTags().stream())
+			.noneMatch(tag -> tag.getValue().startsWith("metrics-")), "nessun tag con ID di studente o corso");
+	}
+
+	@Test
+	void createAttendance_LocalDelivery_ShouldUpdateCountersAfterCommitWithoutBroker() throws InterruptedException {
+		attendanceService.createAttendance(new Presenza(null, "local-s1", "local-c1", LocalDate.of(2024, 1, 8), "present", null, null));
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (attendanceCounterService.getStudentPresentCount("local-s1", "local-c1") == 0 && System.nanoTime() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(1, attendanceCounterService.getStudentPresentCount("local-s1", "local-c1"));
+	}
+
 }
@@ -0,0 +1,55 @@
+package it.unimol.newunimol.attendance_management.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+class DbConcurrencyLimitFilterTest {
+
+    private static MockHttpServletRequest apiRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/attendances/course/c1/export");
+        request.setAsyncSupported(true);
+        return request;
+    }
+
+    private static int status(DbConcurrencyLimitFilter filter) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(apiRequest(), response, new MockFilterChain());
+        return response.getStatus();
+    }
+
+    @Test
+    void defaultLimit_ShouldLeaveConnectionsToBackgroundConsumers() throws Exception {
+        // Arrange: pool di 3 connessioni, 2 riservate ai consumer → 1 sola richiesta alla volta
+        DbConcurrencyLimitFilter filter = new DbConcurrencyLimitFilter(0, 3, 2, 0);
+        MockHttpServletRequest first = apiRequest();
+
+        // Act: la prima richiesta resta in corso (risposta asincrona)
+        filter.doFilter(first, new MockHttpServletResponse(),
+            (req, res) -> ((HttpServletRequest) req).startAsync());
+
+        // Assert
+        assertEquals(503, status(filter));
+    }
+
+    @Test
+    void asyncRequest_ShouldHoldPermitUntilCompletion() throws Exception {
+        // Arrange
+        DbConcurrencyLimitFilter filter = new DbConcurrencyLimitFilter(1, 10, 4, 0);
+        MockHttpServletRequest export = apiRequest();
+        filter.doFilter(export, new MockHttpServletResponse(),
+            (req, res) -> ((HttpServletRequest) req).startAsync());
+
+        // Act & Assert: finché l'export non termina il permesso resta occupato
+        assertEquals(503, status(filter));
+        ((MockAsyncContext) export.getAsyncContext()).complete();
+        assertEquals(200, status(filter));
+        assertEquals(200, status(filter));
+    }
+}
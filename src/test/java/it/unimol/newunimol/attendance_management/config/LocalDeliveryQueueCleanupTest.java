@@ -0,0 +1,77 @@
+package it.unimol.newunimol.attendance_management.config;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class LocalDeliveryQueueCleanupTest {
+
+    private final AmqpAdmin amqpAdmin = mock(AmqpAdmin.class);
+    private final LocalDeliveryQueueCleanup cleanup = new LocalDeliveryQueueCleanup(amqpAdmin);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cleanup, "attendanceExchange", "attendance.exchange");
+        ReflectionTestUtils.setField(cleanup, "attendanceCreatedQueue", "attendance.created.queue");
+        ReflectionTestUtils.setField(cleanup, "attendanceUpdatedQueue", "attendance.updated.queue");
+        ReflectionTestUtils.setField(cleanup, "attendanceBulkUpdatedQueue", "attendance.bulk.updated.queue");
+        ReflectionTestUtils.setField(cleanup, "attendanceDeletedQueue", "attendance.deleted.queue");
+        ReflectionTestUtils.setField(cleanup, "attendanceCreatedRouting", "attendance.created");
+        ReflectionTestUtils.setField(cleanup, "attendanceUpdatedRouting", "attendance.updated");
+        ReflectionTestUtils.setField(cleanup, "attendanceBulkUpdatedRouting", "attendance.bulk.updated");
+        ReflectionTestUtils.setField(cleanup, "attendanceDeletedRouting", "attendance.deleted");
+    }
+
+    @Test
+    void run_ShouldUnbindQueuesAndDeleteOnlyEmptyOnes() {
+        // Arrange
+        when(amqpAdmin.getQueueInfo("attendance.created.queue"))
+            .thenReturn(new QueueInformation("attendance.created.queue", 0, 0));
+        when(amqpAdmin.getQueueInfo("attendance.updated.queue"))
+            .thenReturn(new QueueInformation("attendance.updated.queue", 42, 0));
+
+        // Act
+        cleanup.run(null);
+
+        // Assert
+        ArgumentCaptor<Binding> bindings = ArgumentCaptor.forClass(Binding.class);
+        verify(amqpAdmin, times(2)).removeBinding(bindings.capture());
+        assertEquals("attendance.exchange", bindings.getValue().getExchange());
+        verify(amqpAdmin).deleteQueue("attendance.created.queue", false, true);
+        verify(amqpAdmin, never()).deleteQueue(eq("attendance.updated.queue"), anyBoolean(), anyBoolean());
+        verify(amqpAdmin, never()).deleteQueue(eq("attendance.deleted.queue"), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void run_WhenBrokerUnavailable_ShouldNotFailStartup() {
+        when(amqpAdmin.getQueueInfo(any())).thenThrow(new AmqpConnectException(new RuntimeException("refused")));
+
+        assertDoesNotThrow(() -> cleanup.run(null));
+    }
+
+    @Test
+    void run_WhenDisabled_ShouldNotTouchBroker() {
+        ReflectionTestUtils.setField(cleanup, "enabled", false);
+
+        cleanup.run(null);
+
+        verifyNoInteractions(amqpAdmin);
+    }
+}
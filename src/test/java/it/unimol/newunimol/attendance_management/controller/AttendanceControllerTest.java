@@ -1,17 +1,27 @@
 package it.unimol.newunimol.attendance_management.controller;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -19,11 +29,15 @@ import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.jsonwebtoken.JwtException;
+import it.unimol.newunimol.attendance_management.DTO.TokenJWTDto;
+import it.unimol.newunimol.attendance_management.DTO.AttendancePageDTO;
 import it.unimol.newunimol.attendance_management.model.Presenza;
 import it.unimol.newunimol.attendance_management.service.AttendanceService;
 import it.unimol.newunimol.attendance_management.service.TokenJWTService;
@@ -60,6 +74,10 @@ class AttendanceControllerTest {
         }
     }
 
+    private static TokenJWTDto tokenFor(String token, String role) {
+        return new TokenJWTDto(token, "user-" + role, "user", role, null, null);
+    }
+
     @Test
     void testEndpoint_ShouldReturnSuccessMessage() throws Exception {
         mockMvc.perform(get("/api/test"))
@@ -83,7 +101,7 @@ class AttendanceControllerTest {
             "id-1", "123", "CS101", LocalDate.now(), "PRESENT", LocalTime.of(9, 0), null
         );
 
-        when(tokenJWTService.hasRole(token, "DOCENTE")).thenReturn(true);
+        when(tokenJWTService.parseToken(token)).thenReturn(tokenFor(token, "DOCENTE"));
         when(attendanceService.createAttendance(any(Presenza.class))).thenReturn(savedPresenza);
 
         // Act & Assert
@@ -101,16 +119,18 @@ class AttendanceControllerTest {
         String authHeader = "Bearer " + token;
         
         Presenza inputPresenza = new Presenza();
-        inputPresenza.setStudentId("123");
+        inputPresenza.setStudentId("forbidden-student");
 
-        when(tokenJWTService.hasRole(token, "DOCENTE")).thenReturn(false);
+        when(tokenJWTService.parseToken(token)).thenReturn(tokenFor(token, "STUDENTE"));
 
         // Act & Assert
         mockMvc.perform(post("/api/createAttendance")
                 .header("Authorization", authHeader)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(inputPresenza)))
-                .andExpect(status().isForbidden());
+                .andExpect(status().isForbidden())
+                .andExpect(content().string("Operazione consentita solo ai docenti"));
+        verify(attendanceService, never()).createAttendance(argThat(p -> "forbidden-student".equals(p.getStudentId())));
     }
 
     @Test
@@ -124,4 +144,106 @@ class AttendanceControllerTest {
                 .content(objectMapper.writeValueAsString(inputPresenza)))
                 .andExpect(status().isBadRequest());
     }
+
+    @Test
+    void getCourseAttendances_WithLimit_ShouldReturnPage() throws Exception {
+        // Arrange
+        String token = "student-token";
+        Presenza p = new Presenza("id-1", "123", "CS101", LocalDate.of(2024, 1, 1), "present", null, null);
+        when(tokenJWTService.parseToken(token)).thenReturn(tokenFor(token, "STUDENTE"));
+        when(attendanceService.getCourseAttendances(eq("CS101"), eq("abc"), eq(1)))
+            .thenReturn(new AttendancePageDTO(java.util.List.of(p), "next"));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/getCourseAttendances/CS101")
+                .header("Authorization", "Bearer " + token)
+                .param("limit", "1")
+                .param("cursor", "abc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].attendanceId").value("id-1"))
+                .andExpect(jsonPath("$.items[0].new").doesNotExist())
+                .andExpect(jsonPath("$.nextCursor").value("next"));
+    }
+
+    @Test
+    void getCourseAttendances_WithInvalidCursor_ShouldReturnBadRequest() throws Exception {
+        // Arrange
+        String token = "student-token";
+        when(tokenJWTService.parseToken(token)).thenReturn(tokenFor(token, "STUDENTE"));
+        when(attendanceService.getCourseAttendances(eq("CS101"), eq("bad"), eq(100)))
+            .thenThrow(new IllegalArgumentException("Cursore non valido"));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/getCourseAttendances/CS101")
+                .header("Authorization", "Bearer " + token)
+                .param("cursor", "bad"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void exportCourseAttendances_ShouldStreamNdjson() throws Exception {
+        // Arrange
+        String token = "docente-token";
+        when(tokenJWTService.parseToken(token)).thenReturn(tokenFor(token, "DOCENTE"));
+
+        // Act & Assert
+        var result = mockMvc.perform(get("/api/exportCourseAttendances/CS101")
+                .header("Authorization", "Bearer " + token))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"));
+        verify(attendanceService).exportCourseAttendances(eq("CS101"), any());
+    }
+
+    @Test
+    void getCourseAttendances_WithInvalidToken_ShouldReturnUnauthorized() throws Exception {
+        // Arrange
+        when(tokenJWTService.parseToken("expired-token")).thenThrow(new JwtException("expired"));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/getCourseAttendances/CS401")
+                .header("Authorization", "Bearer expired-token"))
+                .andExpect(status().isUnauthorized());
+        verify(attendanceService, never()).getCourseAttendances("CS401");
+    }
+
+    @Test
+    void getCourseAttendances_WithMalformedHeader_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/getCourseAttendances/CS101")
+                .header("Authorization", "Basic abc"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "DOCENTE,  POST,   /api/createAttendance,                            200",
+        "STUDENTE, POST,   /api/createAttendance,                            403",
+        "STUDENTE, POST,   /api/createAttendances,                           403",
+        "STUDENTE, PUT,    /api/updateAttendance/id-1,                       403",
+        "STUDENTE, PUT,    /api/updateLessonAttendances/CS101/2024-01-01,    403",
+        "STUDENTE, DELETE, /api/deleteAttendance/id-1,                       403",
+        "STUDENTE, GET,    /api/attendances/course/CS101/attendance-average, 403",
+        "DOCENTE,  GET,    /api/attendances/course/CS101/attendance-average, 200",
+        "STUDENTE, GET,    /api/attendances/course/CS101/attendance-matrix,  403",
+        "DOCENTE,  GET,    /api/attendances/course/CS101/attendance-matrix,  200",
+        "STUDENTE, GET,    /api/getCourseAttendances/CS101,                  200",
+        "DOCENTE,  GET,    /api/getStudentAttendances/123,                   200",
+        "STUDENTE, GET,    /api/attendances/student/123/course/CS101/attendance-percentage, 200",
+        "ADMIN,    GET,    /api/getCourseAttendances/CS101,                  403",
+        "ADMIN,    GET,    /api/getAttendance/id-1,                          403"
+    })
+    void authorizationMatrix_ShouldBeEnforcedByFilterChain(String role, String method, String path, int expectedStatus) throws Exception {
+        // Arrange
+        String token = role.toLowerCase() + "-token";
+        when(tokenJWTService.parseToken(token)).thenReturn(tokenFor(token, role));
+
+        // Act & Assert
+        mockMvc.perform(request(HttpMethod.valueOf(method), path)
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{}"))
+                .andExpect(status().is(expectedStatus));
+    }
 }
@@ -0,0 +1,100 @@
+package it.unimol.newunimol.attendance_management.controller;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Test di carico contro un'istanza in esecuzione (MySQL e RabbitMQ reali), disattivato di default.
+ * Simula un appello a inizio ora: ogni client registra una presenza e legge la propria percentuale.
+ * Va eseguito una volta per modalità (VIRTUAL_THREADS_ENABLED=false su Java 17, =true con il profilo java21)
+ * confrontando throughput e p99 stampati:
+ * <pre>
+ * mvn test -Dtest=AttendanceLoadTest -Dloadtest.baseUrl=http://localhost:8080 -Dloadtest.token=&lt;JWT docente&gt;
+ * </pre>
+ * Parametri opzionali: loadtest.clients (default 2000), loadtest.iterations (default 10).
+ */
+@Tag("load")
+@EnabledIfSystemProperty(named = "loadtest.baseUrl", matches = ".+")
+class AttendanceLoadTest {
+
+    @Test
+    void rollCallBurst_ShouldReportThroughputAndP99() throws Exception {
+        String baseUrl = System.getProperty("loadtest.baseUrl");
+        String token = System.getProperty("loadtest.token", "");
+        int clients = Integer.getInteger("loadtest.clients", 2000);
+        int iterations = Integer.getInteger("loadtest.iterations", 10);
+        String courseId = "LOAD-" + System.currentTimeMillis();
+        String lessonDate = LocalDate.now().toString();
+
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>(clients * iterations * 2));
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        for (int c = 0; c < clients; c++) {
+            String studentId = "load-s" + c;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < iterations; i++) {
+                        String body = "{\"studentId\":\"" + studentId + "\",\"courseId\":\"" + courseId
+                            + "\",\"lessonDate\":\"" + lessonDate + "\",\"status\":\"present\"}";
+                        send(http, HttpRequest.newBuilder(URI.create(baseUrl + "/api/createAttendance"))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(body)), token, latencies, errors);
+                        send(http, HttpRequest.newBuilder(URI.create(baseUrl + "/api/attendances/student/" + studentId
+                            + "/course/" + courseId + "/attendance-percentage")).GET(), token, latencies, errors);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.MINUTES));
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        long p99 = sorted.isEmpty() ? 0 : sorted.get((int) Math.ceil(sorted.size() * 0.99) - 1);
+        System.out.printf("[load] clients=%d requests=%d errors=%d throughput=%.1f req/s p99=%.1f ms%n",
+            clients, sorted.size(), errors.get(), sorted.size() / seconds, p99 / 1e6);
+        assertFalse(sorted.isEmpty());
+    }
+
+    private static void send(HttpClient http, HttpRequest.Builder request, String token,
+                             List<Long> latencies, AtomicInteger errors) throws InterruptedException {
+        long t0 = System.nanoTime();
+        try {
+            HttpResponse<Void> response = http.send(request.header("Authorization", "Bearer " + token)
+                .timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() >= 400) {
+                errors.incrementAndGet();
+            }
+        } catch (java.io.IOException e) {
+            errors.incrementAndGet();
+        }
+        latencies.add(System.nanoTime() - t0);
+    }
+}
@@ -0,0 +1,95 @@
+package it.unimol.newunimol.attendance_management.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.unimol.newunimol.attendance_management.model.OutboxEvent;
+import it.unimol.newunimol.attendance_management.model.Presenza;
+import it.unimol.newunimol.attendance_management.service.AttendanceCounterService;
+import it.unimol.newunimol.attendance_management.service.AttendanceService;
+import it.unimol.newunimol.attendance_management.service.AttendanceStatsCache;
+import it.unimol.newunimol.attendance_management.service.EventPublisherService;
+
+@DataJpaTest
+@Import({AttendanceService.class, AttendanceCounterService.class, AttendanceStatsCache.class, EventPublisherService.class,
+    SimpleMeterRegistry.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+class OutboxEventRepositoryTest {
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private PresenzaRepository presenzaRepository;
+
+    @Autowired
+    private AttendanceService attendanceService;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @MockitoBean
+    private RabbitTemplate rabbitTemplate;
+
+    @BeforeEach
+    void setUp() {
+        when(rabbitTemplate.getMessageConverter()).thenReturn(new Jackson2JsonMessageConverter());
+    }
+
+    private static OutboxEvent event(String id) {
+        return new OutboxEvent(id, "attendance.exchange", "attendance.created", null, "application/json",
+            "{}".getBytes(StandardCharsets.UTF_8), Instant.now());
+    }
+
+    @Test
+    void lockNextBatch_ShouldReturnOldestEventsFirst() {
+        // Arrange
+        outboxEventRepository.saveAll(List.of(event("0003"), event("0001"), event("0002")));
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        // Act
+        List<OutboxEvent> batch = outboxEventRepository.lockNextBatch(PageRequest.of(0, 2));
+        outboxEventRepository.deleteAllInBatch(batch);
+
+        // Assert
+        assertEquals(List.of("0001", "0002"), batch.stream().map(OutboxEvent::getId).toList());
+        assertEquals(List.of("0003"), outboxEventRepository.findAll().stream().map(OutboxEvent::getId).toList());
+    }
+
+    @Test
+    void createAttendance_ShouldWriteOutboxRowInSameTransaction() {
+        // Arrange
+        Presenza input = new Presenza(null, "s1", "course-1", LocalDate.of(2024, 1, 1), "present", null, null);
+
+        // Act
+        Presenza saved = attendanceService.createAttendance(input);
+        testEntityManager.flush();
+
+        // Assert
+        assertTrue(presenzaRepository.existsById(saved.getAttendanceId()));
+        List<OutboxEvent> outbox = outboxEventRepository.findAll();
+        assertEquals(1, outbox.size());
+        assertEquals("attendance.created", outbox.get(0).getRoutingKey());
+        assertTrue(new String(outbox.get(0).getPayload(), StandardCharsets.UTF_8).contains(saved.getAttendanceId()));
+    }
+}
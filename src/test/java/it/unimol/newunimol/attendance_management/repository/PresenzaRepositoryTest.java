@@ -0,0 +1,406 @@
+package it.unimol.newunimol.attendance_management.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.unimol.newunimol.attendance_management.DTO.AttendanceCreateDTO;
+import it.unimol.newunimol.attendance_management.DTO.AttendanceLessonUpdateDTO;
+import it.unimol.newunimol.attendance_management.DTO.AttendanceMatrixDTO;
+import it.unimol.newunimol.attendance_management.model.Presenza;
+import it.unimol.newunimol.attendance_management.model.ScheduledLesson;
+import it.unimol.newunimol.attendance_management.service.AttendanceCounterService;
+import it.unimol.newunimol.attendance_management.service.AttendanceService;
+import it.unimol.newunimol.attendance_management.service.AttendanceStatsCache;
+import it.unimol.newunimol.attendance_management.service.EventPublisherService;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({AttendanceService.class, AttendanceCounterService.class, AttendanceStatsCache.class, SimpleMeterRegistry.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+class PresenzaRepositoryTest {
+
+    @Autowired
+    private PresenzaRepository presenzaRepository;
+
+    @Autowired
+    private AttendanceService attendanceService;
+
+    @Autowired
+    private AttendanceCounterService attendanceCounterService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ScheduledLessonRepository scheduledLessonRepository;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @MockitoBean
+    private EventPublisherService eventPublisherService;
+
+    @Test
+    void getCourseStatistics_ShouldMatchInMemoryAlgorithm() {
+        // Arrange: dataset sintetico con stati casuali su più corsi
+        Random random = new Random(42);
+        List<Presenza> rows = new ArrayList<>();
+        for (int lesson = 0; lesson < 30; lesson++) {
+            LocalDate date = LocalDate.of(2024, 2, 1).plusDays(lesson);
+            for (int student = 0; student < 40; student++) {
+                String courseId = student % 4 == 0 ? "course-other" : "course-1";
+                String status = random.nextInt(3) == 0 ? "absent" : "present";
+                rows.add(new Presenza(UUID.randomUUID().toString(), "s" + student, courseId, date, status, null, null));
+            }
+        }
+        presenzaRepository.saveAll(rows);
+        // I contatori delle statistiche vengono ricostruiti dalle righe appena salvate
+        attendanceCounterService.rebuild();
+
+        // Act
+        Map<String, Double> stats = attendanceService.getCourseStatistics("course-1");
+
+        // Assert
+        Map<String, Double> expected = inMemoryCourseStatistics(presenzaRepository.findByCourseId("course-1"));
+        assertEquals(expected.get("totalLessons"), stats.get("totalLessons"));
+        assertEquals(expected.get("averagePresencesPerLesson"), stats.get("averagePresencesPerLesson"), 1e-9);
+    }
+
+    @Test
+    void studentCourseCounts_ShouldUseOnlyMatchingRows() {
+        // Arrange
+        LocalDate date1 = LocalDate.of(2024, 1, 1);
+        LocalDate date2 = LocalDate.of(2024, 1, 2);
+        LocalDate date3 = LocalDate.of(2024, 1, 3);
+        presenzaRepository.saveAll(List.of(
+            new Presenza("1", "s1", "course-1", date1, "present", null, null),
+            new Presenza("2", "s1", "course-1", date2, "absent", null, null),
+            new Presenza("3", "s2", "course-1", date3, "present", null, null),
+            new Presenza("4", "s1", "course-2", date1, "present", null, null)
+        ));
+        attendanceCounterService.rebuild();
+
+        // Act
+        Map<String, Double> stats = attendanceService.getStudentCourseStatistics("s1", "course-1");
+
+        // Assert
+        assertEquals(3.0, stats.get("totalCourseLessons"));
+        assertEquals(1.0, stats.get("presentLessons"));
+        assertEquals(100.0 / 3, stats.get("attendancePercentage"), 1e-9);
+    }
+
+    @Test
+    void keysetPagination_ShouldVisitEveryRowOnceInOrder() {
+        // Arrange: 3 lezioni x 7 studenti dello stesso corso
+        List<Presenza> rows = new ArrayList<>();
+        for (int lesson = 0; lesson < 3; lesson++) {
+            for (int student = 0; student < 7; student++) {
+                rows.add(new Presenza(UUID.randomUUID().toString(), "s" + student, "course-1",
+                    LocalDate.of(2024, 3, 1).plusDays(lesson), "present", null, null));
+            }
+        }
+        presenzaRepository.saveAll(rows);
+
+        // Act: scorre il corso a pagine da 5
+        List<String> visited = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            var page = attendanceService.getCourseAttendances("course-1", cursor, 5);
+            page.items().forEach(p -> visited.add(p.getLessonDate() + "|" + p.getAttendanceId()));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        // Assert
+        assertEquals(5, pages);
+        assertEquals(rows.size(), visited.size());
+        assertEquals(visited.stream().sorted().toList(), visited);
+
+        var dayPage = attendanceService.getAttendancesByDay(LocalDate.of(2024, 3, 1), null, 10);
+        assertEquals(7, dayPage.items().size());
+        assertNull(dayPage.nextCursor());
+        var studentPage = attendanceService.getStudentAttendances("s0", null, 2);
+        assertEquals(2, studentPage.items().size());
+        assertNotNull(studentPage.nextCursor());
+        var studentLast = attendanceService.getStudentAttendances("s0", studentPage.nextCursor(), 2);
+        assertEquals(1, studentLast.items().size());
+        assertNull(studentLast.nextCursor());
+    }
+
+    @Test
+    void exportCourseAttendances_ShouldWriteOneJsonLinePerRowAndDetachEntities() throws Exception {
+        // Arrange
+        int total = 5000;
+        List<Presenza> rows = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            rows.add(new Presenza(String.format("id-%05d", i), "s" + (i % 250), "course-1",
+                LocalDate.of(2024, 1, 1).plusDays(i / 250), i % 3 == 0 ? "absent" : "present", null, null));
+        }
+        rows.add(new Presenza("other", "s1", "course-2", LocalDate.of(2024, 1, 1), "present", null, null));
+        presenzaRepository.saveAll(rows);
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        // Act
+        var out = new java.io.ByteArrayOutputStream();
+        long exported = attendanceService.exportCourseAttendances("course-1", out);
+
+        // Assert
+        String[] lines = out.toString(java.nio.charset.StandardCharsets.UTF_8).split("\n");
+        assertEquals(total, exported);
+        assertEquals(total, lines.length);
+        assertTrue(lines[0].startsWith("{") && lines[0].contains("\"attendanceId\":\"id-00000\""), lines[0]);
+        // Nessuna entità resta nel persistence context dopo l'export
+        assertEquals(0, testEntityManager.getEntityManager().unwrap(org.hibernate.Session.class)
+            .getStatistics().getEntityCount());
+    }
+
+    @Test
+    void createAttendances_ShouldUseFewerStatementsThanSingleInserts() {
+        // Arrange: appello di 300 studenti
+        int students = 300;
+        LocalDate date = LocalDate.of(2024, 4, 1);
+        List<AttendanceCreateDTO> rollCall = new ArrayList<>();
+        for (int i = 0; i < students; i++) {
+            rollCall.add(new AttendanceCreateDTO("s" + i, "course-bulk", date, "present", null, null));
+        }
+        var statistics = testEntityManager.getEntityManager().unwrap(org.hibernate.Session.class)
+            .getSessionFactory().getStatistics();
+
+        // Act: N inserimenti singoli
+        statistics.clear();
+        for (AttendanceCreateDTO dto : rollCall) {
+            presenzaRepository.save(new Presenza(UUID.randomUUID().toString(), dto.studentId(), "course-single",
+                dto.lessonDate(), dto.status(), null, null));
+            testEntityManager.flush();
+        }
+        long singleStatements = statistics.getPrepareStatementCount();
+
+        // Act: registrazione massiva
+        statistics.clear();
+        var results = attendanceService.createAttendances(rollCall);
+        testEntityManager.flush();
+        long bulkStatements = statistics.getPrepareStatementCount();
+
+        // Assert
+        assertEquals(students, results.stream().filter(r -> r.created()).count());
+        assertEquals(students, presenzaRepository.findByCourseId("course-bulk").size());
+        assertTrue(bulkStatements < singleStatements,
+            "bulk=" + bulkStatements + " single=" + singleStatements);
+    }
+
+    @Test
+    void createAttendance_ShouldIssueSingleInsertWithoutSelect() {
+        // Arrange
+        Presenza input = new Presenza(null, "s1", "course-1", LocalDate.of(2024, 5, 1), "present", null, null);
+        var statistics = testEntityManager.getEntityManager().unwrap(org.hibernate.Session.class)
+            .getSessionFactory().getStatistics();
+        statistics.clear();
+
+        // Act
+        Presenza saved = attendanceService.createAttendance(input);
+        testEntityManager.flush();
+
+        // Assert: nessuna SELECT di merge, solo l'INSERT
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getEntityInsertCount());
+        assertFalse(saved.isNew());
+    }
+
+    @Test
+    void updateLessonAttendances_ShouldUpdateOnlyFilteredRowsOfTheLesson() {
+        // Arrange
+        LocalDate date = LocalDate.of(2024, 6, 1);
+        presenzaRepository.saveAll(List.of(
+            new Presenza("u1", "s1", "course-1", date, "absent", null, null),
+            new Presenza("u2", "s2", "course-1", date, "present", LocalTime.of(9, 0), null),
+            new Presenza("u3", "s3", "course-1", date.plusDays(1), "absent", null, null)
+        ));
+        testEntityManager.flush();
+
+        // Act
+        var updated = attendanceService.updateLessonAttendances("course-1", date,
+            new AttendanceLessonUpdateDTO("absent", "present", LocalTime.of(9, 30), null));
+
+        // Assert
+        assertEquals(List.of("u1"), updated);
+        Presenza u1 = presenzaRepository.findById("u1").orElseThrow();
+        assertEquals("present", u1.getStatus());
+        assertEquals(LocalTime.of(9, 30), u1.getOrarioIngresso());
+        assertEquals(LocalTime.of(9, 0), presenzaRepository.findById("u2").orElseThrow().getOrarioIngresso());
+        assertEquals("absent", presenzaRepository.findById("u3").orElseThrow().getStatus());
+    }
+
+    @Test
+    void countByLessons_ShouldReturnTotalsPerLesson() {
+        // Arrange
+        LocalDate date = LocalDate.of(2024, 6, 1);
+        presenzaRepository.saveAll(List.of(
+            new Presenza("t1", "s1", "course-1", date, "present", null, null),
+            new Presenza("t2", "s2", "course-1", date, "absent", null, null),
+            new Presenza("t5", "s3", "course-1", date, "Present", null, null),
+            new Presenza("t3", "s1", "course-2", date, "present", null, null),
+            new Presenza("t4", "s1", "course-1", date.plusDays(1), "present", null, null)
+        ));
+        testEntityManager.flush();
+
+        // Act
+        var totals = presenzaRepository.countByLessons(List.of("course-1"), List.of(date));
+
+        // Assert
+        assertEquals(1, totals.size());
+        assertEquals(3L, totals.get(0).getRecordedCount());
+        // Lo stato è confrontato senza distinguere maiuscole, come nei contatori
+        assertEquals(2L, totals.get(0).getPresentCount());
+    }
+
+    @Test
+    void findStudentStatusesByLessons_ShouldReturnRemainingRows() {
+        // Arrange
+        LocalDate date = LocalDate.of(2024, 6, 1);
+        presenzaRepository.saveAll(List.of(
+            new Presenza("t1", "s1", "course-1", date, "present", null, null),
+            new Presenza("t2", "s2", "course-1", date, "absent", null, null),
+            new Presenza("t3", "s1", "course-1", date.plusDays(1), "absent", null, null)
+        ));
+        testEntityManager.flush();
+
+        // Act
+        var statuses = presenzaRepository.findStudentStatusesByLessons(List.of("course-1"), List.of(date), List.of("s1", "s3"));
+
+        // Assert
+        assertEquals(1, statuses.size());
+        assertEquals("s1", statuses.get(0).getStudentId());
+        assertEquals("present", statuses.get(0).getStatus());
+    }
+
+    @Test
+    void lookupQueries_ShouldUseSecondaryIndexes() {
+        // Il piano di esecuzione H2 riporta l'indice scelto nel commento /* PUBLIC.<indice> */
+        String byStudentCourse = explain("SELECT COUNT(*) FROM presenze WHERE student_id = 's1' AND course_id = 'c1' AND status = 'present'");
+        String byCourse = explain("SELECT COUNT(DISTINCT lesson_date) FROM presenze WHERE course_id = 'c1'");
+        String byDay = explain("SELECT * FROM presenze WHERE lesson_date = DATE '2024-01-01'");
+
+        assertTrue(byStudentCourse.contains("IDX_PRESENZE_STUDENT_COURSE"), byStudentCourse);
+        assertTrue(byCourse.contains("IDX_PRESENZE_COURSE_LESSON"), byCourse);
+        assertTrue(byDay.contains("IDX_PRESENZE_LESSON_DATE"), byDay);
+        // Il planner di H2 non considera l'ordinamento: per la paginazione del corso si verificano le colonne
+        assertEquals(List.of("COURSE_ID", "LESSON_DATE", "ATTENDANCE_ID"), jdbcTemplate.queryForList(
+            "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.INDEX_COLUMNS WHERE INDEX_NAME = 'IDX_PRESENZE_COURSE_LESSON_ID' "
+                + "ORDER BY ORDINAL_POSITION", String.class));
+    }
+
+    @Test
+    void getCourseAttendanceMatrix_ShouldPackStatusesAndComputeTotals() {
+        // Arrange: 3 studenti, 2 lezioni con presenze e una in calendario senza presenze
+        LocalDate date1 = LocalDate.of(2024, 1, 1);
+        LocalDate date2 = LocalDate.of(2024, 1, 8);
+        LocalDate date3 = LocalDate.of(2024, 1, 15);
+        presenzaRepository.saveAll(List.of(
+            new Presenza("a1", "s2", "c1", date1, "present", null, null),
+            new Presenza("a2", "s1", "c1", date1, "absent", null, null),
+            new Presenza("a3", "s3", "c1", date1, "Present", null, null),
+            new Presenza("a4", "s1", "c1", date2, "present", null, null),
+            new Presenza("a5", "s2", "c1", date2, "late", null, null),
+            new Presenza("a6", "s9", "c2", date1, "present", null, null)));
+        scheduledLessonRepository.save(new ScheduledLesson("c1", date3, null, null));
+        testEntityManager.flush();
+
+        // Act
+        AttendanceMatrixDTO matrix = attendanceService.getCourseAttendanceMatrix("c1");
+
+        // Assert
+        assertEquals(List.of("s1", "s2", "s3"), matrix.studentIds());
+        assertEquals(List.of(date1, date2, date3), matrix.lessonDates());
+        assertEquals(List.of("present", "absent", "late"), matrix.statuses());
+        assertEquals(2, matrix.bitsPerCell());
+        assertEquals(List.of(
+            List.of("absent", "present", ""),
+            List.of("present", "late", ""),
+            List.of("present", "", "")), decode(matrix));
+        assertEquals(List.of(1, 1, 1), matrix.presentByStudent());
+        assertEquals(List.of(2, 1, 0), matrix.presentByLesson());
+        assertEquals(List.of(3, 2, 0), matrix.recordedByLesson());
+        // 3 x 3 celle da 2 bit: 3 byte
+        assertEquals(3, Base64.getDecoder().decode(matrix.cells()).length);
+    }
+
+    @Test
+    void getCourseAttendanceMatrix_DuplicateRowsAndManyStatuses_ShouldKeepTotalsConsistent() {
+        // Arrange: due righe per la stessa cella e cinque stati distinti
+        LocalDate date = LocalDate.of(2024, 1, 1);
+        presenzaRepository.saveAll(List.of(
+            new Presenza("a1", "s1", "c1", date, "present", null, null),
+            new Presenza("a2", "s1", "c1", date, "absent", null, null),
+            new Presenza("a3", "s2", "c1", date, "late", null, null),
+            new Presenza("a4", "s3", "c1", date, "excused", null, null),
+            new Presenza("a5", "s4", "c1", date, "remote", null, null)));
+        testEntityManager.flush();
+
+        // Act
+        AttendanceMatrixDTO matrix = attendanceService.getCourseAttendanceMatrix("c1");
+
+        // Assert: una sola presenza conteggiata per la cella ripetuta, celle da 4 bit
+        assertEquals(4, matrix.bitsPerCell());
+        assertEquals(List.of(4), matrix.recordedByLesson());
+        assertEquals(matrix.presentByLesson().get(0),
+            matrix.presentByStudent().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(List.of("late", "excused", "remote"), decode(matrix).subList(1, 4).stream().map(r -> r.get(0)).toList());
+    }
+
+    // Decodifica le celle della matrice in stati ("" per le celle vuote)
+    private static List<List<String>> decode(AttendanceMatrixDTO matrix) {
+        byte[] cells = Base64.getDecoder().decode(matrix.cells());
+        int columns = matrix.lessonDates().size();
+        int mask = (1 << matrix.bitsPerCell()) - 1;
+        List<List<String>> rows = new ArrayList<>();
+        for (int i = 0; i < matrix.studentIds().size(); i++) {
+            List<String> row = new ArrayList<>();
+            for (int j = 0; j < columns; j++) {
+                int bit = (i * columns + j) * matrix.bitsPerCell();
+                int code = (cells[bit >>> 3] >>> (bit & 7)) & mask;
+                row.add(code == 0 ? "" : matrix.statuses().get(code - 1));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class).toUpperCase();
+    }
+
+    // Algoritmo originale in memoria, usato come riferimento
+    private static Map<String, Double> inMemoryCourseStatistics(List<Presenza> courseAttendances) {
+        List<LocalDate> courseDates = courseAttendances.stream()
+            .map(Presenza::getLessonDate)
+            .distinct()
+            .toList();
+        double average = courseDates.stream()
+            .mapToDouble(date -> courseAttendances.stream()
+                .filter(p -> p.getLessonDate().equals(date) && "present".equals(p.getStatus()))
+                .count())
+            .average()
+            .orElse(0.0);
+        return Map.of("totalLessons", (double) courseDates.size(), "averagePresencesPerLesson", average);
+    }
+}
@@ -0,0 +1,106 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+class AttendanceCounterRebuildRunnerTest {
+
+    private final AttendanceCounterService attendanceCounterService = mock(AttendanceCounterService.class);
+
+    @SuppressWarnings("unchecked")
+    private static <T> ObjectProvider<T> provider(T bean) {
+        ObjectProvider<T> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(bean);
+        return provider;
+    }
+
+    @Test
+    void run_ShouldRestartOnlyContainersThatWereRunning() throws Exception {
+        // Arrange
+        MessageListenerContainer running = mock(MessageListenerContainer.class);
+        MessageListenerContainer manual = mock(MessageListenerContainer.class);
+        when(running.isRunning()).thenReturn(true);
+        when(manual.isRunning()).thenReturn(false);
+        RabbitListenerEndpointRegistry registry = mock(RabbitListenerEndpointRegistry.class);
+        when(registry.getListenerContainers()).thenReturn(List.of(running, manual));
+        AttendanceCounterRebuildRunner runner = new AttendanceCounterRebuildRunner(
+            attendanceCounterService, provider(registry), provider(null), provider(null), provider(null));
+
+        // Act
+        runner.run(null);
+
+        // Assert
+        InOrder order = inOrder(running, attendanceCounterService);
+        order.verify(running).stop();
+        order.verify(attendanceCounterService).rebuild();
+        order.verify(running).start();
+        verify(manual, never()).stop();
+        verify(manual, never()).start();
+    }
+
+    @Test
+    void run_ShouldDrainCounterQueuesBeforeStoppingConsumers() throws Exception {
+        // Arrange
+        SimpleMessageListenerContainer container = mock(SimpleMessageListenerContainer.class);
+        when(container.isRunning()).thenReturn(true);
+        when(container.getQueueNames()).thenReturn(new String[] {"attendance.created.queue"});
+        RabbitListenerEndpointRegistry registry = mock(RabbitListenerEndpointRegistry.class);
+        when(registry.getListenerContainers()).thenReturn(List.of(container));
+        AmqpAdmin amqpAdmin = mock(AmqpAdmin.class);
+        when(amqpAdmin.getQueueInfo("attendance.created.queue")).thenReturn(
+            new QueueInformation("attendance.created.queue", 3, 1),
+            new QueueInformation("attendance.created.queue", 0, 1));
+        AttendanceCounterRebuildRunner runner = new AttendanceCounterRebuildRunner(
+            attendanceCounterService, provider(registry), provider(null), provider(null), provider(amqpAdmin));
+
+        // Act
+        runner.run(null);
+
+        // Assert
+        InOrder order = inOrder(amqpAdmin, container, attendanceCounterService);
+        order.verify(amqpAdmin, times(2)).getQueueInfo("attendance.created.queue");
+        order.verify(container).stop();
+        order.verify(attendanceCounterService).rebuild();
+        order.verify(container).start();
+    }
+
+    @Test
+    void run_ShouldSuspendLocalDeliveryDuringRebuild() throws Exception {
+        // Arrange
+        AttendanceLocalEventListener listener = mock(AttendanceLocalEventListener.class);
+        ThreadPoolTaskExecutor executor = mock(ThreadPoolTaskExecutor.class);
+        when(executor.getQueueSize()).thenReturn(1, 0);
+        when(executor.getActiveCount()).thenReturn(0);
+        when(attendanceCounterService.rebuild()).thenThrow(new IllegalStateException("db down"));
+        AttendanceCounterRebuildRunner runner = new AttendanceCounterRebuildRunner(
+            attendanceCounterService, provider(null), provider(listener), provider(executor), provider(null));
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> runner.run(null));
+
+        // Assert
+        InOrder order = inOrder(executor, listener, attendanceCounterService);
+        order.verify(executor, atLeast(2)).getQueueSize();
+        order.verify(listener).suspend();
+        order.verify(attendanceCounterService).rebuild();
+        order.verify(listener).resume();
+    }
+}
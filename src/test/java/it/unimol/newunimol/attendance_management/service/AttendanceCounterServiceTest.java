@@ -0,0 +1,211 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.unimol.newunimol.attendance_management.event.AttendanceBulkUpdatedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceCreatedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceDeletedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceUpdatedEvent;
+import it.unimol.newunimol.attendance_management.model.OutboxEvent;
+import it.unimol.newunimol.attendance_management.model.Presenza;
+import it.unimol.newunimol.attendance_management.repository.LessonAttendanceCounterRepository;
+import it.unimol.newunimol.attendance_management.repository.PresenzaRepository;
+
+@DataJpaTest
+@Import({AttendanceCounterService.class, AttendanceStatsCache.class, SimpleMeterRegistry.class})
+class AttendanceCounterServiceTest {
+
+    @Autowired
+    private AttendanceCounterService attendanceCounterService;
+
+    @Autowired
+    private PresenzaRepository presenzaRepository;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Autowired
+    private AttendanceStatsCache statsCache;
+
+    @Test
+    void applyEvents_InAnyOrder_ShouldMatchRebuildFromAttendances() {
+        // Arrange: storico casuale di creazioni, modifiche, modifiche di lezione ed eliminazioni
+        Random random = new Random(7);
+        Map<String, Presenza> rows = new HashMap<>();
+        List<Consumer<AttendanceCounterService>> events = new ArrayList<>();
+        int nextId = 0;
+        for (int lesson = 0; lesson < 6; lesson++) {
+            LocalDate date = LocalDate.of(2024, 3, 1).plusDays(lesson);
+            for (int student = 0; student < 8; student++) {
+                Presenza p = new Presenza("a" + nextId++, "s" + student, "course-1", date,
+                    random.nextBoolean() ? "present" : "absent", null, null);
+                rows.put(p.getAttendanceId(), p);
+                AttendanceCreatedEvent created = new AttendanceCreatedEvent(p.getAttendanceId(), p.getStudentId(),
+                    p.getCourseId(), p.getLessonDate(), p.getStatus(), null, null);
+                String eventId = "evt-" + events.size();
+                events.add(s -> s.applyCreated(eventId, created));
+            }
+        }
+        List<String> ids = new ArrayList<>(rows.keySet());
+        Collections.sort(ids);
+        for (int i = 0; i < 15; i++) {
+            Presenza p = rows.get(ids.get(random.nextInt(ids.size())));
+            if (p == null) {
+                continue;
+            }
+            String newStatus = "present".equals(p.getStatus()) ? "absent" : "present";
+            AttendanceUpdatedEvent updated = new AttendanceUpdatedEvent(p.getAttendanceId(), p.getStudentId(),
+                p.getCourseId(), p.getStatus(), newStatus, p.getLessonDate(), null, null);
+            p.setStatus(newStatus);
+            String eventId = "evt-" + events.size();
+            events.add(s -> s.applyUpdated(eventId, updated));
+        }
+        // Tutti gli assenti della prima lezione diventano presenti con un solo evento
+        LocalDate firstLesson = LocalDate.of(2024, 3, 1);
+        Map<String, List<String>> idsByOldStatus = new HashMap<>();
+        Map<String, String> studentIds = new HashMap<>();
+        rows.values().stream()
+            .filter(p -> p.getLessonDate().equals(firstLesson) && "absent".equals(p.getStatus()))
+            .forEach(p -> {
+                idsByOldStatus.computeIfAbsent("absent", k -> new ArrayList<>()).add(p.getAttendanceId());
+                studentIds.put(p.getAttendanceId(), p.getStudentId());
+                p.setStatus("present");
+            });
+        AttendanceBulkUpdatedEvent bulk = new AttendanceBulkUpdatedEvent("course-1", firstLesson, "present",
+            null, null, idsByOldStatus, studentIds);
+        String bulkEventId = "evt-" + events.size();
+        events.add(s -> s.applyBulkUpdated(bulkEventId, bulk));
+        for (int i = 0; i < 10; i++) {
+            Presenza p = rows.remove(ids.get(random.nextInt(ids.size())));
+            if (p == null) {
+                continue;
+            }
+            AttendanceDeletedEvent deleted = new AttendanceDeletedEvent(p.getAttendanceId(), p.getStudentId(),
+                p.getCourseId(), p.getLessonDate(), p.getStatus());
+            String eventId = "evt-" + events.size();
+            events.add(s -> s.applyDeleted(eventId, deleted));
+        }
+
+        // Act: eventi consegnati in ordine casuale (code diverse) e ognuno due volte (at-least-once)
+        Collections.shuffle(events, random);
+        events.forEach(e -> e.accept(attendanceCounterService));
+        events.forEach(e -> e.accept(attendanceCounterService));
+        testEntityManager.flush();
+        testEntityManager.clear();
+        Map<String, Long> incremental = snapshot();
+
+        presenzaRepository.saveAll(rows.values());
+        attendanceCounterService.rebuild();
+        testEntityManager.clear();
+        Map<String, Long> rebuilt = snapshot();
+
+        // Assert
+        assertEquals(rebuilt, incremental);
+        assertEquals(6L, rebuilt.get("lessons"));
+    }
+
+    @Test
+    void rebuild_ShouldNotCountAgainEventsStillInOutbox() {
+        // Arrange: presenza già salvata, il cui evento è ancora in attesa nell'outbox
+        presenzaRepository.save(new Presenza("a1", "s1", "course-1", LocalDate.of(2024, 1, 1), "present", null, null));
+        testEntityManager.persist(new OutboxEvent("evt-pending", "attendance.exchange", "attendance.created",
+            null, "application/json", new byte[0], Instant.now()));
+        AttendanceCreatedEvent event = new AttendanceCreatedEvent("a1", "s1", "course-1",
+            LocalDate.of(2024, 1, 1), "present", null, null);
+
+        // Act: l'evento arriva dopo la ricostruzione
+        attendanceCounterService.rebuild();
+        attendanceCounterService.applyCreated("evt-pending", event);
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        // Assert
+        assertEquals(1L, attendanceCounterService.getStudentPresentCount("s1", "course-1"));
+        assertEquals(1L, attendanceCounterService.getCourseTotals("course-1").getPresences());
+    }
+
+    @Test
+    void applyCreated_SameMessageIdTwice_ShouldCountOnce() {
+        // Arrange
+        AttendanceCreatedEvent event = new AttendanceCreatedEvent("a1", "s1", "course-1",
+            LocalDate.of(2024, 1, 1), "present", null, null);
+
+        // Act
+        attendanceCounterService.applyCreated("msg-1", event);
+        attendanceCounterService.applyCreated("msg-1", event);
+
+        // Assert
+        assertEquals(1L, attendanceCounterService.getStudentPresentCount("s1", "course-1"));
+        assertEquals(1L, attendanceCounterService.getCourseTotals("course-1").getPresences());
+        assertEquals(Map.of("s1", 1L, "s9", 0L),
+            attendanceCounterService.getStudentPresentCounts("course-1", List.of("s1", "s9")));
+    }
+
+    @Test
+    void applyUpdated_ShouldInvalidateOnlyAffectedStatistics() {
+        // Arrange: statistiche del corso e di due studenti già in cache
+        AtomicInteger loads = new AtomicInteger();
+        statsCache.getCourseCounts("course-1", id -> new AttendanceStatsCache.CourseCounts(loads.incrementAndGet(), 0));
+        statsCache.getStudentPresentCount("s1", "course-1", id -> loads.incrementAndGet());
+        statsCache.getStudentPresentCount("s2", "course-1", id -> loads.incrementAndGet());
+        AttendanceUpdatedEvent event = new AttendanceUpdatedEvent("a1", "s1", "course-1", "absent", "present",
+            LocalDate.of(2024, 1, 1), null, null);
+
+        // Act
+        attendanceCounterService.applyUpdated("msg-1", event);
+        loads.set(0);
+        statsCache.getCourseCounts("course-1", id -> new AttendanceStatsCache.CourseCounts(loads.incrementAndGet(), 0));
+        statsCache.getStudentPresentCount("s1", "course-1", id -> loads.incrementAndGet());
+        statsCache.getStudentPresentCount("s2", "course-1", id -> loads.incrementAndGet());
+
+        // Assert: ricaricati corso e (s1, course-1), non (s2, course-1)
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void getCourseTotals_ShouldIgnoreLessonsWithoutAttendances() {
+        // Arrange: l'unica presenza della seconda lezione viene eliminata
+        LocalDate date1 = LocalDate.of(2024, 1, 1);
+        LocalDate date2 = LocalDate.of(2024, 1, 2);
+        attendanceCounterService.applyCreated("m1", new AttendanceCreatedEvent("a1", "s1", "course-1", date1, "present", null, null));
+        attendanceCounterService.applyCreated("m2", new AttendanceCreatedEvent("a2", "s1", "course-1", date2, "absent", null, null));
+        attendanceCounterService.applyDeleted("m3", new AttendanceDeletedEvent("a2", "s1", "course-1", date2, "absent"));
+
+        // Act
+        LessonAttendanceCounterRepository.CourseTotals totals = attendanceCounterService.getCourseTotals("course-1");
+
+        // Assert
+        assertEquals(1L, totals.getLessons());
+        assertEquals(1L, totals.getPresences());
+        assertEquals(0L, attendanceCounterService.getStudentPresentCount("s2", "course-1"));
+    }
+
+    private Map<String, Long> snapshot() {
+        LessonAttendanceCounterRepository.CourseTotals totals = attendanceCounterService.getCourseTotals("course-1");
+        Map<String, Long> snapshot = new HashMap<>();
+        snapshot.put("lessons", totals.getLessons());
+        snapshot.put("presences", totals.getPresences());
+        for (int student = 0; student < 8; student++) {
+            snapshot.put("s" + student, attendanceCounterService.getStudentPresentCount("s" + student, "course-1"));
+        }
+        return snapshot;
+    }
+}
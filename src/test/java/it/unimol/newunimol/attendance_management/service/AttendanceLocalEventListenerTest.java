@@ -0,0 +1,94 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import it.unimol.newunimol.attendance_management.event.AttendanceCreatedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceDeletedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceLocalEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceUpdatedEvent;
+
+@ExtendWith(MockitoExtension.class)
+class AttendanceLocalEventListenerTest {
+
+    @Mock
+    private AttendanceCounterService attendanceCounterService;
+
+    @InjectMocks
+    private AttendanceLocalEventListener listener;
+
+    @Test
+    void handleAttendanceEvent_ShouldApplyPayloadToCountersWithEventId() {
+        // Arrange
+        AttendanceCreatedEvent created = new AttendanceCreatedEvent("a1", "s1", "c1", LocalDate.now(), "present", null, null);
+        AttendanceUpdatedEvent updated = new AttendanceUpdatedEvent("a1", "s1", "c1", "present", "absent", LocalDate.now(), null, null);
+
+        // Act
+        listener.handleAttendanceEvent(new AttendanceLocalEvent("e1", created));
+        listener.handleAttendanceEvent(new AttendanceLocalEvent("e2", updated));
+        listener.handleAttendanceEvent(new AttendanceLocalEvent("e3", "sconosciuto"));
+
+        // Assert
+        verify(attendanceCounterService).applyCreated("e1", created);
+        verify(attendanceCounterService).applyUpdated("e2", updated);
+    }
+
+    @Test
+    void handleAttendanceEvent_WhenCountersFail_ShouldNotPropagate() {
+        // Arrange
+        AttendanceDeletedEvent deleted = new AttendanceDeletedEvent("a1", "s1", "c1", LocalDate.now(), "present");
+        doThrow(new IllegalStateException("db down")).when(attendanceCounterService).applyDeleted(any(), any());
+
+        // Act & Assert
+        assertDoesNotThrow(() -> listener.handleAttendanceEvent(new AttendanceLocalEvent("e1", deleted)));
+        verify(attendanceCounterService).applyDeleted("e1", deleted);
+    }
+
+    @Test
+    void handleAttendanceEvent_WhenCounterRowIsCreatedConcurrently_ShouldRetryApply() {
+        // Arrange
+        AttendanceCreatedEvent created = new AttendanceCreatedEvent("a1", "s1", "c1", LocalDate.now(), "present", null, null);
+        doThrow(new DataIntegrityViolationException("duplicate key"))
+                .doThrow(new CannotAcquireLockException("deadlock"))
+                .doNothing()
+                .when(attendanceCounterService).applyCreated(any(), any());
+
+        // Act
+        listener.handleAttendanceEvent(new AttendanceLocalEvent("e1", created));
+
+        // Assert
+        verify(attendanceCounterService, times(3)).applyCreated("e1", created);
+    }
+
+    @Test
+    void handleAttendanceEvent_WhenConflictPersists_ShouldGiveUpAfterMaxAttempts() {
+        // Arrange
+        AttendanceDeletedEvent deleted = new AttendanceDeletedEvent("a1", "s1", "c1", LocalDate.now(), "present");
+        doThrow(new DataIntegrityViolationException("duplicate key")).when(attendanceCounterService).applyDeleted(any(), any());
+
+        // Act & Assert
+        assertDoesNotThrow(() -> listener.handleAttendanceEvent(new AttendanceLocalEvent("e1", deleted)));
+        verify(attendanceCounterService, times(3)).applyDeleted("e1", deleted);
+    }
+
+    @Test
+    void handleAttendanceEvent_NullPayload_ShouldBeIgnored() {
+        listener.handleAttendanceEvent(new AttendanceLocalEvent("e1", null));
+
+        verifyNoInteractions(attendanceCounterService);
+    }
+}
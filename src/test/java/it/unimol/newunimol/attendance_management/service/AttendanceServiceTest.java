@@ -4,18 +4,32 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.unimol.newunimol.attendance_management.model.Presenza;
+import it.unimol.newunimol.attendance_management.repository.LessonAttendanceCounterRepository;
 import it.unimol.newunimol.attendance_management.repository.PresenzaRepository;
+import it.unimol.newunimol.attendance_management.DTO.AttendanceCreateDTO;
+import it.unimol.newunimol.attendance_management.DTO.AttendanceLessonUpdateDTO;
 import it.unimol.newunimol.attendance_management.DTO.AttendanceUpdateDTO;
+import it.unimol.newunimol.attendance_management.event.AttendanceBulkUpdatedEvent;
 
 @ExtendWith(MockitoExtension.class)
 class AttendanceServiceTest {
@@ -26,6 +40,14 @@ class AttendanceServiceTest {
     @Mock
     private EventPublisherService eventPublisherService;
 
+    @Mock
+    private AttendanceCounterService attendanceCounterService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private AttendanceStatsCache statsCache = new AttendanceStatsCache(meterRegistry, 100, Duration.ofMinutes(5));
+
     @InjectMocks
     private AttendanceService attendanceService;
 
@@ -75,6 +97,44 @@ class AttendanceServiceTest {
         );
     }
 
+    @Test
+    void createAttendances_ShouldSaveValidRowsAndReportRejected() {
+        // Arrange
+        LocalDate date = LocalDate.of(2024, 3, 20);
+        var rows = java.util.List.of(
+            new AttendanceCreateDTO("s1", "CS101", date, "present", LocalTime.of(9, 0), null),
+            new AttendanceCreateDTO("s2", "CS101", date, "absent", null, null),
+            new AttendanceCreateDTO("s1", "CS101", date, "present", null, null),
+            new AttendanceCreateDTO("s3", "CS102", date, "present", null, null),
+            new AttendanceCreateDTO(null, "CS101", date, "present", null, null)
+        );
+
+        // Act
+        var results = attendanceService.createAttendances(rows);
+
+        // Assert
+        assertEquals(5, results.size());
+        assertTrue(results.get(0).created());
+        assertNotNull(results.get(0).attendanceId());
+        assertTrue(results.get(1).created());
+        assertFalse(results.get(2).created());
+        assertFalse(results.get(3).created());
+        assertFalse(results.get(4).created());
+
+        @SuppressWarnings("unchecked")
+        org.mockito.ArgumentCaptor<java.util.List<Presenza>> saved = org.mockito.ArgumentCaptor.forClass(java.util.List.class);
+        verify(presenzaRepository).saveAll(saved.capture());
+        assertEquals(2, saved.getValue().size());
+        verify(eventPublisherService).publishAttendancesCreated(saved.getValue());
+    }
+
+    @Test
+    void createAttendances_EmptyOrWithoutLesson_ShouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> attendanceService.createAttendances(java.util.List.of()));
+        assertThrows(IllegalArgumentException.class, () -> attendanceService.createAttendances(java.util.List.of(
+            new AttendanceCreateDTO("s1", null, null, "present", null, null))));
+    }
+
     @Test
     void updateAttendance_ShouldUpdateAndPublishEvent() {
         // Arrange
@@ -97,7 +157,7 @@ class AttendanceServiceTest {
         assertEquals(LocalTime.of(9, 30), result.getOrarioIngresso());
         
         verify(eventPublisherService).publishAttendanceUpdated(
-            eq(attendanceId), eq("absent"), eq("present"), any(LocalDate.class), eq(LocalTime.of(9, 30)), isNull()
+            eq(attendanceId), eq("student-1"), eq("course-1"), eq("absent"), eq("present"), any(LocalDate.class), eq(LocalTime.of(9, 30)), isNull()
         );
     }
 
@@ -120,6 +180,59 @@ class AttendanceServiceTest {
         });
     }
 
+    @Test
+    void updateLessonAttendances_ShouldRunSingleUpdateAndPublishOneEvent() {
+        // Arrange
+        LocalDate date = LocalDate.of(2024, 1, 1);
+        when(presenzaRepository.findStatusesByLesson("course-1", date, "absent")).thenReturn(java.util.List.of(
+            attendanceStatus("a1", "absent"),
+            attendanceStatus("a2", "absent")
+        ));
+
+        // Act
+        var updated = attendanceService.updateLessonAttendances("course-1", date,
+            new AttendanceLessonUpdateDTO("absent", "present", null, null));
+
+        // Assert
+        assertEquals(java.util.List.of("a1", "a2"), updated);
+        verify(presenzaRepository).updateAttendances(java.util.List.of("a1", "a2"), "present", null, null);
+        org.mockito.ArgumentCaptor<AttendanceBulkUpdatedEvent> event = org.mockito.ArgumentCaptor.forClass(AttendanceBulkUpdatedEvent.class);
+        verify(eventPublisherService).publishAttendanceBulkUpdated(event.capture());
+        assertEquals(java.util.Map.of("absent", java.util.List.of("a1", "a2")), event.getValue().getAttendanceIdsByOldStatus());
+        assertEquals(java.util.Map.of("a1", "s-a1", "a2", "s-a2"), event.getValue().getStudentIdsByAttendanceId());
+        assertEquals("present", event.getValue().getNewStatus());
+    }
+
+    @Test
+    void updateLessonAttendances_WithInvalidLogic_ShouldThrowException() {
+        LocalDate date = LocalDate.of(2024, 1, 1);
+        // Entrata in ritardo senza filtro sulle assenze
+        assertThrows(IllegalArgumentException.class, () -> attendanceService.updateLessonAttendances("course-1", date,
+            new AttendanceLessonUpdateDTO(null, null, LocalTime.of(9, 30), null)));
+        // Uscita anticipata su assenze
+        assertThrows(IllegalArgumentException.class, () -> attendanceService.updateLessonAttendances("course-1", date,
+            new AttendanceLessonUpdateDTO("absent", null, null, LocalTime.of(11, 0))));
+        // Nessuna modifica
+        assertThrows(IllegalArgumentException.class, () -> attendanceService.updateLessonAttendances("course-1", date,
+            new AttendanceLessonUpdateDTO("absent", null, null, null)));
+        verify(presenzaRepository, never()).updateAttendances(any(), any(), any(), any());
+    }
+
+    @Test
+    void updateLessonAttendances_NoMatchingRows_ShouldNotPublish() {
+        // Arrange
+        LocalDate date = LocalDate.of(2024, 1, 1);
+        when(presenzaRepository.findStatusesByLesson("course-1", date, null)).thenReturn(java.util.List.of());
+
+        // Act
+        var updated = attendanceService.updateLessonAttendances("course-1", date,
+            new AttendanceLessonUpdateDTO(null, "cancelled", null, null));
+
+        // Assert
+        assertTrue(updated.isEmpty());
+        verify(eventPublisherService, never()).publishAttendanceBulkUpdated(any());
+    }
+
     @Test
     void deleteAttendance_ShouldDeleteAndPublishEvent() {
         // Arrange
@@ -136,7 +249,7 @@ class AttendanceServiceTest {
         // Assert
         verify(presenzaRepository).deleteById(attendanceId);
         verify(eventPublisherService).publishAttendanceDeleted(
-            eq(attendanceId), eq("student-1"), eq("course-1"), any(LocalDate.class)
+            eq(attendanceId), eq("student-1"), eq("course-1"), any(LocalDate.class), eq("present")
         );
     }
 
@@ -277,21 +390,48 @@ class AttendanceServiceTest {
         assertFalse(result.isEmpty());
     }
 
+    @Test
+    void getCourseAttendancesPage_ShouldReturnNextCursorWhenMoreRows() {
+        // Arrange
+        String courseId = "course-1";
+        LocalDate date = LocalDate.of(2024, 1, 1);
+        Presenza p1 = new Presenza("a", "s1", courseId, date, "present", null, null);
+        Presenza p2 = new Presenza("b", "s2", courseId, date, "present", null, null);
+        Presenza p3 = new Presenza("c", "s3", courseId, date, "present", null, null);
+        when(presenzaRepository.findByCourseIdOrderByLessonDateAscAttendanceIdAsc(eq(courseId), any()))
+            .thenReturn(java.util.List.of(p1, p2, p3));
+        when(presenzaRepository.findByCourseIdAfter(eq(courseId), eq(date), eq("b"), any()))
+            .thenReturn(java.util.List.of(p3));
+
+        // Act
+        var first = attendanceService.getCourseAttendances(courseId, null, 2);
+        var second = attendanceService.getCourseAttendances(courseId, first.nextCursor(), 2);
+
+        // Assert
+        assertEquals(2, first.items().size());
+        assertNotNull(first.nextCursor());
+        assertEquals(1, second.items().size());
+        assertNull(second.nextCursor());
+    }
+
+    @Test
+    void getAttendancesByDayPage_InvalidCursorOrLimit_ShouldThrowException() {
+        LocalDate date = LocalDate.of(2024, 1, 1);
+        assertThrows(IllegalArgumentException.class, () -> attendanceService.getAttendancesByDay(date, "%%%", 10));
+        assertThrows(IllegalArgumentException.class, () -> attendanceService.getAttendancesByDay(date, null, 0));
+        assertThrows(IllegalArgumentException.class,
+            () -> attendanceService.getStudentAttendances("s1", null, AttendanceService.MAX_PAGE_SIZE + 1));
+    }
+
     @Test
     void getStudentCourseStatistics_ShouldCalculateCorrectly() {
         // Arrange
         String studentId = "student-1";
         String courseId = "course-1";
         
-        Presenza p1 = new Presenza("1", studentId, courseId, LocalDate.of(2024, 1, 1), "present", null, null);
-        Presenza p2 = new Presenza("2", studentId, courseId, LocalDate.of(2024, 1, 2), "absent", null, null);
-        
-        // Mock findByStudentId (returns all attendances for student)
-        when(presenzaRepository.findByStudentId(studentId)).thenReturn(java.util.List.of(p1, p2));
-        
-        // Mock findByCourseId (returns all attendances for course to calculate total lessons)
-        // Assuming 2 lessons total
-        when(presenzaRepository.findByCourseId(courseId)).thenReturn(java.util.List.of(p1, p2));
+        // Assuming 2 lessons total, 1 present
+        when(attendanceCounterService.getCourseTotals(courseId)).thenReturn(courseTotals(2L, 3L));
+        when(attendanceCounterService.getStudentPresentCount(studentId, courseId)).thenReturn(1L);
 
         // Act
         var stats = attendanceService.getStudentCourseStatistics(studentId, courseId);
@@ -308,8 +448,8 @@ class AttendanceServiceTest {
         String studentId = "student-1";
         String courseId = "course-empty";
         
-        when(presenzaRepository.findByStudentId(studentId)).thenReturn(java.util.Collections.emptyList());
-        when(presenzaRepository.findByCourseId(courseId)).thenReturn(java.util.Collections.emptyList());
+        when(attendanceCounterService.getCourseTotals(courseId)).thenReturn(courseTotals(0L, 0L));
+        when(attendanceCounterService.getStudentPresentCount(studentId, courseId)).thenReturn(0L);
 
         // Act
         var stats = attendanceService.getStudentCourseStatistics(studentId, courseId);
@@ -324,18 +464,9 @@ class AttendanceServiceTest {
     void getCourseStatistics_ShouldCalculateAverage() {
         // Arrange
         String courseId = "course-1";
-        LocalDate date1 = LocalDate.of(2024, 1, 1);
-        LocalDate date2 = LocalDate.of(2024, 1, 2);
-        
-        // Lesson 1: 2 students present
-        Presenza p1 = new Presenza("1", "s1", courseId, date1, "present", null, null);
-        Presenza p2 = new Presenza("2", "s2", courseId, date1, "present", null, null);
-        
-        // Lesson 2: 1 student present, 1 absent
-        Presenza p3 = new Presenza("3", "s1", courseId, date2, "present", null, null);
-        Presenza p4 = new Presenza("4", "s2", courseId, date2, "absent", null, null);
-        
-        when(presenzaRepository.findByCourseId(courseId)).thenReturn(java.util.List.of(p1, p2, p3, p4));
+
+        // Lesson 1: 2 students present, Lesson 2: 1 student present
+        when(attendanceCounterService.getCourseTotals(courseId)).thenReturn(courseTotals(2L, 3L));
 
         // Act
         var stats = attendanceService.getCourseStatistics(courseId);
@@ -350,7 +481,7 @@ class AttendanceServiceTest {
     void getCourseStatistics_NoLessons_ShouldReturnZero() {
         // Arrange
         String courseId = "course-empty";
-        when(presenzaRepository.findByCourseId(courseId)).thenReturn(java.util.Collections.emptyList());
+        when(attendanceCounterService.getCourseTotals(courseId)).thenReturn(courseTotals(0L, 0L));
 
         // Act
         var stats = attendanceService.getCourseStatistics(courseId);
@@ -360,6 +491,144 @@ class AttendanceServiceTest {
         assertEquals(0.0, stats.get("averagePresencesPerLesson"));
     }
 
+    @Test
+    void getStudentsCourseStatistics_ShouldLoadCourseOnceAndOnlyMissingStudentsInOneQuery() {
+        // Arrange: s1 già in cache
+        when(attendanceCounterService.getCourseTotals("c1")).thenReturn(courseTotals(4L, 6L));
+        when(attendanceCounterService.getStudentPresentCount("s1", "c1")).thenReturn(2L);
+        attendanceService.getStudentCourseStatistics("s1", "c1");
+        when(attendanceCounterService.getStudentPresentCounts("c1", java.util.Set.of("s2", "s3")))
+            .thenReturn(java.util.Map.of("s2", 1L, "s3", 0L));
+
+        // Act
+        var stats = attendanceService.getStudentsCourseStatistics("c1", java.util.List.of("s1", "s2", "s3"));
+
+        // Assert
+        assertEquals(50.0, stats.get("s1").get("attendancePercentage"));
+        assertEquals(25.0, stats.get("s2").get("attendancePercentage"));
+        assertEquals(0.0, stats.get("s3").get("presentLessons"));
+        verify(attendanceCounterService, times(1)).getCourseTotals("c1");
+        verify(attendanceCounterService, times(1)).getStudentPresentCounts(any(), any());
+    }
+
+    @Test
+    void getCourseStatistics_RepeatedCalls_ShouldHitCache() {
+        // Arrange
+        String courseId = "course-1";
+        when(attendanceCounterService.getCourseTotals(courseId)).thenReturn(courseTotals(2L, 3L));
+
+        // Act
+        attendanceService.getCourseStatistics(courseId);
+        var stats = attendanceService.getCourseStatistics(courseId);
+
+        // Assert
+        assertEquals(1.5, stats.get("averagePresencesPerLesson"));
+        verify(attendanceCounterService, times(1)).getCourseTotals(courseId);
+        assertEquals(1.0, meterRegistry.get("cache.gets").tags("cache", "attendance.stats.course", "result", "hit")
+            .functionCounter().count());
+    }
+
+    @Test
+    void updateAttendance_ShouldLeaveInvalidationToCounters() {
+        // Arrange: statistiche dello studente già in cache
+        Presenza p = new Presenza("a1", "s1", "c1", LocalDate.of(2024, 1, 1), "absent", null, null);
+        when(attendanceCounterService.getCourseTotals("c1")).thenReturn(courseTotals(1L, 0L));
+        attendanceService.getStudentCourseStatistics("s1", "c1");
+        when(presenzaRepository.findById("a1")).thenReturn(java.util.Optional.of(p));
+        when(presenzaRepository.save(p)).thenReturn(p);
+
+        // Act
+        attendanceService.updateAttendance("a1", new AttendanceUpdateDTO("present", null, null));
+        attendanceService.getStudentCourseStatistics("s1", "c1");
+
+        // Assert: la cache viene invalidata da AttendanceCounterService quando applica l'evento
+        verify(statsCache, never()).evictCourse(any());
+        verify(statsCache, never()).evictStudentCourse(any(), any());
+        verify(attendanceCounterService, times(1)).getCourseTotals("c1");
+        verify(attendanceCounterService, times(1)).getStudentPresentCount("s1", "c1");
+    }
+
+    @Test
+    void getCourseStatistics_ConcurrentCalls_ShouldShareOneComputation() throws Exception {
+        // Arrange: il caricamento termina solo quando tutti gli altri chiamanti sono in attesa
+        int callers = 8;
+        when(attendanceCounterService.getCourseTotals("c1")).thenAnswer(invocation -> {
+            awaitSharedCalls(callers - 1);
+            return courseTotals(2L, 3L);
+        });
+
+        // Act
+        List<Future<java.util.Map<String, Double>>> results = runConcurrently(callers, () -> attendanceService.getCourseStatistics("c1"));
+
+        // Assert
+        for (Future<java.util.Map<String, Double>> result : results) {
+            assertEquals(1.5, result.get(5, TimeUnit.SECONDS).get("averagePresencesPerLesson"));
+        }
+        verify(attendanceCounterService, times(1)).getCourseTotals("c1");
+        assertEquals(1.0, meterRegistry.get("attendance.stats.singleflight").tags("name", "course", "result", "executed")
+            .counter().count());
+    }
+
+    @Test
+    void getCourseStatistics_CacheHits_ShouldNotCountAsExecuted() {
+        // Arrange
+        when(attendanceCounterService.getCourseTotals("c1")).thenReturn(courseTotals(2L, 3L));
+
+        // Act
+        attendanceService.getCourseStatistics("c1");
+        attendanceService.getCourseStatistics("c1");
+        attendanceService.getCourseStatistics("c1");
+
+        // Assert: solo il primo miss esegue il calcolo
+        assertEquals(1.0, meterRegistry.get("attendance.stats.singleflight").tags("name", "course", "result", "executed")
+            .counter().count());
+        assertEquals(0.0, meterRegistry.get("attendance.stats.singleflight").tags("name", "course", "result", "shared")
+            .counter().count());
+    }
+
+    @Test
+    void getCourseStatistics_ConcurrentCallsAndFailure_ShouldPropagateExceptionToAllCallers() throws Exception {
+        // Arrange
+        int callers = 4;
+        IllegalStateException failure = new IllegalStateException("database non disponibile");
+        when(attendanceCounterService.getCourseTotals("c1")).thenAnswer(invocation -> {
+            awaitSharedCalls(callers - 1);
+            throw failure;
+        });
+
+        // Act
+        List<Future<java.util.Map<String, Double>>> results = runConcurrently(callers, () -> attendanceService.getCourseStatistics("c1"));
+
+        // Assert: tutti ricevono la stessa eccezione, con un solo accesso al database
+        for (Future<java.util.Map<String, Double>> result : results) {
+            ExecutionException thrown = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertSame(failure, thrown.getCause());
+        }
+        verify(attendanceCounterService, times(1)).getCourseTotals("c1");
+    }
+
+    private <T> List<Future<T>> runConcurrently(int callers, java.util.concurrent.Callable<T> call) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<T>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(call));
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private void awaitSharedCalls(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.find("attendance.stats.singleflight").tags("result", "shared").counter().count() < expected
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
     @Test
     void getAttendanceByIdDTO_Found() {
         // Arrange
@@ -454,4 +723,27 @@ class AttendanceServiceTest {
         assertEquals("present", result.getStatus()); // Status unchanged
         assertEquals(LocalTime.of(11, 0), result.getOrarioUscita());
     }
-}
\ No newline at end of file
+
+    private static LessonAttendanceCounterRepository.CourseTotals courseTotals(Long lessons, Long presences) {
+        return new LessonAttendanceCounterRepository.CourseTotals() {
+            @Override
+            public Long getLessons() { return lessons; }
+
+            @Override
+            public Long getPresences() { return presences; }
+        };
+    }
+
+    private static PresenzaRepository.AttendanceStatus attendanceStatus(String attendanceId, String status) {
+        return new PresenzaRepository.AttendanceStatus() {
+            @Override
+            public String getAttendanceId() { return attendanceId; }
+
+            @Override
+            public String getStudentId() { return "s-" + attendanceId; }
+
+            @Override
+            public String getStatus() { return status; }
+        };
+    }
+}
@@ -0,0 +1,167 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.unimol.newunimol.attendance_management.event.StatsCacheInvalidatedEvent;
+
+/**
+ * Due repliche del servizio (due contesti Spring nella stessa JVM) collegate da un broker locale
+ * che consegna ogni messaggio pubblicato sull'exchange alla coda esclusiva di ciascuna replica.
+ */
+class CacheInvalidationListenerTest {
+
+    private final LocalBroker broker = new LocalBroker();
+
+    private ConfigurableApplicationContext replicaA;
+    private ConfigurableApplicationContext replicaB;
+
+    @BeforeEach
+    void setUp() {
+        replicaA = startReplica();
+        replicaB = startReplica();
+    }
+
+    @AfterEach
+    void tearDown() {
+        replicaA.close();
+        replicaB.close();
+    }
+
+    @Test
+    void evictOnOneReplica_ShouldEvictSameKeysOnOtherReplica() {
+        // Arrange: entrambe le repliche hanno in cache il corso e due studenti
+        AttendanceStatsCache cacheA = replicaA.getBean(AttendanceStatsCache.class);
+        AttendanceStatsCache cacheB = replicaB.getBean(AttendanceStatsCache.class);
+        AtomicInteger loadsB = new AtomicInteger();
+        for (AttendanceStatsCache cache : List.of(cacheA, cacheB)) {
+            AtomicInteger loads = cache == cacheB ? loadsB : new AtomicInteger();
+            cache.getCourseCounts("c1", id -> counts(loads));
+            cache.getStudentPresentCount("s1", "c1", id -> loads.incrementAndGet());
+            cache.getStudentPresentCount("s2", "c1", id -> loads.incrementAndGet());
+        }
+
+        // Act: scrittura su A per lo studente s1
+        cacheA.evictStudentCourse("s1", "c1");
+        broker.deliver();
+
+        // Assert: su B vengono ricaricati solo il corso e (s1, c1)
+        loadsB.set(0);
+        cacheB.getCourseCounts("c1", id -> counts(loadsB));
+        cacheB.getStudentPresentCount("s1", "c1", id -> loadsB.incrementAndGet());
+        cacheB.getStudentPresentCount("s2", "c1", id -> loadsB.incrementAndGet());
+        assertEquals(2, loadsB.get());
+    }
+
+    @Test
+    void handleStatsCacheInvalidated_ShouldCoalesceBatchAndSkipOwnMessages() {
+        // Arrange
+        AttendanceStatsCache statsCache = mock(AttendanceStatsCache.class);
+        CacheInvalidationPublisher publisher = mock(CacheInvalidationPublisher.class);
+        when(publisher.getInstanceId()).thenReturn("self");
+        CacheInvalidationListener listener = new CacheInvalidationListener();
+        ReflectionTestUtils.setField(listener, "statsCache", statsCache);
+        ReflectionTestUtils.setField(listener, "cacheInvalidationPublisher", publisher);
+        List<StatsCacheInvalidatedEvent> batch = List.of(
+            new StatsCacheInvalidatedEvent("other", false, List.of("c1"), Map.of("c1", List.of("s1"))),
+            new StatsCacheInvalidatedEvent("other", false, List.of("c1", "c2"), Map.of("c1", List.of("s1"))),
+            new StatsCacheInvalidatedEvent("self", false, List.of("c3"), Map.of()));
+
+        // Act
+        listener.handleStatsCacheInvalidated(batch);
+
+        // Assert: una sola invalidazione con le chiavi unite, senza quelle pubblicate da questa istanza
+        verify(statsCache, times(1)).evictLocally(Set.of("c1", "c2"), Map.of("c1", Set.of("s1")));
+        verify(statsCache, never()).evictAllLocally();
+    }
+
+    private static AttendanceStatsCache.CourseCounts counts(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return new AttendanceStatsCache.CourseCounts(1, 1);
+    }
+
+    private ConfigurableApplicationContext startReplica() {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ReplicaConfig.class)
+            .web(WebApplicationType.NONE)
+            .initializers(ctx -> ctx.getBeanFactory().registerSingleton("localBroker", broker))
+            .run();
+        broker.subscribe(context);
+        return context;
+    }
+
+    @Configuration
+    @Import({AttendanceStatsCache.class, CacheInvalidationPublisher.class, CacheInvalidationListener.class})
+    static class ReplicaConfig {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        RabbitTemplate rabbitTemplate(LocalBroker localBroker) {
+            return new RabbitTemplate(mock(ConnectionFactory.class)) {
+                @Override
+                public void convertAndSend(String exchange, String routingKey, Object object) {
+                    localBroker.publish(object);
+                }
+            };
+        }
+    }
+
+    /**
+     * Stand-in del broker: serializza i messaggi come il converter JSON dell'applicazione
+     * e li consegna a lotti alla coda di ogni replica sottoscritta.
+     */
+    static class LocalBroker {
+        private final Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter();
+        private final List<ConfigurableApplicationContext> replicas = new ArrayList<>();
+        private final List<Message> pending = new ArrayList<>();
+
+        void subscribe(ConfigurableApplicationContext replica) {
+            replicas.add(replica);
+        }
+
+        synchronized void publish(Object event) {
+            pending.add(converter.toMessage(event, new MessageProperties()));
+        }
+
+        synchronized void deliver() {
+            for (ConfigurableApplicationContext replica : replicas) {
+                List<StatsCacheInvalidatedEvent> batch = pending.stream()
+                    .map(m -> (StatsCacheInvalidatedEvent) converter.fromMessage(m))
+                    .toList();
+                replica.getBean(CacheInvalidationListener.class).handleStatsCacheInvalidated(batch);
+            }
+            pending.clear();
+        }
+    }
+}
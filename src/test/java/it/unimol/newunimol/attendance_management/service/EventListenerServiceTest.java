@@ -5,7 +5,9 @@ import static org.mockito.Mockito.*;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,8 +18,11 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import it.unimol.newunimol.attendance_management.event.AttendanceCreatedEvent;
 import it.unimol.newunimol.attendance_management.event.AttendanceUpdatedEvent;
 import it.unimol.newunimol.attendance_management.event.AttendanceDeletedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceBulkUpdatedEvent;
 import it.unimol.newunimol.attendance_management.event.ReportRequestedEvent;
 import it.unimol.newunimol.attendance_management.event.AttendanceStatsGeneratedEvent;
+import it.unimol.newunimol.attendance_management.event.CourseScheduledEvent;
+import it.unimol.newunimol.attendance_management.event.CourseUpdatedEvent;
 
 @ExtendWith(MockitoExtension.class)
 class EventListenerServiceTest {
@@ -28,51 +33,90 @@ class EventListenerServiceTest {
     @Mock
     private EventPublisherService eventPublisherService;
 
+    @Mock
+    private AttendanceCounterService attendanceCounterService;
+
+    @Mock
+    private LessonCalendarService lessonCalendarService;
+
     @InjectMocks
     private EventListenerService eventListenerService;
 
     @Test
-    void handleAttendanceCreated_ShouldLogEvent() {
+    void handleCourseEvents_ShouldUpdateLessonCalendar() {
+        // Arrange
+        CourseScheduledEvent scheduled = new CourseScheduledEvent("course-1",
+            List.of(new CourseScheduledEvent.Lesson(LocalDate.of(2025, 3, 3), LocalTime.of(9, 0), LocalTime.of(11, 0))));
+        CourseUpdatedEvent updated = new CourseUpdatedEvent("course-1", List.of());
+
+        // Act
+        eventListenerService.handleCourseScheduled(scheduled);
+        eventListenerService.handleCourseUpdated(updated);
+
+        // Assert
+        verify(lessonCalendarService).applyCourseScheduled(scheduled);
+        verify(lessonCalendarService).applyCourseUpdated(updated);
+    }
+
+    @Test
+    void handleAttendanceCreated_ShouldUpdateCounters() {
         // Arrange
         AttendanceCreatedEvent event = new AttendanceCreatedEvent(
             "att-1", "student-1", "course-1", LocalDate.now(), "present", LocalTime.of(9, 0), null
         );
 
         // Act
-        eventListenerService.handleAttendanceCreated(event);
+        eventListenerService.handleAttendanceCreated(event, "msg-1");
 
-        // Assert - nessuna eccezione, verifica che il metodo sia stato chiamato
+        // Assert
+        verify(attendanceCounterService).applyCreated("msg-1", event);
         verify(attendanceService, times(0)).createAttendance(any());
     }
 
     @Test
-    void handleAttendanceUpdated_ShouldLogEvent() {
+    void handleAttendanceUpdated_ShouldUpdateCounters() {
         // Arrange
         AttendanceUpdatedEvent event = new AttendanceUpdatedEvent(
             "att-1", "absent", "present", LocalDate.now(), LocalTime.of(9, 0), null
         );
 
         // Act
-        eventListenerService.handleAttendanceUpdated(event);
+        eventListenerService.handleAttendanceUpdated(event, "msg-2");
 
-        // Assert - nessuna eccezione
+        // Assert
+        verify(attendanceCounterService).applyUpdated("msg-2", event);
         verify(attendanceService, times(0)).updateAttendance(any(), any());
     }
 
     @Test
-    void handleAttendanceDeleted_ShouldLogEvent() {
+    void handleAttendanceDeleted_ShouldUpdateCounters() {
         // Arrange
         AttendanceDeletedEvent event = new AttendanceDeletedEvent(
             "att-1", "student-1", "course-1", LocalDate.now()
         );
 
         // Act
-        eventListenerService.handleAttendanceDeleted(event);
+        eventListenerService.handleAttendanceDeleted(event, "msg-3");
 
-        // Assert - nessuna eccezione
+        // Assert
+        verify(attendanceCounterService).applyDeleted("msg-3", event);
         verify(attendanceService, times(0)).deleteAttendance(any());
     }
 
+    @Test
+    void handleAttendanceBulkUpdated_ShouldUpdateCounters() {
+        // Arrange
+        AttendanceBulkUpdatedEvent event = new AttendanceBulkUpdatedEvent(
+            "course-1", LocalDate.now(), "present", null, null, Map.of("absent", java.util.List.of("att-1")), Map.of("att-1", "student-1")
+        );
+
+        // Act
+        eventListenerService.handleAttendanceBulkUpdated(event, "msg-4");
+
+        // Assert
+        verify(attendanceCounterService).applyBulkUpdated("msg-4", event);
+    }
+
     @Test
     void handleReportRequested_PercentageType_ShouldPublishStats() {
         // Arrange
@@ -86,14 +130,16 @@ class EventListenerServiceTest {
             "attendancePercentage", 80.0
         );
         
-        when(attendanceService.getStudentCourseStatistics("student-1", "course-1")).thenReturn(stats);
+        when(attendanceService.getStudentsCourseStatistics("course-1", Set.of("student-1")))
+            .thenReturn(Map.of("student-1", stats));
 
         // Act
-        eventListenerService.handleReportRequested(event);
+        eventListenerService.handleReportRequested(List.of(event));
 
         // Assert
-        verify(attendanceService).getStudentCourseStatistics("student-1", "course-1");
-        verify(eventPublisherService).publishAttendanceStatsGenerated(any(AttendanceStatsGeneratedEvent.class));
+        verify(attendanceService).getStudentsCourseStatistics("course-1", Set.of("student-1"));
+        verify(eventPublisherService).publishAttendanceStatsGenerated(argThat((List<AttendanceStatsGeneratedEvent> l) ->
+            l.size() == 1 && "req-1".equals(l.get(0).getRequestId()) && l.get(0).getAttendancePercentage() == 80.0));
     }
 
     @Test
@@ -111,11 +157,12 @@ class EventListenerServiceTest {
         when(attendanceService.getCourseStatistics("course-1")).thenReturn(stats);
 
         // Act
-        eventListenerService.handleReportRequested(event);
+        eventListenerService.handleReportRequested(List.of(event));
 
         // Assert
         verify(attendanceService).getCourseStatistics("course-1");
-        verify(eventPublisherService).publishAttendanceStatsGenerated(any(AttendanceStatsGeneratedEvent.class));
+        verify(eventPublisherService).publishAttendanceStatsGenerated(argThat((List<AttendanceStatsGeneratedEvent> l) ->
+            l.size() == 1 && "req-2".equals(l.get(0).getRequestId())));
     }
 
     @Test
@@ -126,12 +173,12 @@ class EventListenerServiceTest {
         );
 
         // Act
-        eventListenerService.handleReportRequested(event);
+        eventListenerService.handleReportRequested(List.of(event));
 
         // Assert - no stats should be calculated or published
-        verify(attendanceService, times(0)).getStudentCourseStatistics(any(), any());
+        verify(attendanceService, times(0)).getStudentsCourseStatistics(any(), any());
         verify(attendanceService, times(0)).getCourseStatistics(any());
-        verify(eventPublisherService, times(0)).publishAttendanceStatsGenerated(any());
+        verify(eventPublisherService).publishAttendanceStatsGenerated(List.of());
     }
 
     @Test
@@ -141,14 +188,45 @@ class EventListenerServiceTest {
             "req-4", "student-1", "course-1", "percentage"
         );
         
-        when(attendanceService.getStudentCourseStatistics("student-1", "course-1"))
+        when(attendanceService.getStudentsCourseStatistics("course-1", Set.of("student-1")))
             .thenThrow(new RuntimeException("Database error"));
 
         // Act - non dovrebbe sollevare eccezione
-        eventListenerService.handleReportRequested(event);
+        eventListenerService.handleReportRequested(List.of(event));
 
         // Assert - l'errore viene catturato e loggato
-        verify(attendanceService).getStudentCourseStatistics("student-1", "course-1");
-        verify(eventPublisherService, times(0)).publishAttendanceStatsGenerated(any());
+        verify(attendanceService).getStudentsCourseStatistics("course-1", Set.of("student-1"));
+        verify(eventPublisherService).publishAttendanceStatsGenerated(List.of());
+    }
+
+    @Test
+    void handleReportRequested_Batch_ShouldComputeEachCourseOnceAndPublishPerRequest() {
+        // Arrange: 4 richieste percentuali e 2 medie, su due corsi
+        List<ReportRequestedEvent> batch = List.of(
+            new ReportRequestedEvent("r1", "s1", "course-1", "percentage"),
+            new ReportRequestedEvent("r2", "s2", "course-1", "percentage"),
+            new ReportRequestedEvent("r3", "s1", "course-1", "percentage"),
+            new ReportRequestedEvent("r4", "s1", "course-2", "percentage"),
+            new ReportRequestedEvent("r5", null, "course-1", "average"),
+            new ReportRequestedEvent("r6", null, "course-1", "average")
+        );
+        Map<String, Double> stats = Map.of("totalCourseLessons", 2.0, "presentLessons", 1.0, "attendancePercentage", 50.0);
+        when(attendanceService.getStudentsCourseStatistics("course-1", Set.of("s1", "s2")))
+            .thenReturn(Map.of("s1", stats, "s2", stats));
+        when(attendanceService.getStudentsCourseStatistics("course-2", Set.of("s1")))
+            .thenReturn(Map.of("s1", stats));
+        when(attendanceService.getCourseStatistics("course-1"))
+            .thenReturn(Map.of("totalLessons", 2.0, "averagePresencesPerLesson", 1.5));
+
+        // Act
+        eventListenerService.handleReportRequested(batch);
+
+        // Assert
+        verify(attendanceService, times(1)).getStudentsCourseStatistics("course-1", Set.of("s1", "s2"));
+        verify(attendanceService, times(1)).getStudentsCourseStatistics("course-2", Set.of("s1"));
+        verify(attendanceService, times(1)).getCourseStatistics("course-1");
+        verify(eventPublisherService).publishAttendanceStatsGenerated(argThat((List<AttendanceStatsGeneratedEvent> l) ->
+            l.stream().map(AttendanceStatsGeneratedEvent::getRequestId).sorted().toList()
+                .equals(List.of("r1", "r2", "r3", "r4", "r5", "r6"))));
     }
 }
@@ -1,32 +1,75 @@
 package it.unimol.newunimol.attendance_management.service;
 
-import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.verify;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import it.unimol.newunimol.attendance_management.config.CborMessageConverter;
+import it.unimol.newunimol.attendance_management.config.RabbitMQConfig;
+import it.unimol.newunimol.attendance_management.event.AttendanceBulkUpdatedEvent;
 import it.unimol.newunimol.attendance_management.event.AttendanceCreatedEvent;
 import it.unimol.newunimol.attendance_management.event.AttendanceDeletedEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceLessonSummaryEvent;
+import it.unimol.newunimol.attendance_management.event.AttendanceLocalEvent;
 import it.unimol.newunimol.attendance_management.event.AttendanceStatsGeneratedEvent;
 import it.unimol.newunimol.attendance_management.event.AttendanceUpdatedEvent;
+import it.unimol.newunimol.attendance_management.model.OutboxEvent;
+import it.unimol.newunimol.attendance_management.model.Presenza;
+import it.unimol.newunimol.attendance_management.repository.OutboxEventRepository;
+import it.unimol.newunimol.attendance_management.repository.PresenzaRepository;
 
 @ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
 class EventPublisherServiceTest {
 
     @Mock
     private RabbitTemplate rabbitTemplate;
 
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private PresenzaRepository presenzaRepository;
+
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
     @InjectMocks
     private EventPublisherService eventPublisherService;
 
@@ -34,6 +77,7 @@ class EventPublisherServiceTest {
     private final String createdRouting = "test.created";
     private final String updatedRouting = "test.updated";
     private final String deletedRouting = "test.deleted";
+    private final String bulkUpdatedRouting = "test.bulk.updated";
     private final String statsRouting = "test.stats";
 
     @BeforeEach
@@ -42,11 +86,33 @@ class EventPublisherServiceTest {
         ReflectionTestUtils.setField(eventPublisherService, "attendanceCreatedRouting", createdRouting);
         ReflectionTestUtils.setField(eventPublisherService, "attendanceUpdatedRouting", updatedRouting);
         ReflectionTestUtils.setField(eventPublisherService, "attendanceDeletedRouting", deletedRouting);
+        ReflectionTestUtils.setField(eventPublisherService, "attendanceBulkUpdatedRouting", bulkUpdatedRouting);
         ReflectionTestUtils.setField(eventPublisherService, "attendanceStatsRouting", statsRouting);
+        when(rabbitTemplate.getMessageConverter()).thenReturn(new Jackson2JsonMessageConverter());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<OutboxEvent> captureSavedAll() {
+        ArgumentCaptor<List<OutboxEvent>> captor = ArgumentCaptor.forClass(List.class);
+        verify(outboxEventRepository).saveAll(captor.capture());
+        return captor.getValue();
+    }
+
+    private static AttendanceLessonSummaryEvent decode(OutboxEvent outbox) {
+        MessageProperties props = new MessageProperties();
+        props.setContentType(outbox.getContentType());
+        props.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, outbox.getEventType());
+        return (AttendanceLessonSummaryEvent) new Jackson2JsonMessageConverter().fromMessage(new Message(outbox.getPayload(), props));
+    }
+
+    private OutboxEvent captureSaved() {
+        ArgumentCaptor<OutboxEvent> captor = ArgumentCaptor.forClass(OutboxEvent.class);
+        verify(outboxEventRepository).save(captor.capture());
+        return captor.getValue();
     }
 
     @Test
-    void publishAttendanceCreated_ShouldSendEvent() {
+    void publishAttendanceCreated_ShouldQueueEventInOutbox() {
         // Arrange
         String attendanceId = "1";
         String studentId = "s1";
@@ -60,43 +126,55 @@ class EventPublisherServiceTest {
         eventPublisherService.publishAttendanceCreated(attendanceId, studentId, courseId, date, status, in, out);
 
         // Assert
-        verify(rabbitTemplate).convertAndSend(eq(exchange), eq(createdRouting), any(AttendanceCreatedEvent.class));
+        OutboxEvent saved = captureSaved();
+        assertEquals(exchange, saved.getExchange());
+        assertEquals(createdRouting, saved.getRoutingKey());
+        assertEquals(AttendanceCreatedEvent.class.getName(), saved.getEventType());
+        assertEquals("application/json", saved.getContentType());
+        assertTrue(new String(saved.getPayload(), StandardCharsets.UTF_8).contains("\"attendanceId\":\"1\""));
+        verify(rabbitTemplate, never()).convertAndSend(any(String.class), any(String.class), any(Object.class));
     }
 
     @Test
-    void publishAttendanceUpdated_ShouldSendEvent() {
-        // Arrange
-        String attendanceId = "1";
-        String oldStatus = "ABSENT";
-        String newStatus = "PRESENT";
-        LocalDate date = LocalDate.now();
-        LocalTime in = LocalTime.of(9, 0);
-        LocalTime out = LocalTime.of(11, 0);
-
+    void publishAttendanceUpdated_ShouldQueueEventInOutbox() {
         // Act
-        eventPublisherService.publishAttendanceUpdated(attendanceId, oldStatus, newStatus, date, in, out);
+        eventPublisherService.publishAttendanceUpdated("1", "s1", "c1", "ABSENT", "PRESENT", LocalDate.now(), LocalTime.of(9, 0), LocalTime.of(11, 0));
 
         // Assert
-        verify(rabbitTemplate).convertAndSend(eq(exchange), eq(updatedRouting), any(AttendanceUpdatedEvent.class));
+        OutboxEvent saved = captureSaved();
+        assertEquals(updatedRouting, saved.getRoutingKey());
+        assertEquals(AttendanceUpdatedEvent.class.getName(), saved.getEventType());
     }
 
     @Test
-    void publishAttendanceDeleted_ShouldSendEvent() {
+    void publishAttendanceBulkUpdated_ShouldQueueEventInOutbox() {
         // Arrange
-        String attendanceId = "1";
-        String studentId = "s1";
-        String courseId = "c1";
-        LocalDate date = LocalDate.now();
+        AttendanceBulkUpdatedEvent event = new AttendanceBulkUpdatedEvent(
+            "c1", LocalDate.now(), "present", null, null, java.util.Map.of("absent", List.of("1", "2"))
+        );
+
+        // Act
+        eventPublisherService.publishAttendanceBulkUpdated(event);
+
+        // Assert
+        OutboxEvent saved = captureSaved();
+        assertEquals(bulkUpdatedRouting, saved.getRoutingKey());
+        assertEquals(AttendanceBulkUpdatedEvent.class.getName(), saved.getEventType());
+    }
 
+    @Test
+    void publishAttendanceDeleted_ShouldQueueEventInOutbox() {
         // Act
-        eventPublisherService.publishAttendanceDeleted(attendanceId, studentId, courseId, date);
+        eventPublisherService.publishAttendanceDeleted("1", "s1", "c1", LocalDate.now(), "present");
 
         // Assert
-        verify(rabbitTemplate).convertAndSend(eq(exchange), eq(deletedRouting), any(AttendanceDeletedEvent.class));
+        OutboxEvent saved = captureSaved();
+        assertEquals(deletedRouting, saved.getRoutingKey());
+        assertEquals(AttendanceDeletedEvent.class.getName(), saved.getEventType());
     }
 
     @Test
-    void publishAttendanceStatsGenerated_ShouldSendEvent() {
+    void publishAttendanceStatsGenerated_ShouldQueueEventInOutbox() {
         // Arrange
         AttendanceStatsGeneratedEvent event = new AttendanceStatsGeneratedEvent();
         event.setRequestId("req-1");
@@ -105,6 +183,268 @@ class EventPublisherServiceTest {
         eventPublisherService.publishAttendanceStatsGenerated(event);
 
         // Assert
-        verify(rabbitTemplate).convertAndSend(eq(exchange), eq(statsRouting), eq(event));
+        OutboxEvent saved = captureSaved();
+        assertEquals(statsRouting, saved.getRoutingKey());
+        assertTrue(new String(saved.getPayload(), StandardCharsets.UTF_8).contains("req-1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void publishAttendancesCreated_ShouldQueueAllEventsWithOneSaveAll() {
+        // Arrange
+        List<Presenza> created = List.of(
+            new Presenza("1", "s1", "c1", LocalDate.now(), "present", null, null),
+            new Presenza("2", "s2", "c1", LocalDate.now(), "absent", null, null)
+        );
+
+        // Act
+        eventPublisherService.publishAttendancesCreated(created);
+
+        // Assert
+        ArgumentCaptor<List<OutboxEvent>> captor = ArgumentCaptor.forClass(List.class);
+        verify(outboxEventRepository).saveAll(captor.capture());
+        assertEquals(2, captor.getValue().size());
+        assertTrue(captor.getValue().stream().allMatch(e -> createdRouting.equals(e.getRoutingKey())));
+    }
+
+    @Test
+    void publishAttendancesCreated_EmptyList_ShouldNotQueue() {
+        // Act
+        eventPublisherService.publishAttendancesCreated(List.of());
+
+        // Assert
+        verify(outboxEventRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void publishAttendanceCreated_LocalDelivery_ShouldPublishLocalEventWithOutboxId() {
+        // Act
+        eventPublisherService.publishAttendanceCreated("1", "s1", "c1", LocalDate.now(), "present", null, null);
+
+        // Assert: stesso ID nell'outbox e nell'evento locale, così i consumer deduplicano tra i due percorsi
+        OutboxEvent saved = captureSaved();
+        ArgumentCaptor<AttendanceLocalEvent> captor = ArgumentCaptor.forClass(AttendanceLocalEvent.class);
+        verify(applicationEventPublisher).publishEvent(captor.capture());
+        assertEquals(saved.getId(), captor.getValue().getEventId());
+        assertTrue(captor.getValue().getPayload() instanceof AttendanceCreatedEvent);
+    }
+
+    @Test
+    void publishAttendanceDeleted_FanoutDisabled_ShouldOnlyDeliverLocally() {
+        // Arrange
+        ReflectionTestUtils.setField(eventPublisherService, "fanoutEnabled", false);
+
+        // Act
+        eventPublisherService.publishAttendanceDeleted("1", "s1", "c1", LocalDate.now(), "present");
+
+        // Assert
+        verify(outboxEventRepository, never()).save(any(OutboxEvent.class));
+        verify(applicationEventPublisher).publishEvent(any(AttendanceLocalEvent.class));
+    }
+
+    @Test
+    void publishAttendanceUpdated_BrokerDelivery_ShouldAlwaysQueueAndNotDeliverLocally() {
+        // Arrange: con delivery=broker i contatori dipendono dal broker anche senza fan-out
+        ReflectionTestUtils.setField(eventPublisherService, "delivery", "broker");
+        ReflectionTestUtils.setField(eventPublisherService, "fanoutEnabled", false);
+
+        // Act
+        eventPublisherService.publishAttendanceUpdated("1", "s1", "c1", "absent", "present", LocalDate.now(), null, null);
+
+        // Assert
+        assertEquals(updatedRouting, captureSaved().getRoutingKey());
+        verify(applicationEventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void publishAttendanceCreated_CborContentType_ShouldQueueSmallerBinaryPayload() {
+        // Arrange: stesso converter dell'applicazione, che sceglie il formato in base al content type
+        when(rabbitTemplate.getMessageConverter()).thenReturn(new RabbitMQConfig().messageConverter());
+        eventPublisherService.publishAttendanceCreated("1", "s1", "c1", LocalDate.of(2025, 3, 10), "present", LocalTime.of(9, 0), null);
+        OutboxEvent json = captureSaved();
+        ReflectionTestUtils.setField(eventPublisherService, "eventsContentType", CborMessageConverter.CONTENT_TYPE);
+        clearInvocations(outboxEventRepository);
+
+        // Act
+        eventPublisherService.publishAttendanceCreated("1", "s1", "c1", LocalDate.of(2025, 3, 10), "present", LocalTime.of(9, 0), null);
+
+        // Assert: il messaggio inoltrato dal relay viene riletto come lo stesso evento
+        OutboxEvent cbor = captureSaved();
+        assertEquals(CborMessageConverter.CONTENT_TYPE, cbor.getContentType());
+        assertTrue(cbor.getPayload().length < json.getPayload().length);
+        MessageProperties props = new MessageProperties();
+        props.setContentType(cbor.getContentType());
+        props.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, cbor.getEventType());
+        AttendanceCreatedEvent decoded = (AttendanceCreatedEvent) new RabbitMQConfig().messageConverter()
+            .fromMessage(new Message(cbor.getPayload(), props));
+        assertEquals("s1", decoded.getStudentId());
+        assertEquals(LocalDate.of(2025, 3, 10), decoded.getLessonDate());
+        assertEquals(LocalTime.of(9, 0), decoded.getOrarioIngresso());
+        assertNull(decoded.getOrarioUscita());
+    }
+
+    @Test
+    void publishLessonSummaries_ShouldQueueOneSummaryPerLessonWithLatestStatus() {
+        // Arrange
+        LocalDate lesson = LocalDate.of(2025, 3, 10);
+        eventPublisherService.publishAttendanceCreated("1", "s1", "c1", lesson, "present", null, null);
+        eventPublisherService.publishAttendanceCreated("2", "s2", "c1", lesson, "present", null, null);
+        eventPublisherService.publishAttendanceCreated("3", "s3", "c1", lesson, "absent", null, null);
+        eventPublisherService.publishAttendanceUpdated("2", "s2", "c1", "present", "absent", lesson, null, null);
+        eventPublisherService.publishAttendanceDeleted("3", "s3", "c1", lesson, "absent");
+        eventPublisherService.publishAttendanceCreated("4", "s4", "c2", lesson, "present", null, null);
+
+        // Act
+        eventPublisherService.publishLessonSummaries();
+
+        // Assert: un riepilogo per lezione, con l'ultimo stato di ogni studente
+        List<OutboxEvent> saved = captureSavedAll();
+        assertEquals(2, saved.size());
+        assertEquals("attendance.lesson.summary", saved.get(0).getRoutingKey());
+        assertEquals(AttendanceLessonSummaryEvent.class.getName(), saved.get(0).getEventType());
+        AttendanceLessonSummaryEvent c1 = decode(saved.get(0));
+        assertEquals("c1", c1.getCourseId());
+        assertEquals(lesson, c1.getLessonDate());
+        assertEquals(Map.of("present", List.of("s1"), "absent", List.of("s2")), c1.getStudentIdsByStatus());
+        assertEquals(List.of("s3"), c1.getDeletedStudentIds());
+        assertEquals(5, c1.getChanges());
+        assertEquals(Map.of("present", List.of("s4")), decode(saved.get(1)).getStudentIdsByStatus());
+        assertEquals(0L, decode(saved.get(1)).getRecordedCount());
+
+        // Act & Assert: il buffer è stato svuotato
+        clearInvocations(outboxEventRepository);
+        eventPublisherService.publishLessonSummaries();
+        verify(outboxEventRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void publishLessonSummaries_ShouldIncludeLessonTotals() {
+        // Arrange: la lezione ha 30 presenze registrate, di cui 25 presenti
+        LocalDate lesson = LocalDate.of(2025, 3, 10);
+        PresenzaRepository.LessonTotals totals = mock(PresenzaRepository.LessonTotals.class);
+        when(totals.getCourseId()).thenReturn("c1");
+        when(totals.getLessonDate()).thenReturn(lesson);
+        when(totals.getRecordedCount()).thenReturn(30L);
+        when(totals.getPresentCount()).thenReturn(25L);
+        when(presenzaRepository.countByLessons(Set.of("c1"), Set.of(lesson))).thenReturn(List.of(totals));
+        eventPublisherService.publishAttendanceUpdated("1", "s1", "c1", "absent", "present", lesson, null, null);
+
+        // Act
+        eventPublisherService.publishLessonSummaries();
+
+        // Assert
+        AttendanceLessonSummaryEvent summary = decode(captureSavedAll().get(0));
+        assertEquals(30L, summary.getRecordedCount());
+        assertEquals(25L, summary.getPresentCount());
+    }
+
+    @Test
+    void publishLessonSummaries_NullStatus_ShouldNotReportStudentAsDeleted() {
+        // Arrange
+        LocalDate lesson = LocalDate.of(2025, 3, 10);
+        eventPublisherService.publishAttendanceCreated("1", "s1", "c1", lesson, null, null, null);
+
+        // Act
+        eventPublisherService.publishLessonSummaries();
+
+        // Assert
+        AttendanceLessonSummaryEvent summary = decode(captureSavedAll().get(0));
+        assertEquals(Map.of("null", List.of("s1")), summary.getStudentIdsByStatus());
+        assertEquals(List.of(), summary.getDeletedStudentIds());
+    }
+
+    @Test
+    void publishLessonSummaries_DeletingOneOfTwoRows_ShouldReportRemainingStatus() {
+        // Arrange: lo studente ha due presenze nella lezione e ne viene eliminata una
+        LocalDate lesson = LocalDate.of(2025, 3, 10);
+        PresenzaRepository.LessonStudentStatus remaining = mock(PresenzaRepository.LessonStudentStatus.class);
+        when(remaining.getCourseId()).thenReturn("c1");
+        when(remaining.getLessonDate()).thenReturn(lesson);
+        when(remaining.getStudentId()).thenReturn("s1");
+        when(remaining.getStatus()).thenReturn("present");
+        when(presenzaRepository.findStudentStatusesByLessons(Set.of("c1"), Set.of(lesson), Set.of("s1", "s2")))
+            .thenReturn(List.of(remaining));
+        eventPublisherService.publishAttendanceDeleted("2", "s1", "c1", lesson, "absent");
+        eventPublisherService.publishAttendanceDeleted("3", "s2", "c1", lesson, "absent");
+
+        // Act
+        eventPublisherService.publishLessonSummaries();
+
+        // Assert
+        AttendanceLessonSummaryEvent summary = decode(captureSavedAll().get(0));
+        assertEquals(Map.of("present", List.of("s1")), summary.getStudentIdsByStatus());
+        assertEquals(List.of("s2"), summary.getDeletedStudentIds());
+    }
+
+    @Test
+    void publishLessonSummaries_BulkUpdate_ShouldUseNewOrOldStatusPerStudent() {
+        // Arrange
+        LocalDate lesson = LocalDate.of(2025, 3, 10);
+        eventPublisherService.publishAttendanceBulkUpdated(new AttendanceBulkUpdatedEvent("c1", lesson, null, null, null,
+            Map.of("present", List.of("1"), "absent", List.of("2")), Map.of("1", "s1", "2", "s2")));
+
+        // Act
+        eventPublisherService.publishLessonSummaries();
+
+        // Assert: senza nuovo stato ogni studente mantiene quello precedente
+        AttendanceLessonSummaryEvent summary = decode(captureSavedAll().get(0));
+        assertEquals(List.of("s1"), summary.getStudentIdsByStatus().get("present"));
+        assertEquals(List.of("s2"), summary.getStudentIdsByStatus().get("absent"));
+    }
+
+    @Test
+    void publishLessonSummaries_ShouldOnlyIncludeCommittedChanges() {
+        // Arrange
+        TransactionSynchronizationManager.initSynchronization();
+        List<TransactionSynchronization> synchronizations;
+        try {
+            eventPublisherService.publishAttendanceCreated("1", "s1", "c1", LocalDate.of(2025, 3, 10), "present", null, null);
+
+            // Act: prima del commit non c'è nulla da pubblicare
+            eventPublisherService.publishLessonSummaries();
+            verify(outboxEventRepository, never()).saveAll(anyList());
+            synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+        synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        eventPublisherService.publishLessonSummaries();
+
+        // Assert
+        assertEquals(Map.of("present", List.of("s1")), decode(captureSavedAll().get(0)).getStudentIdsByStatus());
+    }
+
+    @Test
+    void publishLessonSummaries_SaveFails_ShouldRetryInNextWindow() {
+        // Arrange
+        LocalDate lesson = LocalDate.of(2025, 3, 10);
+        eventPublisherService.publishAttendanceCreated("1", "s1", "c1", lesson, "absent", null, null);
+        doThrow(new DataAccessResourceFailureException("db down")).when(outboxEventRepository).saveAll(anyList());
+        eventPublisherService.publishLessonSummaries();
+        eventPublisherService.publishAttendanceUpdated("1", "s1", "c1", "absent", "present", lesson, null, null);
+        clearInvocations(outboxEventRepository);
+        doReturn(List.of()).when(outboxEventRepository).saveAll(anyList());
+
+        // Act
+        eventPublisherService.publishLessonSummaries();
+
+        // Assert: riepilogo non perso, con la modifica arrivata nel frattempo
+        AttendanceLessonSummaryEvent summary = decode(captureSavedAll().get(0));
+        assertEquals(Map.of("present", List.of("s1")), summary.getStudentIdsByStatus());
+        assertEquals(2, summary.getChanges());
+    }
+
+    @Test
+    void publishLessonSummaries_Disabled_ShouldNotQueue() {
+        // Arrange
+        ReflectionTestUtils.setField(eventPublisherService, "lessonSummaryEnabled", false);
+        eventPublisherService.publishAttendanceCreated("1", "s1", "c1", LocalDate.now(), "present", null, null);
+
+        // Act
+        eventPublisherService.publishLessonSummaries();
+
+        // Assert
+        verify(outboxEventRepository, never()).saveAll(anyList());
     }
 }
@@ -0,0 +1,95 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.unimol.newunimol.attendance_management.event.AttendanceCreatedEvent;
+import it.unimol.newunimol.attendance_management.event.CourseScheduledEvent;
+import it.unimol.newunimol.attendance_management.event.CourseUpdatedEvent;
+import it.unimol.newunimol.attendance_management.model.ScheduledLesson;
+import it.unimol.newunimol.attendance_management.repository.LessonAttendanceCounterRepository;
+import it.unimol.newunimol.attendance_management.repository.ScheduledLessonRepository;
+
+@DataJpaTest
+@Import({LessonCalendarService.class, AttendanceCounterService.class, AttendanceStatsCache.class, SimpleMeterRegistry.class})
+class LessonCalendarServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @Autowired
+    private LessonCalendarService lessonCalendarService;
+
+    @Autowired
+    private AttendanceCounterService attendanceCounterService;
+
+    @Autowired
+    private ScheduledLessonRepository scheduledLessonRepository;
+
+    private static CourseScheduledEvent.Lesson lesson(LocalDate date) {
+        return new CourseScheduledEvent.Lesson(date, LocalTime.of(9, 0), LocalTime.of(11, 0));
+    }
+
+    @Test
+    void getCourseTotals_ShouldCountScheduledLessonsWithoutAttendances() {
+        // Arrange: 3 lezioni svolte e una futura in calendario, presenze su una lezione in calendario e una fuori
+        lessonCalendarService.applyCourseScheduled(new CourseScheduledEvent("course-1", List.of(
+            lesson(TODAY.minusDays(14)), lesson(TODAY.minusDays(7)), lesson(TODAY), lesson(TODAY.plusDays(7)))));
+        attendanceCounterService.applyCreated("m1",
+            new AttendanceCreatedEvent("a1", "s1", "course-1", TODAY.minusDays(7), "present", null, null));
+        attendanceCounterService.applyCreated("m2",
+            new AttendanceCreatedEvent("a2", "s1", "course-1", TODAY.minusDays(3), "present", null, null));
+
+        // Act
+        LessonAttendanceCounterRepository.CourseTotals totals = attendanceCounterService.getCourseTotals("course-1");
+
+        // Assert: le lezioni senza presenze contano, quella futura no, quella fuori calendario sì
+        assertEquals(4L, totals.getLessons());
+        assertEquals(2L, totals.getPresences());
+    }
+
+    @Test
+    void applyCourseUpdated_ShouldReplaceCalendar() {
+        // Arrange
+        lessonCalendarService.applyCourseScheduled(new CourseScheduledEvent("course-1", List.of(
+            lesson(TODAY.minusDays(3)), lesson(TODAY.minusDays(2)), lesson(TODAY.minusDays(1)))));
+        lessonCalendarService.applyCourseScheduled(new CourseScheduledEvent("course-2", List.of(lesson(TODAY.minusDays(1)))));
+
+        // Act: una lezione spostata di orario, una cancellata
+        lessonCalendarService.applyCourseUpdated(new CourseUpdatedEvent("course-1", List.of(
+            lesson(TODAY.minusDays(3)),
+            new CourseScheduledEvent.Lesson(TODAY.minusDays(1), LocalTime.of(14, 0), LocalTime.of(16, 0)))));
+
+        // Assert
+        assertEquals(2L, attendanceCounterService.getCourseTotals("course-1").getLessons());
+        assertEquals(1L, attendanceCounterService.getCourseTotals("course-2").getLessons());
+        ScheduledLesson moved = scheduledLessonRepository.findById(new ScheduledLesson.Key("course-1", TODAY.minusDays(1))).orElseThrow();
+        assertEquals(LocalTime.of(14, 0), moved.getStartTime());
+    }
+
+    @Test
+    void applyCourseEvents_RepeatedOrWithoutCalendar_ShouldNotChangeCalendar() {
+        // Arrange
+        CourseScheduledEvent scheduled = new CourseScheduledEvent("course-1", List.of(lesson(TODAY.minusDays(1)), lesson(TODAY)));
+
+        // Act: evento ripetuto (consegna at-least-once) e modifica del corso senza calendario
+        lessonCalendarService.applyCourseScheduled(scheduled);
+        lessonCalendarService.applyCourseScheduled(scheduled);
+        lessonCalendarService.applyCourseUpdated(new CourseUpdatedEvent("course-1", null));
+
+        // Assert
+        assertEquals(2L, attendanceCounterService.getCourseTotals("course-1").getLessons());
+
+        // Act & Assert: calendario vuoto
+        lessonCalendarService.applyCourseUpdated(new CourseUpdatedEvent("course-1", List.of()));
+        assertEquals(0L, attendanceCounterService.getCourseTotals("course-1").getLessons());
+    }
+}
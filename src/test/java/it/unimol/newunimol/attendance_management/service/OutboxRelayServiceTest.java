@@ -0,0 +1,179 @@
+package it.unimol.newunimol.attendance_management.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.unimol.newunimol.attendance_management.model.OutboxEvent;
+import it.unimol.newunimol.attendance_management.repository.OutboxEventRepository;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayServiceTest {
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    private OutboxRelayService relayService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        meterRegistry = new SimpleMeterRegistry();
+        relayService = new OutboxRelayService(rabbitTemplate, outboxEventRepository, transactionTemplate, meterRegistry);
+        ReflectionTestUtils.setField(relayService, "batchSize", 2);
+        ReflectionTestUtils.setField(relayService, "confirmTimeoutMs", 200L);
+    }
+
+    private static OutboxEvent event(String id) {
+        return new OutboxEvent(id, "attendance.exchange", "attendance.created",
+            "it.unimol.Event", "application/json", ("{\"id\":\"" + id + "\"}").getBytes(StandardCharsets.UTF_8), Instant.now());
+    }
+
+    // Simula il broker: conferma (ack) tutti i messaggi tranne quelli con gli ID indicati (nack)
+    private void confirmAllExcept(String... nackedIds) {
+        List<String> nacked = List.of(nackedIds);
+        doAnswer(inv -> {
+            CorrelationData correlation = inv.getArgument(3);
+            boolean ack = !nacked.contains(correlation.getId());
+            correlation.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "nack"));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void relayBatch_ShouldPublishWithCorrelatedConfirmsAndDelete() {
+        // Arrange
+        List<OutboxEvent> batch = List.of(event("1"), event("2"));
+        when(outboxEventRepository.lockNextBatch(any(Pageable.class))).thenReturn(batch);
+        confirmAllExcept();
+
+        // Act
+        int sent = relayService.relayBatch();
+
+        // Assert
+        assertEquals(2, sent);
+        ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate, times(2)).send(eq("attendance.exchange"), eq("attendance.created"), captor.capture(), any(CorrelationData.class));
+        Message first = captor.getAllValues().get(0);
+        assertEquals("1", first.getMessageProperties().getMessageId());
+        assertEquals("it.unimol.Event", first.getMessageProperties().getHeaders().get("__TypeId__"));
+        assertEquals("application/json", first.getMessageProperties().getContentType());
+        verify(outboxEventRepository).deleteAllInBatch(batch);
+        assertEquals(2, meterRegistry.get("attendance.outbox.confirm.latency").timer().count());
+    }
+
+    @Test
+    void relayBatch_WhenEventIsNacked_ShouldDeleteOnlyConfirmedEvents() {
+        // Arrange
+        OutboxEvent acked = event("1");
+        when(outboxEventRepository.lockNextBatch(any(Pageable.class))).thenReturn(List.of(acked, event("2")));
+        confirmAllExcept("2");
+
+        // Act
+        int sent = relayService.relayBatch();
+
+        // Assert
+        assertEquals(1, sent);
+        verify(outboxEventRepository).deleteAllInBatch(List.of(acked));
+        assertEquals(1.0, meterRegistry.get("attendance.outbox.publish.failures").tag("reason", "nack").counter().count());
+    }
+
+    @Test
+    void relayBatch_WhenConfirmTimesOut_ShouldKeepEventsInOutbox() {
+        // Arrange: il broker non risponde mai
+        when(outboxEventRepository.lockNextBatch(any(Pageable.class))).thenReturn(List.of(event("1")));
+
+        // Act
+        int sent = relayService.relayBatch();
+
+        // Assert
+        assertEquals(0, sent);
+        verify(outboxEventRepository, never()).deleteAllInBatch(any());
+        assertEquals(1.0, meterRegistry.get("attendance.outbox.publish.failures").tag("reason", "timeout").counter().count());
+    }
+
+    @Test
+    void relay_WhenBrokerIsDown_ShouldKeepEventsInOutbox() {
+        // Arrange
+        when(outboxEventRepository.lockNextBatch(any(Pageable.class))).thenReturn(List.of(event("1")));
+        doThrow(new AmqpException("connection refused"))
+            .when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        // Act
+        relayService.relay();
+
+        // Assert
+        verify(outboxEventRepository, never()).deleteAllInBatch(any());
+        assertEquals(1.0, meterRegistry.get("attendance.outbox.publish.failures").tag("reason", "error").counter().count());
+    }
+
+    @Test
+    void relay_ShouldDrainFullBatchesUntilOutboxIsEmpty() {
+        // Arrange
+        when(outboxEventRepository.lockNextBatch(any(Pageable.class)))
+            .thenReturn(List.of(event("1"), event("2")))
+            .thenReturn(List.of(event("3")));
+        confirmAllExcept();
+
+        // Act
+        relayService.relay();
+
+        // Assert
+        verify(outboxEventRepository, times(2)).lockNextBatch(any(Pageable.class));
+        verify(outboxEventRepository, times(2)).deleteAllInBatch(any());
+    }
+
+    @Test
+    void relay_EmptyOutbox_ShouldNotSend() {
+        // Arrange
+        when(outboxEventRepository.lockNextBatch(any(Pageable.class))).thenReturn(List.of());
+
+        // Act
+        relayService.relay();
+
+        // Assert
+        verify(rabbitTemplate, never()).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void pendingGauge_ShouldReportOutboxSize() {
+        // Arrange
+        when(outboxEventRepository.count()).thenReturn(7L);
+
+        // Act & Assert
+        assertEquals(7.0, meterRegistry.get("attendance.outbox.pending").gauge().value());
+    }
+}
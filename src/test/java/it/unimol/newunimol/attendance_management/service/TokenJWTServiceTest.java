@@ -18,6 +18,11 @@ import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.github.benmanes.caffeine.cache.Cache;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+
 import it.unimol.newunimol.attendance_management.DTO.TokenJWTDto;
 
 @ExtendWith(MockitoExtension.class)
@@ -124,4 +129,43 @@ class TokenJWTServiceTest {
             tokenJWTService.generateToken(userId, username, role);
         });
     }
+
+    @Test
+    void extractClaims_ShouldVerifyTokenOnceAndReuseCachedClaims() {
+        // Arrange
+        String token = tokenJWTService.generateToken("user123", "testuser", "DOCENTE").getToken();
+
+        // Act
+        tokenJWTService.extractRole(token);
+        tokenJWTService.hasRole(token, "DOCENTE");
+        tokenJWTService.isTokenValid(token);
+        tokenJWTService.parseToken(token);
+
+        // Assert
+        Cache<?, ?> cache = (Cache<?, ?>) ReflectionTestUtils.getField(tokenJWTService, "claimsCache");
+        assertNotNull(cache);
+        assertEquals(1, cache.estimatedSize());
+    }
+
+    @Test
+    void extractClaims_ExpiredToken_ShouldBeRejectedAndNotCached() {
+        // Arrange
+        ReflectionTestUtils.setField(tokenJWTService, "jwtExpiration", -60L);
+        String token = tokenJWTService.generateToken("user123", "testuser", "DOCENTE").getToken();
+
+        // Act & Assert
+        assertThrows(ExpiredJwtException.class, () -> tokenJWTService.extractRole(token));
+        Cache<?, ?> cache = (Cache<?, ?>) ReflectionTestUtils.getField(tokenJWTService, "claimsCache");
+        assertEquals(0, cache.estimatedSize());
+    }
+
+    @Test
+    void extractClaims_TamperedToken_ShouldBeRejected() {
+        // Arrange
+        String token = tokenJWTService.generateToken("user123", "testuser", "STUDENTE").getToken();
+        String tampered = token.substring(0, token.length() - 4) + "AAAA";
+
+        // Act & Assert
+        assertThrows(JwtException.class, () -> tokenJWTService.extractRole(tampered));
+    }
 }
@@ -0,0 +1,26 @@
+package it.unimol.newunimol.attendance_management.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+class Uuid7Test {
+
+    @Test
+    void next_ShouldBeTimeOrderedUuidV7() throws InterruptedException {
+        // Act
+        String first = Uuid7.next();
+        Thread.sleep(2);
+        String second = Uuid7.next();
+
+        // Assert
+        UUID uuid = UUID.fromString(first);
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+        assertEquals(36, first.length());
+        assertTrue(first.compareTo(second) < 0);
+    }
+}